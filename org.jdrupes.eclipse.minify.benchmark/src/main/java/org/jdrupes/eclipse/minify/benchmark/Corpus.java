@@ -0,0 +1,92 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides the inputs for the benchmarks. The small and medium inputs
+ * are checked in (see <code>src/main/resources/corpus</code>), the
+ * large inputs are derived from the medium inputs by repetition, 
+ * so that there is no need to keep megabytes of sources in the 
+ * repository.
+ */
+public class Corpus {
+
+	/** The number of repetitions of the medium input in the large input. */
+	public static final int LARGE_REPETITIONS = 150;
+	
+	private Corpus() {
+	}
+	
+	/**
+	 * Returns the input with the given size and type.
+	 * 
+	 * @param size one of "small", "medium" or "large"
+	 * @param type "js" or "css"
+	 * @return the input
+	 */
+	public static String input(String size, String type) {
+		if (size.equals("large")) {
+			String medium = load("medium." + type);
+			StringBuilder result = new StringBuilder(
+					medium.length() * LARGE_REPETITIONS);
+			for (int i = 0; i < LARGE_REPETITIONS; i++) {
+				result.append(medium).append('\n');
+			}
+			return result.toString();
+		}
+		return load(size + "." + type);
+	}
+	
+	private static String load(String name) {
+		String content = resource("/corpus/" + name);
+		if (content == null) {
+			throw new IllegalArgumentException("No input " + name);
+		}
+		return content;
+	}
+	
+	/**
+	 * Returns the content of a resource (encoded as UTF-8).
+	 * 
+	 * @param path the resource's path
+	 * @return the content or {@code null} if the resource doesn't exist
+	 */
+	static String resource(String path) {
+		try (InputStream in = Corpus.class.getResourceAsStream(path)) {
+			if (in == null) {
+				return null;
+			}
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				content.write(buffer, 0, count);
+			}
+			return new String(content.toByteArray(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
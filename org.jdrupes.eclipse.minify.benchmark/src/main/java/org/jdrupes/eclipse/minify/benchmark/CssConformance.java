@@ -0,0 +1,114 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.jdrupes.eclipse.minify.engine.StreamingCssEngine;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+
+/**
+ * Compares the results of the {@link StreamingCssEngine} with the
+ * results of the YUI Compressor for the style sheets in 
+ * <code>src/main/resources/conformance</code> and the benchmark
+ * corpus. A case fails if
+ * 
+ *  * the result of the streaming engine is larger than the result
+ *    of the YUI Compressor,
+ *  * the result differs from the expected result (the file with the
+ *    extension ".min.css", if present) or
+ *  * minifying the result again changes it.
+ *    
+ * In addition, the result of minifying the YUI Compressor's result
+ * with the streaming engine is compared with the streaming engine's
+ * result. Differences are reported but don't fail the case, because
+ * the YUI Compressor applies some optimizations that are known to 
+ * break style sheets (e.g. "0%" in key frames, spaces in "calc()").
+ * 
+ * Run with:
+ * 
+ * ```
+ * java -cp target/benchmarks.jar org.jdrupes.eclipse.minify.benchmark.CssConformance
+ * ```
+ */
+public class CssConformance {
+
+	private static final String[] CASES = { "comments", "selectors", 
+			"values", "at-rules", "strings-urls" };
+	private static final String[] CORPUS = { "small", "medium" };
+	
+	private int failures;
+	
+	public static void main(String[] args) throws IOException {
+		CssConformance conformance = new CssConformance();
+		for (String name: CASES) {
+			conformance.check(name, Corpus.resource(
+					"/conformance/" + name + ".css"), Corpus.resource(
+							"/conformance/" + name + ".min.css"));
+		}
+		for (String size: CORPUS) {
+			conformance.check("corpus " + size, 
+					Corpus.input(size, "css"), null);
+		}
+		System.out.println(conformance.failures == 0 ? "All cases passed." 
+				: (conformance.failures + " case(s) failed."));
+		System.exit(conformance.failures == 0 ? 0 : 1);
+	}
+	
+	private void check(String name, String source, String expected) 
+			throws IOException {
+		String yui = yui(source);
+		String streaming = streaming(source);
+		StringBuilder problems = new StringBuilder();
+		if (streaming.length() > yui.length()) {
+			problems.append("\n  larger than YUI result: ").append(yui);
+		}
+		if (expected != null && !streaming.equals(expected.trim())) {
+			problems.append("\n  expected: ").append(expected.trim());
+		}
+		if (!streaming(streaming).equals(streaming)) {
+			problems.append("\n  not stable when minified again");
+		}
+		System.out.println(String.format("%-14s %s source: %6d, YUI: %6d, "
+				+ "streaming: %6d%s", name, 
+				problems.length() == 0 ? "ok  " : "FAIL", source.length(),
+				yui.length(), streaming.length(),
+				streaming(yui).equals(streaming) ? "" 
+						: " (differs from YUI result)"));
+		if (problems.length() > 0) {
+			System.out.println("  result: " + streaming + problems);
+			failures += 1;
+		}
+	}
+
+	private static String yui(String source) throws IOException {
+		StringWriter out = new StringWriter();
+		new CssCompressor(new StringReader(source)).compress(out, -1);
+		return out.toString();
+	}
+	
+	private static String streaming(String source) throws IOException {
+		StringWriter out = new StringWriter();
+		new StreamingCssEngine().minify(new StringReader(source), out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.jdrupes.eclipse.minify.engine.WhitespaceJsEngine;
+
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceFile;
+
+/**
+ * Checks the results of the {@link WhitespaceJsEngine} for the
+ * scripts in <code>src/main/resources/conformance</code> and the
+ * benchmark corpus. The Google Closure Compiler (WHITESPACE_ONLY) is
+ * used as reference parser. A case fails if
+ *
+ *  * the engine reports a problem,
+ *  * the result differs from the expected result (the file with the
+ *    extension ".min.js", if present),
+ *  * minifying the result again changes it or
+ *  * the Closure Compiler's result for the engine's result differs
+ *    from its result for the source (i.e. the engine has changed
+ *    the meaning of the script).
+ *
+ * Run with:
+ *
+ * ```
+ * java -cp target/benchmarks.jar org.jdrupes.eclipse.minify.benchmark.JsConformance
+ * ```
+ */
+public class JsConformance {
+
+	private static final String[] CASES = { "regex" };
+	private static final String[] CORPUS = { "small", "medium" };
+
+	private int failures;
+
+	public static void main(String[] args) throws IOException {
+		JsConformance conformance = new JsConformance();
+		for (String name: CASES) {
+			conformance.check(name, Corpus.resource(
+					"/conformance/" + name + ".js"), Corpus.resource(
+							"/conformance/" + name + ".min.js"));
+		}
+		for (String size: CORPUS) {
+			conformance.check("corpus " + size,
+					Corpus.input(size, "js"), null);
+		}
+		System.out.println(conformance.failures == 0 ? "All cases passed."
+				: (conformance.failures + " case(s) failed."));
+		System.exit(conformance.failures == 0 ? 0 : 1);
+	}
+
+	private void check(String name, String source, String expected)
+			throws IOException {
+		StringBuilder problems = new StringBuilder();
+		String whitespace = whitespace(source, problems);
+		if (expected != null && !whitespace.equals(expected.trim())) {
+			problems.append("\n  expected: ").append(expected.trim());
+		}
+		if (!whitespace(whitespace, problems).equals(whitespace)) {
+			problems.append("\n  not stable when minified again");
+		}
+		String reference = closure(source);
+		if (reference == null) {
+			problems.append("\n  source not accepted by Closure Compiler");
+		} else if (!reference.equals(closure(whitespace))) {
+			problems.append("\n  differs from source when parsed by "
+					+ "Closure Compiler");
+		}
+		System.out.println(String.format("%-14s %s source: %6d, "
+				+ "whitespace: %6d", name,
+				problems.length() == 0 ? "ok  " : "FAIL", source.length(),
+				whitespace.length()));
+		if (problems.length() > 0) {
+			System.out.println("  result: " + whitespace + problems);
+			failures += 1;
+		}
+	}
+
+	private static String whitespace(String source, StringBuilder problems)
+			throws IOException {
+		StringWriter out = new StringWriter();
+		new WhitespaceJsEngine().minify(new StringReader(source), out,
+				(message, line, severity) -> problems.append("\n  line ")
+					.append(line).append(": ").append(message));
+		return out.toString();
+	}
+
+	/**
+	 * Returns the Closure Compiler's result or {@code null} if
+	 * the source has errors.
+	 */
+	private static String closure(String source) {
+		Compiler compiler = new Compiler(new PrintStream(new NullOutputStream()));
+		CompilerOptions options = new CompilerOptions();
+		CompilationLevel.WHITESPACE_ONLY.setOptionsForCompilationLevel(options);
+		options.setOutputCharset(StandardCharsets.US_ASCII);
+		if (!compiler.compile(Collections.emptyList(),
+				Collections.singletonList(SourceFile.fromCode("input.js", source)),
+				options).success) {
+			return null;
+		}
+		return compiler.toSource();
+	}
+
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
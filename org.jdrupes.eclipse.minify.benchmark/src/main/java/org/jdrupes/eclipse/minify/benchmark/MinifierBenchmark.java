@@ -0,0 +1,204 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jdrupes.eclipse.minify.engine.GccEngine;
+import org.jdrupes.eclipse.minify.engine.MinifyOptions;
+import org.jdrupes.eclipse.minify.engine.ProblemReporter;
+import org.jdrupes.eclipse.minify.engine.StreamingCssEngine;
+import org.jdrupes.eclipse.minify.engine.WhitespaceJsEngine;
+import org.jdrupes.eclipse.minify.engine.YuiCssEngine;
+import org.jdrupes.eclipse.minify.engine.YuiJsEngine;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the minifier engines with the options used by the
+ * builder's defaults. The engines are the classes that the builder
+ * (and its worker processes) use, so the results include the
+ * conversions between the files' bytes and the minifiers' input. Each benchmark is run in throughput mode and
+ * in sample time mode (latency distribution). The number of input
+ * bytes processed is reported as auxiliary counter "inputBytes"
+ * (bytes per second in throughput mode). Run with "-prof gc" to
+ * get the allocation rate.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MinifierBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String size;
+	
+	private static final String CHARSET = StandardCharsets.UTF_8.name();
+	private static final ProblemReporter IGNORE 
+		= (message, line, severity) -> {};
+	
+	private String js;
+	private String css;
+	private byte[] jsBytes;
+	private byte[] cssBytes;
+	private YuiCssEngine yuiCssEngine;
+	private YuiJsEngine yuiJsEngine;
+	private GccEngine gccWhitespaceOnlyEngine;
+	private GccEngine gccSimpleEngine;
+	private GccEngine gccAdvancedEngine;
+	
+	/**
+	 * Counts the processed bytes.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Processed {
+		public long inputBytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			inputBytes = 0;
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		js = Corpus.input(size, "js");
+		css = Corpus.input(size, "css");
+		jsBytes = js.getBytes(StandardCharsets.UTF_8);
+		cssBytes = css.getBytes(StandardCharsets.UTF_8);
+		yuiCssEngine = new YuiCssEngine();
+		// Default options, as set by the builder's property page
+		yuiJsEngine = new YuiJsEngine(options(MinifyOptions.YUI_COMPRESSOR, 
+				null));
+		gccWhitespaceOnlyEngine = gccEngine(
+				MinifyOptions.GCC_OPT_WHITESPACE_ONLY);
+		gccSimpleEngine = gccEngine(MinifyOptions.GCC_OPT_SIMPLE);
+		gccAdvancedEngine = gccEngine(MinifyOptions.GCC_OPT_ADVANCED);
+	}
+
+	private static MinifyOptions options(String minifier, 
+			String gccOptimization) {
+		Map<String,String> properties = new HashMap<>();
+		properties.put(MinifyOptions.MINIFIER, minifier);
+		if (gccOptimization != null) {
+			properties.put(MinifyOptions.GCC_OPTIMIZATION, gccOptimization);
+		}
+		return MinifyOptions.of(properties::get);
+	}
+	
+	private static GccEngine gccEngine(String gccOptimization) {
+		return new GccEngine(options(MinifyOptions.GOOGLE_CLOSURE_COMPILER, 
+				gccOptimization), Collections.emptyList(), 
+				new PrintStream(new NullOutputStream()));
+	}
+
+	@Benchmark
+	public byte[] yuiCss(Processed processed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		yuiCssEngine.minify(new ByteArrayInputStream(cssBytes), CHARSET,
+				out, CHARSET);
+		processed.inputBytes += cssBytes.length;
+		return out.toByteArray();
+	}
+	
+	@Benchmark
+	public String streamingCss(Processed processed) throws IOException {
+		StringWriter out = new StringWriter();
+		new StreamingCssEngine().minify(new StringReader(css), out);
+		processed.inputBytes += cssBytes.length;
+		return out.toString();
+	}
+	
+	@Benchmark
+	public byte[] yuiJs(Processed processed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		yuiJsEngine.minify(new ByteArrayInputStream(jsBytes), CHARSET,
+				out, CHARSET, IGNORE);
+		processed.inputBytes += jsBytes.length;
+		return out.toByteArray();
+	}
+	
+	@Benchmark
+	public String whitespaceJs(Processed processed) throws IOException {
+		StringWriter out = new StringWriter();
+		new WhitespaceJsEngine().minify(new StringReader(js), out, IGNORE);
+		processed.inputBytes += jsBytes.length;
+		return out.toString();
+	}
+	
+	@Benchmark
+	public byte[] gccWhitespaceOnly(Processed processed) throws IOException {
+		return closure(gccWhitespaceOnlyEngine, processed);
+	}
+
+	@Benchmark
+	public byte[] gccSimple(Processed processed) throws IOException {
+		return closure(gccSimpleEngine, processed);
+	}
+
+	@Benchmark
+	public byte[] gccAdvanced(Processed processed) throws IOException {
+		return closure(gccAdvancedEngine, processed);
+	}
+
+	private byte[] closure(GccEngine engine, Processed processed) 
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		engine.minify(new ByteArrayInputStream(jsBytes), CHARSET, "input.js",
+				out, CHARSET, null, null, IGNORE);
+		processed.inputBytes += jsBytes.length;
+		return out.toByteArray();
+	}
+	
+	
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
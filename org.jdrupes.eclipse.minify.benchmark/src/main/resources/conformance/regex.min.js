@@ -0,0 +1 @@
+var a=b/c/d;var e=(f+g)/2;var h=i[0]/2;var j=k++/2;var l=/[/]+/g.test(m);var n=typeof/x/;var o=m.replace(/'/g,"\\'");if(s)/'/.test(s)&&p();while(q(s))/a/.exec(s);for(var t in u)/"/.test(t)||r(t);if(v(w))/^x$/i.test(w)?p():r();var x=y.if(z)/2;var aa=bb.for(cc)/2;var dd=ee(ff)/gg(hh);var ii=(jj)/2;
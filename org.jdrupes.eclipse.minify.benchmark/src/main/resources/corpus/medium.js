@@ -0,0 +1,548 @@
+/*
+ * A medium sized library: a simple widget framework with
+ * an event bus, templating and some widgets.
+ */
+var Widgets = (function() {
+	"use strict";
+
+	/**
+	 * A simple event bus.
+	 * @constructor
+	 */
+	function EventBus() {
+		this.handlers = {};
+	}
+
+	EventBus.prototype.on = function(eventName, handler) {
+		if (!this.handlers[eventName]) {
+			this.handlers[eventName] = [];
+		}
+		this.handlers[eventName].push(handler);
+		return this;
+	};
+
+	EventBus.prototype.off = function(eventName, handler) {
+		var handlers = this.handlers[eventName];
+		if (!handlers) {
+			return this;
+		}
+		for (var i = handlers.length - 1; i >= 0; i--) {
+			if (handlers[i] === handler) {
+				handlers.splice(i, 1);
+			}
+		}
+		return this;
+	};
+
+	EventBus.prototype.emit = function(eventName) {
+		var args = Array.prototype.slice.call(arguments, 1);
+		var handlers = this.handlers[eventName] || [];
+		for (var i = 0; i < handlers.length; i++) {
+			handlers[i].apply(null, args);
+		}
+		return this;
+	};
+
+	var bus = new EventBus();
+
+	/**
+	 * Replaces placeholders of the form {{name}} with values.
+	 */
+	function render(template, values) {
+		return template.replace(/\{\{\s*(\w+)\s*\}\}/g, function(match, name) {
+			var value = values[name];
+			return value === undefined || value === null ? "" : escapeHtml(String(value));
+		});
+	}
+
+	function escapeHtml(text) {
+		return text.replace(/&/g, "&amp;").replace(/</g, "&lt;")
+			.replace(/>/g, "&gt;").replace(/"/g, "&quot;");
+	}
+
+	/**
+	 * The Counter widget.
+	 * @constructor
+	 */
+	function Counter(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-counter">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("counter:update", this.listener);
+	}
+
+	Counter.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Counter.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Counter",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "counter", this.state.value);
+	};
+
+	Counter.prototype.destroy = function() {
+		bus.off("counter:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Clock widget.
+	 * @constructor
+	 */
+	function Clock(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-clock">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("clock:update", this.listener);
+	}
+
+	Clock.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Clock.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Clock",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "clock", this.state.value);
+	};
+
+	Clock.prototype.destroy = function() {
+		bus.off("clock:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Accordion widget.
+	 * @constructor
+	 */
+	function Accordion(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-accordion">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("accordion:update", this.listener);
+	}
+
+	Accordion.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Accordion.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Accordion",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "accordion", this.state.value);
+	};
+
+	Accordion.prototype.destroy = function() {
+		bus.off("accordion:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Tabs widget.
+	 * @constructor
+	 */
+	function Tabs(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-tabs">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("tabs:update", this.listener);
+	}
+
+	Tabs.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Tabs.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Tabs",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "tabs", this.state.value);
+	};
+
+	Tabs.prototype.destroy = function() {
+		bus.off("tabs:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Tooltip widget.
+	 * @constructor
+	 */
+	function Tooltip(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-tooltip">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("tooltip:update", this.listener);
+	}
+
+	Tooltip.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Tooltip.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Tooltip",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "tooltip", this.state.value);
+	};
+
+	Tooltip.prototype.destroy = function() {
+		bus.off("tooltip:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Dialog widget.
+	 * @constructor
+	 */
+	function Dialog(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-dialog">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("dialog:update", this.listener);
+	}
+
+	Dialog.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Dialog.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Dialog",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "dialog", this.state.value);
+	};
+
+	Dialog.prototype.destroy = function() {
+		bus.off("dialog:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Pager widget.
+	 * @constructor
+	 */
+	function Pager(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-pager">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("pager:update", this.listener);
+	}
+
+	Pager.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Pager.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Pager",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "pager", this.state.value);
+	};
+
+	Pager.prototype.destroy = function() {
+		bus.off("pager:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Rating widget.
+	 * @constructor
+	 */
+	function Rating(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-rating">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("rating:update", this.listener);
+	}
+
+	Rating.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Rating.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Rating",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "rating", this.state.value);
+	};
+
+	Rating.prototype.destroy = function() {
+		bus.off("rating:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Slider widget.
+	 * @constructor
+	 */
+	function Slider(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-slider">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("slider:update", this.listener);
+	}
+
+	Slider.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Slider.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Slider",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "slider", this.state.value);
+	};
+
+	Slider.prototype.destroy = function() {
+		bus.off("slider:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Toggle widget.
+	 * @constructor
+	 */
+	function Toggle(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-toggle">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("toggle:update", this.listener);
+	}
+
+	Toggle.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Toggle.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Toggle",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "toggle", this.state.value);
+	};
+
+	Toggle.prototype.destroy = function() {
+		bus.off("toggle:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Progress widget.
+	 * @constructor
+	 */
+	function Progress(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-progress">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("progress:update", this.listener);
+	}
+
+	Progress.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Progress.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Progress",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "progress", this.state.value);
+	};
+
+	Progress.prototype.destroy = function() {
+		bus.off("progress:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	/**
+	 * The Badge widget.
+	 * @constructor
+	 */
+	function Badge(element, options) {
+		this.element = element;
+		this.options = options || {};
+		this.state = { value: this.options.initial || 0, visible: true };
+		this.template = '<div class="widget-badge">'
+			+ '<span class="label">{{label}}</span>'
+			+ '<span class="value">{{value}}</span></div>';
+		this.listener = this.onEvent.bind(this);
+		bus.on("badge:update", this.listener);
+	}
+
+	Badge.prototype.onEvent = function(newValue) {
+		if (typeof newValue === "number" && newValue !== this.state.value) {
+			this.state.value = newValue;
+			this.update();
+		}
+	};
+
+	Badge.prototype.update = function() {
+		if (!this.state.visible) {
+			return;
+		}
+		this.element.innerHTML = render(this.template, {
+			label: this.options.label || "Badge",
+			value: this.state.value
+		});
+		bus.emit("widget:updated", "badge", this.state.value);
+	};
+
+	Badge.prototype.destroy = function() {
+		bus.off("badge:update", this.listener);
+		this.element.innerHTML = "";
+		this.state.visible = false;
+	};
+
+	return {
+		bus: bus,
+		render: render,
+		Counter: Counter,
+		Clock: Clock,
+		Accordion: Accordion,
+		Tabs: Tabs,
+		Tooltip: Tooltip,
+		Dialog: Dialog,
+		Pager: Pager,
+		Rating: Rating,
+		Slider: Slider,
+		Toggle: Toggle,
+		Progress: Progress,
+		Badge: Badge,
+		version: "1.0.0"
+	};
+})();
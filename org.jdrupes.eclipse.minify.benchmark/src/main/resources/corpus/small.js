@@ -0,0 +1,32 @@
+/*
+ * A small script as typically found in web applications: some event
+ * handlers and helper functions.
+ */
+(function() {
+	"use strict";
+
+	function formatDate(date) {
+		var day = ("0" + date.getDate()).slice(-2);
+		var month = ("0" + (date.getMonth() + 1)).slice(-2);
+		return date.getFullYear() + "-" + month + "-" + day;
+	}
+
+	function updateTimestamps() {
+		var elements = document.querySelectorAll("[data-timestamp]");
+		for (var i = 0; i < elements.length; i++) {
+			var timestamp = parseInt(elements[i].getAttribute("data-timestamp"), 10);
+			elements[i].textContent = formatDate(new Date(timestamp));
+		}
+	}
+
+	document.addEventListener("DOMContentLoaded", function() {
+		updateTimestamps();
+		var toggle = document.getElementById("menu-toggle");
+		if (toggle) {
+			toggle.addEventListener("click", function(event) {
+				event.preventDefault();
+				document.body.classList.toggle("menu-open");
+			});
+		}
+	});
+})();
@@ -0,0 +1,314 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.mozilla.javascript.EvaluatorException;
+
+import com.google.javascript.jscomp.SourceFile;
+
+/**
+ * Minifies the files of a project outside the IDE, using the settings 
+ * stored by the builder in the project's 
+ * <code>.settings/org.jdrupes.eclipse.minify.plugin.minifyBuilder.prefs</code>.
+ * The charsets of the files are taken from 
+ * <code>.settings/org.eclipse.core.resources.prefs</code>, falling back 
+ * to the JVM's default charset (as the workspace does). 
+ * 
+ * Outputs (and source maps) are written alongside the sources, 
+ * problems are reported on the standard error stream. The process
+ * terminates with exit code 1 if errors have been reported.
+ * 
+ * Usage: <code>BatchMinifier [-j &lt;threads&gt;] &lt;project directory&gt;</code>
+ */
+public class BatchMinifier {
+
+	public static final String SETTINGS_FILE 
+		= ".settings/org.jdrupes.eclipse.minify.plugin.minifyBuilder.prefs";
+	private static final String RESOURCES_SETTINGS_FILE 
+		= ".settings/org.eclipse.core.resources.prefs";
+	
+	private File projectDir;
+	private Properties settings = new Properties();
+	private Properties resources = new Properties();
+	private MinifyRules rules;
+	private int parallelism;
+	private PrintStream log = System.err;
+	private AtomicInteger errors = new AtomicInteger();
+	
+	/**
+	 * Creates a new instance for the given project.
+	 * 
+	 * @param projectDir the project's directory
+	 * @param parallelism the number of files minified in parallel,
+	 * if 0 the value from the settings is used, defaulting to the
+	 * number of available processors
+	 * @throws IOException
+	 */
+	public BatchMinifier(File projectDir, int parallelism) throws IOException {
+		this.projectDir = projectDir;
+		load(settings, new File(projectDir, SETTINGS_FILE));
+		load(resources, new File(projectDir, RESOURCES_SETTINGS_FILE));
+		rules = MinifyRules.parse(settings.getProperty(MinifyRules.KEY));
+		this.parallelism = parallelism > 0 ? parallelism 
+				: Integer.parseInt(settings.getProperty("parallelism", 
+						Integer.toString(Runtime.getRuntime().availableProcessors())));
+	}
+
+	private static void load(Properties props, File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			props.load(in);
+		}
+	}
+	
+	/**
+	 * Returns the project relative paths of all files that have
+	 * a minifier configured, either for the file or by the rules.
+	 * 
+	 * @return the paths
+	 */
+	public List<String> configuredPaths() {
+		String prefix = MinifyOptions.MINIFIER + "//";
+		TreeSet<String> result = new TreeSet<>();
+		for (String key: settings.stringPropertyNames()) {
+			if (key.startsWith(prefix) && !settings.getProperty(key)
+					.equals(MinifyOptions.DONT_MINIFY)) {
+				result.add(key.substring(prefix.length()));
+			}
+		}
+		if (!rules.isEmpty()) {
+			addMatching(result, projectDir, "");
+		}
+		return new ArrayList<>(result);
+	}
+
+	private void addMatching(Set<String> result, File folder, String path) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file: files) {
+			String filePath = path.isEmpty() ? file.getName() 
+					: path + "/" + file.getName();
+			if (file.isDirectory()) {
+				if (!file.getName().startsWith(".")
+						&& rules.mayMatchIn(filePath)) {
+					addMatching(result, file, filePath);
+				}
+			} else if (settings.getProperty(
+					MinifyOptions.MINIFIER + "//" + filePath) == null
+					&& rules.isConfigured(filePath)) {
+				result.add(filePath);
+			}
+		}
+	}
+	
+	/**
+	 * Minifies all configured files.
+	 * 
+	 * @return the number of errors reported
+	 * @throws InterruptedException 
+	 */
+	public int run() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (String path: configuredPaths()) {
+				if (new File(projectDir, path).isFile()) {
+					results.add(executor.submit(() -> {
+						minify(path);
+						return null;
+					}));
+				}
+			}
+			for (Future<?> result: results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					errors.incrementAndGet();
+					log.println(e.getCause().toString());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return errors.get();
+	}
+	
+	/**
+	 * Minifies the file with the given path as the builder does.
+	 * 
+	 * @param path the project relative path
+	 * @throws IOException
+	 */
+	private void minify(String path) throws IOException {
+		// Properties stored for the file override the rules
+		MinifyOptions options = settings.getProperty(
+				MinifyOptions.MINIFIER + "//" + path) != null
+				? MinifyOptions.of(
+						property -> settings.getProperty(property + "//" + path))
+				: MinifyOptions.of(rules.properties(path)::get);
+		File srcFile = new File(projectDir, path);
+		String srcName = srcFile.getName();
+		int dot = srcName.lastIndexOf('.');
+		String destPath = path.substring(0, path.length() - srcName.length())
+				+ srcName.substring(0, dot) + ".min" + srcName.substring(dot);
+		File destFile = new File(projectDir, destPath);
+		String inCharset = charset(path);
+		ProblemReporter reporter = (message, lineNumber, severity) -> {
+			if (severity == ProblemReporter.SEVERITY_ERROR) {
+				errors.incrementAndGet();
+			}
+			log.println(path + ":" + lineNumber + ": " 
+					+ (severity == ProblemReporter.SEVERITY_ERROR 
+						? "error" : "warning") + ": " + message);
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream map = new ByteArrayOutputStream();
+		String outCharset;
+		try (InputStream in = new FileInputStream(srcFile)) {
+			if (srcName.endsWith(".css")) {
+				outCharset = destFile.exists() ? charset(destPath) : inCharset;
+				if (options.minifier().equals(MinifyOptions.STREAMING_CSS)) {
+					new StreamingCssEngine().minify(
+							in, inCharset, out, outCharset);
+				} else {
+					new YuiCssEngine().minify(in, inCharset, out, outCharset);
+				}
+			} else if (options.minifier().equals(MinifyOptions.YUI_COMPRESSOR)) {
+				outCharset = destFile.exists() ? charset(destPath) : inCharset;
+				new YuiJsEngine(options).minify(
+						in, inCharset, out, outCharset, reporter);
+			} else if (options.minifier().equals(
+					MinifyOptions.GOOGLE_CLOSURE_COMPILER)) {
+				outCharset = destFile.exists() ? charset(destPath) : "ascii";
+				new GccEngine(options, customExterns(options), log).minify(
+						in, inCharset, srcName, out, outCharset, 
+						destFile.getName() + ".map", map, reporter);
+			} else if (options.minifier().equals(MinifyOptions.WHITESPACE_JS)) {
+				outCharset = destFile.exists() ? charset(destPath) : inCharset;
+				if (!new WhitespaceJsEngine().minify(
+						in, inCharset, out, outCharset, reporter)) {
+					return;
+				}
+			} else {
+				return;
+			}
+		} catch (EvaluatorException e) {
+			// Already reported
+			return;
+		}
+		Files.write(destFile.toPath(), out.toByteArray());
+		if (map.size() > 0) {
+			Files.write(new File(destFile.getPath() + ".map").toPath(), 
+					map.toByteArray());
+		}
+		int gzipLevel = Integer.parseInt(settings.getProperty("gzipLevel", "0"));
+		if (gzipLevel > 0) {
+			try (OutputStream gzOut = new GZIPOutputStream(new FileOutputStream(
+					destFile.getPath() + ".gz")) {
+						{
+							def.setLevel(gzipLevel);
+						}
+					}) {
+				out.writeTo(gzOut);
+			}
+		}
+	}
+
+	private List<SourceFile> customExterns(MinifyOptions options) 
+			throws IOException {
+		List<SourceFile> result = new ArrayList<>();
+		for (String path: options.externs()) {
+			byte[] content = Files.readAllBytes(
+					new File(projectDir, path).toPath());
+			// Same name as used in the workspace
+			result.add(SourceFile.fromCode(
+					"/" + projectDir.getName() + "/" + path, 
+					new String(content, charset(path))));
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the charset of the file with the given path, using the
+	 * same lookup as the workspace.
+	 * 
+	 * @param path the project relative path
+	 * @return the charset
+	 */
+	private String charset(String path) {
+		String current = path;
+		while (true) {
+			String charset = resources.getProperty("encoding//" + current);
+			if (charset != null) {
+				return charset;
+			}
+			int slash = current.lastIndexOf('/');
+			if (slash < 0) {
+				break;
+			}
+			current = current.substring(0, slash);
+		}
+		String charset = resources.getProperty("encoding/<project>");
+		return charset != null ? charset : Charset.defaultCharset().name();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		int parallelism = 0;
+		String project = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-j") && i + 1 < args.length) {
+				parallelism = Integer.parseInt(args[++i]);
+			} else {
+				project = args[i];
+			}
+		}
+		if (project == null) {
+			System.err.println("Usage: BatchMinifier [-j <threads>] <project directory>");
+			System.exit(2);
+		}
+		int errors = new BatchMinifier(new File(project), parallelism).run();
+		System.exit(errors > 0 ? 1 : 0);
+	}
+}
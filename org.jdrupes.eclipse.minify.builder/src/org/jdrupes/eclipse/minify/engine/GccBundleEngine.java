@@ -0,0 +1,309 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import com.google.javascript.jscomp.CheckLevel;
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.ErrorHandler;
+import com.google.javascript.jscomp.JSError;
+import com.google.javascript.jscomp.JSModule;
+import com.google.javascript.jscomp.SourceFile;
+
+/**
+ * Compiles the sources of a bundle in a single invocation of the
+ * Google Closure Compiler. Because the compiler sees all sources,
+ * optimizations (and the source maps) span all files.
+ *
+ * The sources are compiled as Closure modules, one for each chunk
+ * of the bundle, all depending on the base chunk. A bundle without
+ * chunks consists of the base chunk only. The engine is used by the
+ * IDE and by the {@link MinifyWorker}, so it only depends on the
+ * {@link Sources}, not on the workspace.
+ */
+public class GccBundleEngine {
+
+	/** The name of the base chunk. */
+	public static final String BASE = "";
+
+	private CompilationLevel compilationLevel;
+	private boolean createMapFile;
+	private boolean includeSource;
+	private PrintStream err;
+	private BooleanSupplier cancelled = () -> false;
+
+	/**
+	 * Receives the problems found in a bundle's sources.
+	 */
+	@FunctionalInterface
+	public interface MemberReporter {
+
+		/**
+		 * Reports a problem.
+		 *
+		 * @param member the name of the source
+		 * @param message the message
+		 * @param lineNumber the line number
+		 * @param severity the severity
+		 */
+		void report(String member, String message, int lineNumber,
+				int severity);
+	}
+
+	/**
+	 * The sources of a bundle and the outputs of its chunks.
+	 */
+	public static class Sources {
+		private Map<String,String> outputs = new LinkedHashMap<>();
+		private Map<String,String> members = new LinkedHashMap<>();
+		private Map<String,String> chunks = new HashMap<>();
+
+		/**
+		 * Creates the sources of a bundle.
+		 *
+		 * @param output the path of the base chunk's output
+		 */
+		public Sources(String output) {
+			outputs.put(BASE, output);
+		}
+
+		Sources(Map<String,String> outputs, Map<String,String> members,
+				Map<String,String> chunks) {
+			this.outputs = outputs;
+			this.members = members;
+			this.chunks = chunks;
+		}
+
+		/**
+		 * Adds a chunk. The chunks are compiled in the order in
+		 * which they have been added.
+		 *
+		 * @param chunk the chunk's name
+		 * @param output the path of the chunk's output
+		 * @return the sources for easy chaining
+		 */
+		public Sources addChunk(String chunk, String output) {
+			outputs.put(chunk, output);
+			return this;
+		}
+
+		/**
+		 * Adds a source.
+		 *
+		 * @param name the source's name, used in problem reports and
+		 * the source maps
+		 * @param code the source's code
+		 * @param chunk the name of the chunk the source belongs to
+		 * or {@link #BASE}
+		 * @return the sources for easy chaining
+		 */
+		public Sources addMember(String name, String code, String chunk) {
+			members.put(name, code);
+			if (!chunk.equals(BASE)) {
+				chunks.put(name, chunk);
+			}
+			return this;
+		}
+
+		/**
+		 * @return the paths of the outputs, mapped by the chunk names
+		 */
+		Map<String,String> outputs() {
+			return outputs;
+		}
+
+		/**
+		 * @return the code of the sources, mapped by their names
+		 */
+		Map<String,String> members() {
+			return members;
+		}
+
+		/**
+		 * @return the chunks of the sources that don't belong
+		 * to the base chunk, mapped by the sources' names
+		 */
+		Map<String,String> chunks() {
+			return chunks;
+		}
+	}
+
+	/**
+	 * Creates a new engine.
+	 *
+	 * @param options the bundle's options
+	 * @param err the stream for the compiler's messages
+	 */
+	public GccBundleEngine(MinifyOptions options, PrintStream err) {
+		compilationLevel = GccEngine.compilationLevel(options.gccOptimization());
+		createMapFile = options.createMapFile();
+		includeSource = options.includeSource();
+		this.err = err;
+	}
+
+	/**
+	 * Sets the condition that is checked by the compiler between its
+	 * passes. If it becomes {@code true}, the compilation is aborted.
+	 *
+	 * @param cancelled the condition
+	 * @return the engine for easy chaining
+	 */
+	public GccBundleEngine setCancelled(BooleanSupplier cancelled) {
+		this.cancelled = cancelled;
+		return this;
+	}
+
+	/**
+	 * Compiles the bundle. The result of each chunk is written to the
+	 * output obtained for the chunk's path, its source map (if
+	 * requested) to the output obtained for the path with ".map"
+	 * appended. Nothing is written if the compilation fails.
+	 *
+	 * @param sources the sources
+	 * @param outCharset the outputs' charset
+	 * @param outputs provides the outputs, which are closed when done
+	 * @param reporter receives the problems found
+	 * @return {@code false} if the compilation failed
+	 * (details have been passed to the reporter)
+	 * @throws IOException
+	 * @throws InterruptedIOException if the compilation has been cancelled
+	 */
+	public boolean compile(Sources sources, String outCharset,
+			Function<String,OutputStream> outputs, MemberReporter reporter)
+			throws IOException {
+		// Assign members to chunks
+		Map<String,JSModule> modules = new LinkedHashMap<>();
+		for (String chunk: sources.outputs().keySet()) {
+			JSModule module = new JSModule(chunk.equals(BASE) ? "base" : chunk);
+			if (!chunk.equals(BASE)) {
+				module.addDependency(modules.get(BASE));
+			}
+			modules.put(chunk, module);
+		}
+		for (Map.Entry<String,String> member: sources.members().entrySet()) {
+			modules.get(sources.chunks().getOrDefault(member.getKey(), BASE))
+				.add(SourceFile.fromCode(member.getKey(), member.getValue()));
+		}
+		List<JSModule> allModules = new ArrayList<>(modules.values());
+
+		// Compile
+		Compiler compiler = new GccEngine.CancellableCompiler(err, cancelled);
+		CompilerOptions options = new CompilerOptions();
+		compilationLevel.setOptionsForCompilationLevel(options);
+		options.setOutputCharset(Charset.forName(outCharset));
+		options.setErrorHandler(new BundleErrorHandler(reporter));
+		if (createMapFile) {
+			// Any value enables the creation of source maps
+			options.setSourceMapOutputPath(sources.outputs().get(BASE) + ".map");
+			options.setSourceMapIncludeSourcesContent(includeSource);
+		}
+		List<SourceFile> externs = compilationLevel
+				== CompilationLevel.WHITESPACE_ONLY ? new ArrayList<>()
+				: new ArrayList<>(GccEngine.builtinExterns(
+						options.getEnvironment()));
+		boolean success
+			= compiler.compileModules(externs, allModules, options).success;
+		if (cancelled.getAsBoolean()) {
+			throw new InterruptedIOException("Minification cancelled");
+		}
+		if (!success) {
+			// Reported as problems
+			return false;
+		}
+
+		// Write results
+		StringBuilder sizes = new StringBuilder();
+		for (Map.Entry<String,JSModule> entry: modules.entrySet()) {
+			String output = sources.outputs().get(entry.getKey());
+			String outputName = output.substring(output.lastIndexOf('/') + 1);
+			if (createMapFile) {
+				compiler.getSourceMap().reset();
+			}
+			String code = compiler.toSource(entry.getValue());
+			if (createMapFile) {
+				code = code + "\n//# sourceMappingURL=" + outputName + ".map";
+				StringBuilder map = new StringBuilder();
+				compiler.getSourceMap().appendTo(map, outputName);
+				try (OutputStream out = outputs.apply(output + ".map")) {
+					out.write(map.toString().getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			byte[] content = code.getBytes(outCharset);
+			try (OutputStream out = outputs.apply(output)) {
+				out.write(content);
+			}
+			sizes.append(sizes.length() == 0 ? "" : ", ")
+				.append(entry.getValue().getName()).append(": ")
+				.append(content.length).append(" bytes");
+		}
+		if (modules.size() > 1) {
+			err.println("Chunks of " + sources.outputs().get(BASE)
+				+ " (" + sizes + ")");
+			err.flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Passes the problems to the reporter.
+	 */
+	private static class BundleErrorHandler implements ErrorHandler {
+
+		private MemberReporter reporter;
+
+		public BundleErrorHandler(MemberReporter reporter) {
+			this.reporter = reporter;
+		}
+
+		@Override
+		public void report(CheckLevel level, JSError error) {
+			int severity;
+			switch (level) {
+			case ERROR:
+				severity = ProblemReporter.SEVERITY_ERROR;
+				break;
+			case WARNING:
+				severity = ProblemReporter.SEVERITY_WARNING;
+				break;
+			default:
+				return;
+			}
+			if (error.sourceName == null) {
+				return;
+			}
+			reporter.report(error.sourceName, error.description,
+					error.getLineNumber(), severity);
+		}
+	}
+}
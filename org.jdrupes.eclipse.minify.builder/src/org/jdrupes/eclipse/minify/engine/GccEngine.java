@@ -0,0 +1,300 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import com.google.javascript.jscomp.CheckLevel;
+import com.google.javascript.jscomp.CommandLineRunner;
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.ErrorHandler;
+import com.google.javascript.jscomp.JSError;
+import com.google.javascript.jscomp.SourceFile;
+import com.google.javascript.jscomp.SourceMap;
+
+/**
+ * Minifies JavaScript using the Google Closure Compiler.
+ */
+public class GccEngine {
+
+	private static Map<CompilerOptions.Environment,List<SourceFile>> builtins
+		= new ConcurrentHashMap<>();
+
+	private CompilationLevel compilationLevel;
+	private boolean createMapFile;
+	private boolean includeSource;
+	private List<SourceFile> customExterns;
+	private PrintStream err;
+	private BooleanSupplier cancelled = () -> false;
+	
+	/**
+	 * Creates a new engine.
+	 * 
+	 * @param options the options
+	 * @param customExterns the externs from the files configured in
+	 * the options
+	 * @param err the stream for the compiler's messages
+	 */
+	public GccEngine(MinifyOptions options, List<SourceFile> customExterns,
+			PrintStream err) {
+		compilationLevel = compilationLevel(options.gccOptimization());
+		createMapFile = options.createMapFile();
+		includeSource = options.includeSource();
+		this.customExterns = customExterns;
+		this.err = err;
+	}
+
+	/**
+	 * Sets the condition that is checked by the compiler between its
+	 * passes. If it becomes {@code true}, the compilation is aborted.
+	 * 
+	 * @param cancelled the condition
+	 * @return the engine for easy chaining
+	 */
+	public GccEngine setCancelled(BooleanSupplier cancelled) {
+		this.cancelled = cancelled;
+		return this;
+	}
+	
+	/**
+	 * Maps the value of the optimization property to the compilation level.
+	 * 
+	 * @param optLevel the property value
+	 * @return the compilation level
+	 */
+	public static CompilationLevel compilationLevel(String optLevel) {
+		switch (optLevel) {
+		case MinifyOptions.GCC_OPT_ADVANCED:
+			return CompilationLevel.ADVANCED_OPTIMIZATIONS;
+		case MinifyOptions.GCC_OPT_SIMPLE:
+			return CompilationLevel.SIMPLE_OPTIMIZATIONS;
+		default:
+			return CompilationLevel.WHITESPACE_ONLY;
+		}
+	}
+	
+	/**
+	 * Returns the compiler's default externs for the given environment.
+	 * 
+	 * Loading the default externs means unpacking and reading several 
+	 * hundred kilobytes from the compiler's jar, which is repeated for 
+	 * every {@link CommandLineRunner} by default. The loaded 
+	 * {@link SourceFile}s are immutable once their code has been read, 
+	 * so they are kept for the lifetime of the JVM and shared between 
+	 * compilations.
+	 * 
+	 * @param environment the environment
+	 * @return the externs, must not be modified
+	 * @throws IOException
+	 */
+	public static List<SourceFile> builtinExterns(
+			CompilerOptions.Environment environment) throws IOException {
+		List<SourceFile> builtin = builtins.get(environment);
+		if (builtin == null) {
+			builtin = new ArrayList<>();
+			for (SourceFile source: CommandLineRunner.getBuiltinExterns(environment)) {
+				// Make sure the code is loaded before sharing the instance
+				source.getCode();
+				builtin.add(source);
+			}
+			builtins.put(environment, builtin);
+		}
+		return builtin;
+	}
+	
+	/**
+	 * Minifies the input.
+	 * 
+	 * @param in the input
+	 * @param inCharset the input's charset
+	 * @param srcName the name of the source file (used in the source map)
+	 * @param out the output, closed when done
+	 * @param outCharset the output's charset
+	 * @param mapName the name of the source map file (referenced by
+	 * the output), ignored if no source map is to be created
+	 * @param mapOut the output for the source map, closed when done,
+	 * may be {@code null} if no source map is to be created
+	 * @param reporter receives the problems found
+	 * @throws IOException
+	 * @throws InterruptedIOException if the compilation has been cancelled
+	 */
+	public void minify(InputStream in, String inCharset, String srcName,
+			OutputStream out, String outCharset, String mapName,
+			OutputStream mapOut, ProblemReporter reporter) throws IOException {
+		PrintStream stdout = new PrintStream(out);
+		File mapFile = null;
+		try {
+			if (createMapFile && mapOut != null) {
+				mapFile = File.createTempFile("minify", ".map");
+			}
+			CommandLineRunner clr = new GccCommandLineRunner(in, stdout, 
+					inCharset, srcName, outCharset, mapFile, mapName, reporter);
+			clr.setExitCodeReceiver((r) -> { return null; }); 
+			clr.run();
+			if (cancelled.getAsBoolean()) {
+				throw new InterruptedIOException("Minification cancelled");
+			}
+			if (mapFile != null) {
+				copySourceMap(mapFile, mapOut);
+			}
+		} finally {
+			stdout.close();
+			if (mapFile != null) {
+				mapFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Copies a source map written by a {@link CommandLineRunner},
+	 * which only writes maps to the file system.
+	 * 
+	 * @param mapFile the temporary file with the source map
+	 * @param mapOut the output, closed when done
+	 * @throws IOException
+	 */
+	private static void copySourceMap(File mapFile, OutputStream mapOut) 
+			throws IOException {
+		try (OutputStream out = mapOut) {
+			if (mapFile.length() > 0) {
+				Files.copy(mapFile.toPath(), out);
+			}
+		}
+	}
+	
+	/**
+	 * A compiler that can be stopped. The compiler checks for errors
+	 * after parsing and between its optimization passes and stops if
+	 * there are any. A cancelled compilation therefore reports an
+	 * additional (invisible) error.
+	 */
+	public static class CancellableCompiler extends Compiler {
+		
+		private BooleanSupplier cancelled;
+		
+		/**
+		 * Creates a new compiler.
+		 * 
+		 * @param err the stream for the compiler's messages
+		 * @param cancelled the condition that stops the compiler
+		 */
+		public CancellableCompiler(PrintStream err, BooleanSupplier cancelled) {
+			super(err);
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		public int getErrorCount() {
+			return super.getErrorCount() + (cancelled.getAsBoolean() ? 1 : 0);
+		}
+	}
+	
+	private class GccCommandLineRunner extends CommandLineRunner {
+		private String outCharset;
+		private ProblemReporter reporter;
+		
+		private GccCommandLineRunner(InputStream in, PrintStream out, 
+				String inCharset, String srcName, String outCharset, 
+				File mapFile, String mapName, ProblemReporter reporter) {
+			super(new String[0], in, out, err);
+			this.outCharset = outCharset;
+			this.reporter = reporter;
+			getCommandLineConfig().setCharset(inCharset);
+			if (mapFile != null) {
+				getCommandLineConfig().setCreateSourceMap(mapFile.getPath());
+				getCommandLineConfig().setSourceMapLocationMappings(Arrays.asList(
+						new SourceMap.LocationMapping("stdin", srcName)));
+				getCommandLineConfig().setOutputWrapper(
+						"%output%\n//# sourceMappingURL=" + mapName);
+			}
+		}
+
+		@Override
+		protected Compiler createCompiler() {
+			return new CancellableCompiler(err, cancelled);
+		}
+
+		@Override
+		protected List<SourceFile> createExterns(CompilerOptions options)
+				throws IOException {
+			if (compilationLevel == CompilationLevel.WHITESPACE_ONLY
+					&& customExterns.isEmpty()) {
+				// Not used when only whitespace is removed
+				return new ArrayList<>();
+			}
+			List<SourceFile> result 
+				= new ArrayList<>(builtinExterns(options.getEnvironment()));
+			result.addAll(customExterns);
+			return result;
+		}
+		
+		@Override
+		protected CompilerOptions createOptions() {
+			 CompilerOptions options = super.createOptions();
+			 compilationLevel.setOptionsForCompilationLevel(options);
+			 options.setOutputCharset(Charset.forName(outCharset));
+			 options.setErrorHandler(new GccErrorHandler(reporter));
+			 options.setSourceMapIncludeSourcesContent(includeSource);
+			 return options;
+		}
+	}
+
+	/**
+	 * The error reporter for the GCC.
+	 */
+	private static class GccErrorHandler implements ErrorHandler {
+		
+		private ProblemReporter reporter;
+
+		public GccErrorHandler(ProblemReporter reporter) {
+			this.reporter = reporter;
+		}
+
+		@Override
+		public void report(CheckLevel level, JSError error) {
+			int severity;
+			switch (level) {
+			case ERROR:
+				severity = ProblemReporter.SEVERITY_ERROR;
+				break;
+			case WARNING:
+				severity = ProblemReporter.SEVERITY_WARNING;
+				break;
+			default:
+				return;
+			}
+			reporter.report(error.description, error.getLineNumber(), severity);
+		}
+	}
+}
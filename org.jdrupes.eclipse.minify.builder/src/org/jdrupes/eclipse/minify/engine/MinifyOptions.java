@@ -0,0 +1,128 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The options that control the minification of a file. The options 
+ * are obtained from the file's properties as stored by the builder
+ * (in the IDE) or read from the project's preferences file (headless).
+ */
+public class MinifyOptions {
+
+	public static final String DONT_MINIFY = "DONT_MINIFY";
+	public static final String MINIFIER = "minifier";
+	public static final String YUI_COMPRESSOR = "YuiCompressor";
+	public static final String YUI_PRESERVE_SEMICOLONS = "preserveSemicolons";
+	public static final String YUI_DISABLE_OPTIMIZATIONS = "disableOptimizations";
+	
+	public static final String STREAMING_CSS = "StreamingCss";
+	public static final String WHITESPACE_JS = "WhitespaceJs";
+	
+	public static final String GOOGLE_CLOSURE_COMPILER = "GoogleClosureComiler";
+	public static final String GCC_OPTIMIZATION = "optWhitespaceOnly";
+	public static final String GCC_OPT_WHITESPACE_ONLY = "optWhitespaceOnly";
+	public static final String GCC_OPT_SIMPLE = "optSimple";
+	public static final String GCC_OPT_ADVANCED = "optAdvanced";
+	public static final String GCC_CREATE_MAP_FILE = "createMapFile";
+	public static final String GCC_INCLUDE_SOURCE = "includeSource";
+	public static final String GCC_EXTERNS = "externs";
+	
+	private String minifier;
+	private boolean preserveSemicolons;
+	private boolean disableOptimizations;
+	private String gccOptimization;
+	private boolean createMapFile;
+	private boolean includeSource;
+	private List<String> externs = new ArrayList<>();
+
+	private MinifyOptions() {
+	}
+	
+	/**
+	 * Creates the options from the properties of a file. 
+	 * 
+	 * @param properties a function that returns the value of 
+	 * the file's property with the given name or {@code null}
+	 * if the property is not set
+	 * @return the options
+	 */
+	public static MinifyOptions of(Function<String,String> properties) {
+		MinifyOptions options = new MinifyOptions();
+		options.minifier = get(properties, MINIFIER, DONT_MINIFY);
+		options.preserveSemicolons = Boolean.parseBoolean(
+				get(properties, YUI_PRESERVE_SEMICOLONS, "true"));
+		options.disableOptimizations = Boolean.parseBoolean(
+				get(properties, YUI_DISABLE_OPTIMIZATIONS, "true"));
+		options.gccOptimization = get(properties, 
+				GCC_OPTIMIZATION, GCC_OPT_WHITESPACE_ONLY);
+		options.createMapFile = Boolean.parseBoolean(
+				get(properties, GCC_CREATE_MAP_FILE, "false"));
+		options.includeSource = Boolean.parseBoolean(
+				get(properties, GCC_INCLUDE_SOURCE, "false"));
+		for (String path: get(properties, GCC_EXTERNS, "").split(",")) {
+			if (!path.trim().isEmpty()) {
+				options.externs.add(path.trim());
+			}
+		}
+		return options;
+	}
+	
+	private static String get(Function<String,String> properties,
+			String name, String defaultValue) {
+		String value = properties.apply(name);
+		return value == null ? defaultValue : value;
+	}
+
+	public String minifier() {
+		return minifier;
+	}
+
+	public boolean preserveSemicolons() {
+		return preserveSemicolons;
+	}
+
+	public boolean disableOptimizations() {
+		return disableOptimizations;
+	}
+
+	public String gccOptimization() {
+		return gccOptimization;
+	}
+
+	public boolean createMapFile() {
+		return createMapFile;
+	}
+
+	public boolean includeSource() {
+		return includeSource;
+	}
+
+	/**
+	 * @return the project relative paths of the files with 
+	 * additional externs
+	 */
+	public List<String> externs() {
+		return Collections.unmodifiableList(externs);
+	}
+}
@@ -0,0 +1,380 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Rules that configure the minification of all files in a folder or
+ * all files that match a glob pattern. A rule consists of the pattern
+ * and the properties (minifier and options) that apply to the matched
+ * files. Rules are ordered, a later rule overrides the properties set
+ * by an earlier rule. Properties stored for a single file override
+ * the properties from the rules.
+ *
+ * A pattern without wildcards selects the folder (or file) with that
+ * project relative path and everything below it. In patterns, "*" and
+ * "?" match any characters (or a single character) of a path segment
+ * and "**" matches any number of segments. Rules apply to ".css" and
+ * ".js" files only, never to the files created by the builder, and
+ * only if the minifier is available for the file's type.
+ *
+ * The rules are compiled into a trie of path segments (with wildcard
+ * and "**" transitions). Looking up the properties of a file walks the
+ * trie once along the file's path, independent of the number of rules
+ * and files.
+ *
+ * Rules are stored in the builder's project preferences with the key
+ * {@value #KEY}, one rule per line (see {@link Rule#toString()}).
+ * As the key does not contain "//", the rules are not treated as
+ * resource properties.
+ */
+public class MinifyRules {
+
+	public static final String KEY = "rules";
+	public static final MinifyRules EMPTY
+		= new MinifyRules(Collections.emptyList());
+
+	private List<Rule> rules;
+	private Node root = new Node();
+	private BitSet cssRules = new BitSet();
+	private BitSet jsRules = new BitSet();
+	private Map<BitSet,Map<String,String>> merged = new ConcurrentHashMap<>();
+
+	/**
+	 * A single rule.
+	 */
+	public static class Rule {
+		private String pattern;
+		private Map<String,String> properties;
+
+		/**
+		 * Creates a new rule.
+		 *
+		 * @param pattern the project relative path or glob pattern
+		 * @param properties the properties of the matched files
+		 */
+		public Rule(String pattern, Map<String,String> properties) {
+			this.pattern = pattern;
+			this.properties = new LinkedHashMap<>(properties);
+		}
+
+		public String pattern() {
+			return pattern;
+		}
+
+		public Map<String,String> properties() {
+			return Collections.unmodifiableMap(properties);
+		}
+
+		/**
+		 * Returns the rule as "pattern|property=value;property=value...".
+		 */
+		@Override
+		public String toString() {
+			StringBuilder result = new StringBuilder(pattern).append('|');
+			String sep = "";
+			for (Map.Entry<String,String> entry: properties.entrySet()) {
+				result.append(sep).append(entry.getKey())
+					.append('=').append(entry.getValue());
+				sep = ";";
+			}
+			return result.toString();
+		}
+
+		/**
+		 * Parses a rule as created by {@link #toString()}.
+		 *
+		 * @param definition the definition
+		 * @return the rule or {@code null} if the definition is invalid
+		 */
+		public static Rule parse(String definition) {
+			int sep = definition.indexOf('|');
+			if (sep <= 0) {
+				return null;
+			}
+			Map<String,String> properties = new LinkedHashMap<>();
+			for (String property: definition.substring(sep + 1).split(";")) {
+				int eq = property.indexOf('=');
+				if (eq > 0) {
+					properties.put(property.substring(0, eq).trim(),
+							property.substring(eq + 1).trim());
+				}
+			}
+			return new Rule(definition.substring(0, sep).trim(), properties);
+		}
+	}
+
+	/**
+	 * A node of the trie. Nodes reached by "**" consume any
+	 * number of segments.
+	 */
+	private static class Node {
+		public Map<String,Node> literals = new HashMap<>();
+		public Map<String,Wildcard> wildcards = new LinkedHashMap<>();
+		public Node anySegments;
+		public boolean recursive;
+		public BitSet accepting = new BitSet();
+	}
+
+	private static class Wildcard {
+		public Pattern pattern;
+		public Node node = new Node();
+
+		public Wildcard(String segment) {
+			StringBuilder regex = new StringBuilder();
+			for (char c: segment.toCharArray()) {
+				if (c == '*') {
+					regex.append("[^/]*");
+				} else if (c == '?') {
+					regex.append("[^/]");
+				} else {
+					regex.append(Pattern.quote(String.valueOf(c)));
+				}
+			}
+			pattern = Pattern.compile(regex.toString());
+		}
+	}
+
+	/**
+	 * Creates the rules and compiles them.
+	 *
+	 * @param rules the rules in order of increasing precedence
+	 */
+	public MinifyRules(List<Rule> rules) {
+		this.rules = new ArrayList<>(rules);
+		for (int i = 0; i < this.rules.size(); i++) {
+			Rule rule = this.rules.get(i);
+			add(rule.pattern, i);
+			String minifier = rule.properties.get(MinifyOptions.MINIFIER);
+			if (minifier == null
+					|| minifier.equals(MinifyOptions.DONT_MINIFY)
+					|| minifier.equals(MinifyOptions.YUI_COMPRESSOR)) {
+				cssRules.set(i);
+				jsRules.set(i);
+			} else if (minifier.equals(MinifyOptions.STREAMING_CSS)) {
+				cssRules.set(i);
+			} else {
+				jsRules.set(i);
+			}
+		}
+	}
+
+	/**
+	 * Creates the rules from their stored representation.
+	 *
+	 * @param encoded the rules as returned by {@link #encode()},
+	 * may be {@code null}
+	 * @return the rules
+	 */
+	public static MinifyRules parse(String encoded) {
+		if (encoded == null || encoded.trim().isEmpty()) {
+			return EMPTY;
+		}
+		List<Rule> rules = new ArrayList<>();
+		for (String line: encoded.split("\\r?\\n")) {
+			Rule rule = Rule.parse(line);
+			if (rule != null) {
+				rules.add(rule);
+			}
+		}
+		return new MinifyRules(rules);
+	}
+
+	/**
+	 * Returns the rules as a single string.
+	 *
+	 * @return the encoded rules
+	 */
+	public String encode() {
+		List<String> lines = new ArrayList<>();
+		for (Rule rule: rules) {
+			lines.add(rule.toString());
+		}
+		return String.join("\n", lines);
+	}
+
+	public List<Rule> rules() {
+		return Collections.unmodifiableList(rules);
+	}
+
+	public boolean isEmpty() {
+		return rules.isEmpty();
+	}
+
+	private static boolean isPattern(String pattern) {
+		return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+	}
+
+	private void add(String pattern, int index) {
+		List<String> segments = segments(pattern);
+		if (!isPattern(pattern)) {
+			// The folder and everything below it
+			segments.add("**");
+		}
+		Node node = root;
+		for (String segment: segments) {
+			if (segment.equals("**")) {
+				if (node.anySegments == null) {
+					node.anySegments = new Node();
+					node.anySegments.recursive = true;
+				}
+				node = node.anySegments;
+			} else if (isPattern(segment)) {
+				node = node.wildcards.computeIfAbsent(
+						segment, Wildcard::new).node;
+			} else {
+				node = node.literals.computeIfAbsent(segment, s -> new Node());
+			}
+		}
+		node.accepting.set(index);
+	}
+
+	private static List<String> segments(String path) {
+		List<String> result = new ArrayList<>();
+		for (String segment: path.split("/")) {
+			if (!segment.isEmpty()) {
+				result.add(segment);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the node and the nodes reachable with "**" (matching
+	 * zero segments).
+	 */
+	private static void addState(List<Node> states, Node node) {
+		while (node != null && !states.contains(node)) {
+			states.add(node);
+			node = node.anySegments;
+		}
+	}
+
+	/**
+	 * Returns the states of the trie after consuming the given path.
+	 */
+	private List<Node> walk(List<String> segments) {
+		List<Node> states = new ArrayList<>();
+		addState(states, root);
+		for (String segment: segments) {
+			if (states.isEmpty()) {
+				break;
+			}
+			List<Node> next = new ArrayList<>();
+			for (Node node: states) {
+				if (node.recursive) {
+					addState(next, node);
+				}
+				addState(next, node.literals.get(segment));
+				for (Wildcard wildcard: node.wildcards.values()) {
+					if (wildcard.pattern.matcher(segment).matches()) {
+						addState(next, wildcard.node);
+					}
+				}
+			}
+			states = next;
+		}
+		return states;
+	}
+
+	/**
+	 * Returns the properties that the rules define for the file with
+	 * the given path.
+	 *
+	 * @param path the project relative path in portable format
+	 * @return the properties, empty if no rule applies
+	 */
+	public Map<String,String> properties(String path) {
+		if (rules.isEmpty() || path.endsWith(".min.js")
+				|| path.endsWith(".min.css")) {
+			return Collections.emptyMap();
+		}
+		BitSet applicable;
+		if (path.endsWith(".css")) {
+			applicable = cssRules;
+		} else if (path.endsWith(".js")) {
+			applicable = jsRules;
+		} else {
+			return Collections.emptyMap();
+		}
+		BitSet matched = new BitSet();
+		for (Node node: walk(segments(path))) {
+			matched.or(node.accepting);
+		}
+		matched.and(applicable);
+		if (matched.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		return merged.computeIfAbsent(matched, this::merge);
+	}
+
+	private Map<String,String> merge(BitSet matched) {
+		Map<String,String> result = new HashMap<>();
+		for (int i = matched.nextSetBit(0); i >= 0;
+				i = matched.nextSetBit(i + 1)) {
+			result.putAll(rules.get(i).properties);
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Returns the value of a property as defined by the rules
+	 * for the file with the given path.
+	 *
+	 * @param path the project relative path in portable format
+	 * @param property the property
+	 * @return the value or {@code null} if no rule sets the property
+	 */
+	public String property(String path, String property) {
+		return properties(path).get(property);
+	}
+
+	/**
+	 * Checks if the rules configure a minifier for the file
+	 * with the given path.
+	 *
+	 * @param path the project relative path in portable format
+	 * @return the result
+	 */
+	public boolean isConfigured(String path) {
+		String minifier = property(path, MinifyOptions.MINIFIER);
+		return minifier != null && !minifier.equals(MinifyOptions.DONT_MINIFY);
+	}
+
+	/**
+	 * Checks if a rule may apply to a file in the folder with
+	 * the given path (or in a folder below it).
+	 *
+	 * @param path the project relative path of the folder in portable
+	 * format (empty for the project)
+	 * @return the result
+	 */
+	public boolean mayMatchIn(String path) {
+		return !rules.isEmpty() && !walk(segments(path)).isEmpty();
+	}
+}
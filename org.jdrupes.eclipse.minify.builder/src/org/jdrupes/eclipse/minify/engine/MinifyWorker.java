@@ -0,0 +1,607 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.mozilla.javascript.EvaluatorException;
+
+import com.google.javascript.jscomp.SourceFile;
+
+/**
+ * Runs the YUI Compressor and the Google Closure Compiler (for
+ * single files and bundles) in a separate JVM, so that their memory 
+ * consumption doesn't affect the IDE. The worker reads {@link Request}s
+ * from its standard input and writes the problems found, the compiler's
+ * messages and the results to its standard output. It terminates when
+ * its standard input is closed.
+ *
+ * The IDE side of the communication is implemented by
+ * {@link Connection}.
+ */
+public class MinifyWorker {
+
+	private static final int PROBLEM = 1;
+	private static final int MESSAGES = 2;
+	private static final int RESULT = 3;
+	private static final int FAILURE = 4;
+	/** How often (ms) to check for cancellation while waiting for data. */
+	private static final long POLL_INTERVAL = 5;
+
+	private DataOutputStream out;
+
+	private MinifyWorker(DataOutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Indicates that a worker has terminated (or must be terminated
+	 * because its state is unknown) while serving a request. Unlike
+	 * other failures, this may be caused by the worker's state 
+	 * (e.g. the memory retained from previous requests) rather than
+	 * by the request.
+	 */
+	public static class TerminatedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public TerminatedException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+
+	/**
+	 * A request to minify a source.
+	 */
+	public static class Request {
+		private String minifier;
+		private String srcName;
+		private String inCharset;
+		private String outCharset;
+		private String mapName = "";
+		private Map<String,String> options = new LinkedHashMap<>();
+		private Map<String,String> externs = new LinkedHashMap<>();
+		private byte[] source = new byte[0];
+		private GccBundleEngine.Sources bundle;
+
+		private Request() {
+		}
+
+		/**
+		 * Creates a new request.
+		 *
+		 * @param srcName the name of the source file (used to
+		 * distinguish CSS from JavaScript and in the source map)
+		 * @param inCharset the source's charset
+		 * @param outCharset the result's charset
+		 * @param options the file's minify properties (as
+		 * passed to {@link MinifyOptions#of})
+		 */
+		public Request(String srcName, String inCharset, String outCharset,
+				Map<String,String> options) {
+			this.minifier = options.getOrDefault(
+					MinifyOptions.MINIFIER, MinifyOptions.DONT_MINIFY);
+			this.srcName = srcName;
+			this.inCharset = inCharset;
+			this.outCharset = outCharset;
+			this.options.putAll(options);
+		}
+
+		/**
+		 * Requests a source map. The map is returned with the result.
+		 *
+		 * @param mapName the name of the map file (referenced by the
+		 * result) or {@code null} if no source map is to be created
+		 * @return the request for easy chaining
+		 */
+		public Request setMapName(String mapName) {
+			this.mapName = mapName == null ? "" : mapName;
+			return this;
+		}
+
+		/**
+		 * Adds custom externs.
+		 *
+		 * @param externs the externs
+		 * @return the request for easy chaining
+		 * @throws IOException
+		 */
+		public Request addExterns(List<SourceFile> externs) throws IOException {
+			for (SourceFile file: externs) {
+				this.externs.put(file.getName(), file.getCode());
+			}
+			return this;
+		}
+
+		/**
+		 * Makes this a request to compile a bundle. The results
+		 * are returned with the paths of the outputs as names.
+		 * 
+		 * @param bundle the bundle's sources
+		 * @return the request for easy chaining
+		 */
+		public Request setBundle(GccBundleEngine.Sources bundle) {
+			this.bundle = bundle;
+			return this;
+		}
+		
+		/**
+		 * Sets the source to minify.
+		 *
+		 * @param in the source, read completely and closed
+		 * @return the request for easy chaining
+		 * @throws IOException
+		 */
+		public Request setSource(InputStream in) throws IOException {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			try (InputStream source = in) {
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = source.read(buffer)) > 0) {
+					content.write(buffer, 0, count);
+				}
+			}
+			this.source = content.toByteArray();
+			return this;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			writeString(out, minifier);
+			writeString(out, srcName);
+			writeString(out, inCharset);
+			writeString(out, outCharset);
+			writeString(out, mapName);
+			writeMap(out, options);
+			writeMap(out, externs);
+			writeBytes(out, source);
+			out.writeBoolean(bundle != null);
+			if (bundle != null) {
+				writeMap(out, bundle.outputs());
+				writeMap(out, bundle.members());
+				writeMap(out, bundle.chunks());
+			}
+		}
+
+		private static Request read(DataInputStream in) throws IOException {
+			Request request = new Request();
+			request.minifier = readString(in);
+			request.srcName = readString(in);
+			request.inCharset = readString(in);
+			request.outCharset = readString(in);
+			request.mapName = readString(in);
+			request.options = readMap(in);
+			request.externs = readMap(in);
+			request.source = readBytes(in);
+			if (in.readBoolean()) {
+				request.bundle = new GccBundleEngine.Sources(
+						readMap(in), readMap(in), readMap(in));
+			}
+			return request;
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes)
+			throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		// Unlike writeUTF, not limited to 64k
+		writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return new String(readBytes(in), StandardCharsets.UTF_8);
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String,String> map)
+			throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String,String> entry: map.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static Map<String,String> readMap(DataInputStream in)
+			throws IOException {
+		Map<String,String> map = new LinkedHashMap<>();
+		for (int count = in.readInt(); count > 0; count--) {
+			map.put(readString(in), readString(in));
+		}
+		return map;
+	}
+
+	/**
+	 * Serves requests until the standard input is closed.
+	 *
+	 * @param args not used
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(System.in));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(FileDescriptor.out)));
+		// Standard output is reserved for the protocol
+		System.setOut(System.err);
+		MinifyWorker worker = new MinifyWorker(out);
+		while (true) {
+			Request request;
+			try {
+				request = Request.read(in);
+			} catch (EOFException e) {
+				return;
+			}
+			try {
+				worker.serve(request);
+			} catch (Error e) {
+				// E.g. out of memory or stack overflow, don't continue
+				// in an unknown state, will be replaced
+				out.writeByte(FAILURE);
+				out.writeBoolean(true);
+				writeString(out, e.toString());
+				out.flush();
+				System.exit(1);
+			}
+			out.flush();
+		}
+	}
+
+	private void serve(Request request) throws IOException {
+		// The outputs by name, the main result has the empty name
+		Map<String,ByteArrayOutputStream> results = new LinkedHashMap<>();
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		ByteArrayOutputStream map = new ByteArrayOutputStream();
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		GccBundleEngine.MemberReporter reporter 
+			= (member, message, lineNumber, severity) -> {
+				try {
+					out.writeByte(PROBLEM);
+					writeString(out, member);
+					writeString(out, message);
+					out.writeInt(lineNumber);
+					out.writeInt(severity);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			};
+		ProblemReporter srcReporter = (message, lineNumber, severity) 
+				-> reporter.report(request.srcName, message, lineNumber, severity);
+		boolean success = true;
+		try (PrintStream err = new PrintStream(messages, true, "utf-8")) {
+			InputStream in = new ByteArrayInputStream(request.source);
+			MinifyOptions options = MinifyOptions.of(request.options::get);
+			if (request.bundle != null) {
+				success = new GccBundleEngine(options, err).compile(
+						request.bundle, request.outCharset, 
+						name -> results.computeIfAbsent(
+								name, n -> new ByteArrayOutputStream()), 
+						reporter);
+			} else if (request.srcName.endsWith(".css")) {
+				new YuiCssEngine().minify(
+						in, request.inCharset, result, request.outCharset);
+			} else if (request.minifier.equals(MinifyOptions.YUI_COMPRESSOR)) {
+				try {
+					new YuiJsEngine(options).minify(in, request.inCharset,
+							result, request.outCharset, srcReporter);
+				} catch (EvaluatorException e) {
+					// Reported as problem
+					success = false;
+				}
+			} else if (request.minifier.equals(
+					MinifyOptions.GOOGLE_CLOSURE_COMPILER)) {
+				List<SourceFile> externs = new ArrayList<>();
+				for (Map.Entry<String,String> entry: request.externs.entrySet()) {
+					externs.add(SourceFile.fromCode(
+							entry.getKey(), entry.getValue()));
+				}
+				new GccEngine(options, externs, err).minify(in,
+						request.inCharset, request.srcName, result,
+						request.outCharset, request.mapName, 
+						request.mapName.isEmpty() ? null : map, srcReporter);
+			} else {
+				throw new IllegalArgumentException(
+						"Unsupported minifier: " + request.minifier);
+			}
+		} catch (Exception e) {
+			out.writeByte(FAILURE);
+			out.writeBoolean(false);
+			writeString(out, e.toString());
+			return;
+		}
+		if (request.bundle == null) {
+			results.put("", result);
+			if (!request.mapName.isEmpty()) {
+				results.put(request.mapName, map);
+			}
+		}
+		if (messages.size() > 0) {
+			out.writeByte(MESSAGES);
+			writeBytes(out, messages.toByteArray());
+		}
+		out.writeByte(RESULT);
+		out.writeBoolean(success);
+		out.writeLong(retainedHeap());
+		out.writeLong(Runtime.getRuntime().maxMemory());
+		out.writeInt(results.size());
+		for (Map.Entry<String,ByteArrayOutputStream> entry: results.entrySet()) {
+			writeString(out, entry.getKey());
+			writeBytes(out, entry.getValue().toByteArray());
+		}
+	}
+
+	/**
+	 * Returns the heap used after the last garbage collection of 
+	 * each of the heap's pools. Unlike the currently used heap, 
+	 * this doesn't include garbage that has not been collected yet, 
+	 * so it is a measure of the memory actually retained by the worker.
+	 * 
+	 * @return the retained heap in bytes
+	 */
+	private static long retainedHeap() {
+		long used = 0;
+		for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP || !pool.isValid()) {
+				continue;
+			}
+			MemoryUsage collected = pool.getCollectionUsage();
+			if (collected != null) {
+				used += collected.getUsed();
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * The connection to a worker process.
+	 */
+	public static class Connection implements Closeable {
+
+		private Process process;
+		private DataOutputStream out;
+		private DataInputStream in;
+		private int requests;
+		private double heapUsage;
+		private boolean terminated;
+
+		/**
+		 * Starts a worker process.
+		 *
+		 * @param command the command that starts the JVM,
+		 * with {@link MinifyWorker} as main class
+		 * @throws IOException
+		 */
+		public Connection(List<String> command) throws IOException {
+			process = new ProcessBuilder(command)
+					.redirectError(Redirect.INHERIT).start();
+			out = new DataOutputStream(
+					new BufferedOutputStream(process.getOutputStream()));
+			in = new DataInputStream(
+					new BufferedInputStream(process.getInputStream()));
+		}
+
+		/**
+		 * Has the worker minify the source from the request.
+		 *
+		 * @param request the request
+		 * @param result the output, closed when done
+		 * @param mapResult the output for the source map, closed 
+		 * when done, may be {@code null} if no map has been requested
+		 * @param reporter receives the problems found
+		 * @param console receives the compiler's messages, 
+		 * may be {@code null}
+		 * @return {@code false} if the source could not be parsed
+		 * (details have been passed to the reporter)
+		 * @throws TerminatedException if the worker terminated
+		 * @throws IOException if the worker failed
+		 */
+		public boolean minify(Request request, OutputStream result,
+				OutputStream mapResult, ProblemReporter reporter, 
+				PrintStream console) throws IOException {
+			return exchange(request, 
+					name -> name.isEmpty() ? result : mapResult,
+					(member, message, lineNumber, severity) 
+						-> reporter.report(message, lineNumber, severity), 
+					console);
+		}
+
+		/**
+		 * Has the worker compile the bundle from the request.
+		 *
+		 * @param request the request
+		 * @param outputs provides the outputs for the paths of the 
+		 * chunks and source maps, which are closed when done
+		 * @param reporter receives the problems found
+		 * @param console receives the compiler's messages, 
+		 * may be {@code null}
+		 * @return {@code false} if the compilation failed
+		 * (details have been passed to the reporter)
+		 * @throws TerminatedException if the worker terminated
+		 * @throws IOException if the worker failed
+		 */
+		public boolean compile(Request request, 
+				Function<String,OutputStream> outputs, 
+				GccBundleEngine.MemberReporter reporter, 
+				PrintStream console) throws IOException {
+			return exchange(request, outputs, reporter, console);
+		}
+		
+		private boolean exchange(Request request, 
+				Function<String,OutputStream> outputs, 
+				GccBundleEngine.MemberReporter reporter, 
+				PrintStream console) throws IOException {
+			requests += 1;
+			// Reported when the response is complete, so that nothing
+			// is reported twice if the request is repeated
+			List<Runnable> problems = new ArrayList<>();
+			String failure = null;
+			try {
+				request.write(out);
+				out.flush();
+				while (failure == null) {
+					awaitData();
+					switch (in.readByte()) {
+					case PROBLEM:
+						String member = readString(in);
+						String message = readString(in);
+						int lineNumber = in.readInt();
+						int severity = in.readInt();
+						problems.add(() -> reporter.report(
+								member, message, lineNumber, severity));
+						break;
+					case MESSAGES:
+						byte[] messages = readBytes(in);
+						if (console != null) {
+							console.write(messages);
+							console.flush();
+						}
+						break;
+					case RESULT:
+						boolean success = in.readBoolean();
+						long used = in.readLong();
+						heapUsage = (double)used / in.readLong();
+						Map<String,byte[]> results = new LinkedHashMap<>();
+						for (int count = in.readInt(); count > 0; count--) {
+							results.put(readString(in), readBytes(in));
+						}
+						problems.forEach(Runnable::run);
+						for (Map.Entry<String,byte[]> result: results.entrySet()) {
+							OutputStream output = outputs.apply(result.getKey());
+							if (output != null) {
+								try (OutputStream closing = output) {
+									closing.write(result.getValue());
+								}
+							}
+						}
+						return success;
+					case FAILURE:
+						boolean terminating = in.readBoolean();
+						failure = "Worker failed: " + readString(in);
+						if (terminating) {
+							throw new EOFException(failure);
+						}
+						break;
+					default:
+						throw new IOException("Invalid data from worker");
+					}
+				}
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				// Terminated or out of sync, in any case unusable
+				terminated = true;
+				close();
+				throw new TerminatedException(e.getMessage(), e);
+			}
+			// The worker is ready for the next request
+			problems.forEach(Runnable::run);
+			throw new IOException(failure);
+		}
+
+		/**
+		 * Waits until data is available. Blocking reads from the
+		 * process cannot be interrupted, so the stream is polled
+		 * in order to react to cancellation.
+		 */
+		private void awaitData() throws IOException {
+			while (in.available() == 0) {
+				if (!process.isAlive()) {
+					throw new EOFException("Worker terminated unexpectedly");
+				}
+				try {
+					Thread.sleep(POLL_INTERVAL);
+				} catch (InterruptedException e) {
+					// The worker's state is unknown, don't reuse it
+					close();
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Minification cancelled");
+				}
+			}
+		}
+
+		/**
+		 * @return the number of requests sent to the worker
+		 */
+		public int requests() {
+			return requests;
+		}
+
+		/**
+		 * @return the fraction of the worker's maximum heap that
+		 * was retained (still in use after the garbage collections)
+		 * when the last request had been served
+		 */
+		public double heapUsage() {
+			return heapUsage;
+		}
+
+		/**
+		 * @return whether the worker process is still running
+		 */
+		public boolean isAlive() {
+			return !terminated && process.isAlive();
+		}
+
+		/**
+		 * Terminates the worker.
+		 */
+		@Override
+		public void close() {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// Terminated anyway
+			}
+			process.destroy();
+		}
+	}
+}
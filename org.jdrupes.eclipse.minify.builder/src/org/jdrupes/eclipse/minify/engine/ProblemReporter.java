@@ -0,0 +1,41 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+/**
+ * Receives the problems found by an engine. Implementations must
+ * be thread-safe if the same instance is used by several engines.
+ */
+@FunctionalInterface
+public interface ProblemReporter {
+
+	/** Severity of a warning (same value as in Eclipse's IMarker). */
+	int SEVERITY_WARNING = 1;
+	/** Severity of an error (same value as in Eclipse's IMarker). */
+	int SEVERITY_ERROR = 2;
+	
+	/**
+	 * Reports a problem.
+	 * 
+	 * @param message the message
+	 * @param lineNumber the line number in the source
+	 * @param severity the severity
+	 */
+	void report(String message, int lineNumber, int severity);
+}
@@ -0,0 +1,694 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A CSS minifier that processes the source in a single pass. The 
+ * source is split into tokens while it is read and the output is
+ * written rule by rule. Only the tokens of the current selector
+ * (or at-rule prelude) or declaration are kept in memory, so the
+ * memory used does not depend on the size of the style sheet.
+ * 
+ * Besides removing comments (except those starting with "/*!") and
+ * whitespace, the minifier applies the optimizations of the YUI 
+ * Compressor: numbers are shortened and units of zero lengths are
+ * dropped, colors are written in their shortest hexadecimal form,
+ * "none" is replaced by "0" for borders, outlines and backgrounds,
+ * semicolons before closing braces and empty rules are removed 
+ * and only the first "@charset" is kept. Contrary to the YUI 
+ * Compressor, spaces around "+" in values (as required by "calc()") 
+ * and units of zero times, angles and percentages are preserved.
+ */
+public class StreamingCssEngine {
+
+	private static final String SPECIAL = "{};:,>+~()!";
+	private static final Set<String> LENGTH_UNITS = new HashSet<>(Arrays.asList(
+			"px", "em", "ex", "ch", "rem", "vw", "vh", "vmin", "vmax",
+			"cm", "mm", "q", "in", "pt", "pc"));
+	private static final Set<String> NONE_IS_ZERO = new HashSet<>(Arrays.asList(
+			"border", "border-top", "border-right", "border-bottom",
+			"border-left", "outline", "background"));
+	private static final Set<String> BOX_SHORTHANDS = new HashSet<>(Arrays.asList(
+			"margin", "padding", "border-width", "border-style", 
+			"border-color", "inset", "scroll-margin", "scroll-padding"));
+	private static final Pattern NUMBER = Pattern.compile(
+			"([+-]?)([0-9]*)(?:\\.([0-9]*))?([a-zA-Z%]*)");
+	private static final Pattern HEX_COLOR = Pattern.compile(
+			"#([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])"
+			+ "([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])");
+	private static final Pattern FIRST_LINE_OR_LETTER = Pattern.compile(
+			"(?i).*:first-(line|letter)");
+	
+	private enum Type { WORD, STRING, PUNCT, COMMENT }
+	
+	/**
+	 * A token. Whitespace and comments are not represented as tokens,
+	 * they are recorded as "space before" of the next token.
+	 */
+	private static class Token {
+		public final Type type;
+		public final String text;
+		public final boolean spaceBefore;
+		
+		public Token(Type type, String text, boolean spaceBefore) {
+			this.type = type;
+			this.text = text;
+			this.spaceBefore = spaceBefore;
+		}
+		
+		public boolean is(String punct) {
+			return type == Type.PUNCT && text.equals(punct);
+		}
+		
+		public Token withText(String text) {
+			return new Token(type, text, spaceBefore);
+		}
+	}
+	
+	/**
+	 * A block, i.e. the part of a style sheet enclosed in braces.
+	 * The prelude is written when the first content of the block is
+	 * written, which drops empty blocks.
+	 */
+	private static class Block {
+		public final String prelude;
+		public final boolean containsRules;
+		public boolean written;
+		public boolean hasDeclarations;
+		
+		public Block(String prelude, boolean containsRules) {
+			this.prelude = prelude;
+			this.containsRules = containsRules;
+		}
+	}
+	
+	/**
+	 * Minifies the input.
+	 * 
+	 * @param in the input
+	 * @param inCharset the input's charset
+	 * @param out the output, closed when done
+	 * @param outCharset the output's charset
+	 * @throws IOException
+	 */
+	public void minify(InputStream in, String inCharset, 
+			OutputStream out, String outCharset) throws IOException {
+		try (Reader reader = new BufferedReader(
+				new InputStreamReader(in, inCharset));
+				Writer writer = new BufferedWriter(
+						new OutputStreamWriter(out, outCharset))) {
+			minify(reader, writer);
+		}
+	}
+	
+	/**
+	 * Minifies the input. The streams are not closed.
+	 * 
+	 * @param in the input
+	 * @param out the output
+	 * @throws IOException
+	 */
+	public void minify(Reader in, Writer out) throws IOException {
+		new Run(new Lexer(in), out).process();
+	}
+	
+	/**
+	 * The state of a single minification.
+	 */
+	private static class Run {
+		private final Lexer lexer;
+		private final Writer out;
+		private final Deque<Block> blocks = new ArrayDeque<>();
+		private boolean charsetSeen;
+		
+		public Run(Lexer lexer, Writer out) {
+			this.lexer = lexer;
+			this.out = out;
+			Block sheet = new Block(null, true);
+			sheet.written = true;
+			blocks.push(sheet);
+		}
+		
+		public void process() throws IOException {
+			List<Token> segment = new ArrayList<>();
+			Token token;
+			while ((token = lexer.next()) != null) {
+				Block current = blocks.peek();
+				if (token.is("{")) {
+					String prelude = render(segment, true);
+					blocks.push(new Block(prelude, containsRules(prelude)));
+					segment.clear();
+				} else if (token.is("}")) {
+					endSegment(current, segment);
+					segment.clear();
+					if (blocks.size() == 1) {
+						// Unbalanced, ignore
+						continue;
+					}
+					closeBlock();
+				} else if (token.is(";")) {
+					endSegment(current, segment);
+					segment.clear();
+				} else if (token.type == Type.COMMENT && segment.isEmpty()) {
+					writeContent(token.text);
+				} else {
+					segment.add(token);
+				}
+			}
+			endSegment(blocks.peek(), segment);
+			while (blocks.size() > 1) {
+				closeBlock();
+			}
+			out.flush();
+		}
+
+		private void closeBlock() throws IOException {
+			Block closed = blocks.pop();
+			if (closed.written) {
+				out.write('}');
+				// A declaration following the block needs no separator
+				blocks.peek().hasDeclarations = false;
+			}
+		}
+		
+		private void endSegment(Block current, List<Token> segment) 
+				throws IOException {
+			if (segment.isEmpty()) {
+				return;
+			}
+			if (current.containsRules) {
+				// Statement such as "@import" or "@charset"
+				String statement = render(segment, true);
+				if (statement.startsWith("@charset")) {
+					if (charsetSeen) {
+						return;
+					}
+					charsetSeen = true;
+				}
+				writeContent(statement + ";");
+				return;
+			}
+			String declaration = renderDeclaration(segment);
+			if (declaration.isEmpty()) {
+				return;
+			}
+			writeContent(declaration);
+			current.hasDeclarations = true;
+		}
+
+		/**
+		 * Writes the content of the current block, writing the 
+		 * preludes of enclosing blocks first if necessary.
+		 */
+		private void writeContent(String content) throws IOException {
+			Block parent = null;
+			Iterator<Block> outermostFirst = blocks.descendingIterator();
+			while (outermostFirst.hasNext()) {
+				Block block = outermostFirst.next();
+				if (!block.written) {
+					if (parent != null && parent.hasDeclarations) {
+						out.write(';');
+						parent.hasDeclarations = false;
+					}
+					out.write(block.prelude);
+					if (FIRST_LINE_OR_LETTER.matcher(block.prelude).matches()) {
+						// Work around for IE6
+						out.write(' ');
+					}
+					out.write('{');
+					block.written = true;
+				}
+				parent = block;
+			}
+			if (parent.hasDeclarations && !parent.containsRules) {
+				out.write(';');
+			}
+			out.write(content);
+		}
+	}
+
+	private static boolean containsRules(String prelude) {
+		String lower = prelude.toLowerCase(Locale.ENGLISH);
+		return lower.startsWith("@media") || lower.startsWith("@supports")
+				|| lower.startsWith("@document") 
+				|| lower.startsWith("@-moz-document")
+				|| lower.startsWith("@container") 
+				|| lower.startsWith("@layer")
+				|| lower.startsWith("@") && lower.contains("keyframes");
+	}
+	
+	/**
+	 * Renders the tokens, inserting spaces only where they are required.
+	 * 
+	 * @param tokens the tokens
+	 * @param prelude whether the tokens are a selector or an 
+	 * at-rule prelude (else a declaration)
+	 * @return the result
+	 */
+	private static String render(List<Token> tokens, boolean prelude) {
+		StringBuilder result = new StringBuilder();
+		int parenDepth = 0;
+		Token previous = null;
+		for (Token token: tokens) {
+			if (previous != null && token.spaceBefore 
+					&& !dropsSpaceAfter(previous, prelude)
+					&& !dropsSpaceBefore(previous, token, prelude, parenDepth)
+					&& !previous.text.endsWith("[") 
+					&& !token.text.startsWith("]")) {
+				result.append(' ');
+			} else if (prelude && token.is(",") && previous != null
+					&& FIRST_LINE_OR_LETTER.matcher(previous.text).matches()) {
+				// Work around for IE6
+				result.append(' ');
+			}
+			result.append(token.text);
+			if (token.is("(")) {
+				parenDepth += 1;
+			} else if (token.is(")")) {
+				parenDepth -= 1;
+			}
+			previous = token;
+		}
+		return result.toString();
+	}
+	
+	private static boolean dropsSpaceAfter(Token token, boolean prelude) {
+		if (token.type != Type.PUNCT) {
+			return false;
+		}
+		switch (token.text) {
+		case "+":
+			return prelude;
+		case ")":
+			return false;
+		default:
+			return true;
+		}
+	}
+	
+	private static boolean dropsSpaceBefore(
+			Token previous, Token token, boolean prelude, int parenDepth) {
+		if (token.type != Type.PUNCT) {
+			return false;
+		}
+		switch (token.text) {
+		case ":":
+			// Keep "a :hover"
+			return !prelude || parenDepth > 0;
+		case "+":
+			return prelude;
+		case "(":
+			// Keep "and (" in media queries, "- (" in calc(), but
+			// use "@media(" 
+			return prelude && previous.text.startsWith("@");
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Optimizes the values of a declaration and renders it.
+	 * 
+	 * @param tokens the declaration's tokens
+	 * @return the result
+	 */
+	private static String renderDeclaration(List<Token> tokens) {
+		int colon = 0;
+		while (colon < tokens.size() && !tokens.get(colon).is(":")) {
+			colon += 1;
+		}
+		if (colon >= tokens.size()) {
+			// Not a declaration, leave as is
+			return render(tokens, false);
+		}
+		String property = render(tokens.subList(0, colon), false)
+				.toLowerCase(Locale.ENGLISH);
+		List<Token> value = new ArrayList<>(
+				tokens.subList(colon + 1, tokens.size()));
+		// Exclude "!important" from optimizations
+		int importance = 0;
+		while (importance < value.size() && !value.get(importance).is("!")) {
+			importance += 1;
+		}
+		List<Token> priority = new ArrayList<>(
+				value.subList(importance, value.size()));
+		value.subList(importance, value.size()).clear();
+		
+		if (!property.endsWith("unicode-range")) {
+			for (int i = 0; i < value.size(); i++) {
+				Token token = value.get(i);
+				if (token.type == Type.WORD) {
+					value.set(i, token.withText(optimizeWord(token.text)));
+				}
+			}
+			rgbToHex(value);
+		}
+		if (value.size() == 1 && NONE_IS_ZERO.contains(property)
+				&& value.get(0).text.equalsIgnoreCase("none")) {
+			value.set(0, value.get(0).withText("0"));
+		}
+		if (BOX_SHORTHANDS.contains(property)) {
+			collapseBoxValues(value);
+		}
+		value.addAll(priority);
+		return render(tokens.subList(0, colon + 1), false) 
+				+ render(value, false);
+	}
+
+	/**
+	 * Shortens numbers and hexadecimal colors.
+	 * 
+	 * @param word the word
+	 * @return the result
+	 */
+	private static String optimizeWord(String word) {
+		if (word.isEmpty()) {
+			return word;
+		}
+		char first = word.charAt(0);
+		if (first == '#') {
+			return shortenHex(word);
+		}
+		if (!(first >= '0' && first <= '9' || first == '.' 
+				|| first == '-' || first == '+')) {
+			return word;
+		}
+		Matcher matcher = NUMBER.matcher(word);
+		if (!matcher.matches()) {
+			return word;
+		}
+		String sign = matcher.group(1);
+		String integer = matcher.group(2);
+		String fraction = matcher.group(3) == null ? "" : matcher.group(3);
+		String unit = matcher.group(4);
+		if (integer.isEmpty() && fraction.isEmpty()) {
+			// No digits
+			return word;
+		}
+		int start = 0;
+		while (start < integer.length() && integer.charAt(start) == '0') {
+			start += 1;
+		}
+		integer = integer.substring(start);
+		int end = fraction.length();
+		while (end > 0 && fraction.charAt(end - 1) == '0') {
+			end -= 1;
+		}
+		fraction = fraction.substring(0, end);
+		if (integer.isEmpty() && fraction.isEmpty()) {
+			if (LENGTH_UNITS.contains(unit.toLowerCase(Locale.ENGLISH))) {
+				return "0";
+			}
+			return "0" + unit;
+		}
+		return sign + integer + (fraction.isEmpty() ? "" : "." + fraction) 
+				+ unit;
+	}
+	
+	private static String shortenHex(String word) {
+		Matcher matcher = HEX_COLOR.matcher(word);
+		if (!matcher.matches()) {
+			return word;
+		}
+		String color = word.toLowerCase(Locale.ENGLISH);
+		if (color.charAt(1) == color.charAt(2) 
+				&& color.charAt(3) == color.charAt(4)
+				&& color.charAt(5) == color.charAt(6)) {
+			return "#" + color.charAt(1) + color.charAt(3) + color.charAt(5);
+		}
+		return color;
+	}
+	
+	/**
+	 * Replaces "rgb(r,g,b)" with the (shortened) hexadecimal notation.
+	 * 
+	 * @param value the tokens of the value
+	 */
+	private static void rgbToHex(List<Token> value) {
+		for (int i = 0; i + 7 < value.size(); i++) {
+			if (!value.get(i).text.equalsIgnoreCase("rgb")
+					|| !value.get(i + 1).is("(") || !value.get(i + 3).is(",")
+					|| !value.get(i + 5).is(",") || !value.get(i + 7).is(")")) {
+				continue;
+			}
+			StringBuilder hex = new StringBuilder("#");
+			for (int j = i + 2; j <= i + 6; j += 2) {
+				int component;
+				try {
+					component = Integer.parseInt(value.get(j).text);
+				} catch (NumberFormatException e) {
+					hex = null;
+					break;
+				}
+				if (component < 0 || component > 255) {
+					hex = null;
+					break;
+				}
+				hex.append(Character.forDigit(component / 16, 16))
+					.append(Character.forDigit(component % 16, 16));
+			}
+			if (hex == null) {
+				continue;
+			}
+			value.set(i, value.get(i).withText(shortenHex(hex.toString())));
+			value.subList(i + 1, i + 8).clear();
+		}
+	}
+	
+	/**
+	 * Removes values of a box shorthand property (e.g. "margin") that
+	 * are implied by the values before.
+	 * 
+	 * @param value the tokens of the value
+	 */
+	private static void collapseBoxValues(List<Token> value) {
+		for (Token token: value) {
+			if (token.type != Type.WORD) {
+				return;
+			}
+		}
+		if (value.size() == 4 && value.get(1).text.equals(value.get(3).text)) {
+			value.remove(3);
+		}
+		if (value.size() == 3 && value.get(0).text.equals(value.get(2).text)) {
+			value.remove(2);
+		}
+		if (value.size() == 2 && value.get(0).text.equals(value.get(1).text)) {
+			value.remove(1);
+		}
+	}
+	
+	/**
+	 * Splits the input into tokens.
+	 */
+	private static class Lexer {
+		private final PushbackReader in;
+		private boolean inIeHack;
+		
+		public Lexer(Reader in) {
+			this.in = new PushbackReader(in, 2);
+		}
+		
+		/**
+		 * Returns the next token.
+		 * 
+		 * @return the token or {@code null} at the end of the input
+		 * @throws IOException
+		 */
+		public Token next() throws IOException {
+			boolean space = false;
+			while (true) {
+				int ch = in.read();
+				if (ch < 0) {
+					return null;
+				}
+				if (Character.isWhitespace(ch)) {
+					space = true;
+					continue;
+				}
+				if (ch == '/') {
+					int next = in.read();
+					if (next == '*') {
+						String comment = comment();
+						if (comment == null) {
+							space = true;
+							continue;
+						}
+						return new Token(Type.COMMENT, comment, space);
+					}
+					unread(next);
+				}
+				if (ch == '"' || ch == '\'') {
+					return new Token(Type.STRING, string((char)ch), space);
+				}
+				if (SPECIAL.indexOf(ch) >= 0) {
+					return new Token(Type.PUNCT, String.valueOf((char)ch), space);
+				}
+				unread(ch);
+				return new Token(Type.WORD, word(), space);
+			}
+		}
+		
+		private void unread(int ch) throws IOException {
+			if (ch >= 0) {
+				in.unread(ch);
+			}
+		}
+		
+		/**
+		 * Reads a comment (the opening characters have been consumed).
+		 * 
+		 * @return the comment if it must be preserved, else {@code null}
+		 */
+		private String comment() throws IOException {
+			StringBuilder preserved = null;
+			int length = 0;
+			int last = -1;
+			int pending = -1;
+			int ch;
+			while ((ch = in.read()) >= 0) {
+				if (pending == '*' && ch == '/') {
+					pending = -1;
+					break;
+				}
+				if (pending >= 0) {
+					if (length == 0 && pending == '!') {
+						preserved = new StringBuilder("/*");
+					}
+					if (preserved != null) {
+						preserved.append((char)pending);
+					}
+					length += 1;
+					last = pending;
+				}
+				pending = ch;
+			}
+			if (preserved != null) {
+				return preserved.append("*/").toString();
+			}
+			// Keep the IE5/Mac hack ("/*\*/ ... /**/")
+			if (last == '\\') {
+				inIeHack = true;
+				return "/*\\*/";
+			}
+			if (inIeHack && length == 0) {
+				inIeHack = false;
+				return "/**/";
+			}
+			return null;
+		}
+
+		private String string(char quote) throws IOException {
+			StringBuilder result = new StringBuilder().append(quote);
+			int ch;
+			while ((ch = in.read()) >= 0) {
+				result.append((char)ch);
+				if (ch == '\\') {
+					int escaped = in.read();
+					if (escaped >= 0) {
+						result.append((char)escaped);
+					}
+					continue;
+				}
+				if (ch == quote || ch == '\n') {
+					break;
+				}
+			}
+			return result.toString();
+		}
+		
+		private String word() throws IOException {
+			StringBuilder result = new StringBuilder();
+			int ch;
+			while ((ch = in.read()) >= 0) {
+				if (Character.isWhitespace(ch) || SPECIAL.indexOf(ch) >= 0
+						|| ch == '"' || ch == '\'') {
+					unread(ch);
+					break;
+				}
+				if (ch == '/') {
+					int next = in.read();
+					unread(next);
+					if (next == '*') {
+						unread(ch);
+						break;
+					}
+				}
+				result.append((char)ch);
+				if (ch == '\\') {
+					int escaped = in.read();
+					if (escaped >= 0) {
+						result.append((char)escaped);
+					}
+				}
+			}
+			if (result.toString().equalsIgnoreCase("url")) {
+				int next = in.read();
+				if (next == '(') {
+					return "url(" + url();
+				} else {
+					unread(next);
+				}
+			}
+			return result.toString();
+		}
+
+		/**
+		 * Reads the argument of "url(" including the closing parenthesis.
+		 * Whitespace around the argument is removed.
+		 */
+		private String url() throws IOException {
+			StringBuilder result = new StringBuilder();
+			int ch;
+			while ((ch = in.read()) >= 0) {
+				if (ch == '"' || ch == '\'') {
+					result.append(string((char)ch));
+					continue;
+				}
+				if (ch == ')') {
+					break;
+				}
+				result.append((char)ch);
+			}
+			return result.toString().trim() + ")";
+		}
+	}
+}
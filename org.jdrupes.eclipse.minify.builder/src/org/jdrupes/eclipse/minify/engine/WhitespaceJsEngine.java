@@ -0,0 +1,524 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A JavaScript minifier that only removes comments and whitespace.
+ * It is much faster than the Google Closure Compiler in mode
+ * "WHITESPACE_ONLY", because the source is only split into tokens
+ * and written again in a single pass (no externs, no syntax tree).
+ * 
+ * Line breaks are kept where automatic semicolon insertion might 
+ * depend on them, i.e. between a token that can end a statement 
+ * and a token that can start a statement. Comments that start with
+ * "/*!" or contain "@license" or "@preserve" are kept.
+ */
+public class WhitespaceJsEngine {
+
+	private static final Set<String> REGEX_AFTER = new HashSet<>(Arrays.asList(
+			"return", "typeof", "instanceof", "in", "of", "new", "delete",
+			"void", "throw", "case", "do", "else", "yield", "await"));
+	private static final Set<String> HEADER_KEYWORDS = new HashSet<>(
+			Arrays.asList("if", "while", "for", "with"));
+	private static final String[] OPERATORS = { ">>>=", "...", "===", "!==", 
+			"**=", "<<=", ">>=", ">>>", "&&=", "||=", "??=", "=>", "==", "!=", 
+			"<=", ">=", "&&", "||", "??", "?.", "++", "--", "+=", "-=", "*=", 
+			"/=", "%=", "&=", "|=", "^=", "**", "<<", ">>" };
+
+	private enum Type { WORD, NUMBER, STRING, TEMPLATE, REGEX, PUNCT }
+
+	/**
+	 * Minifies the input.
+	 * 
+	 * @param in the input
+	 * @param inCharset the input's charset
+	 * @param out the output, closed when done
+	 * @param outCharset the output's charset
+	 * @param reporter receives the problems found
+	 * @return {@code false} if the input could not be processed
+	 * (the problem has been reported)
+	 * @throws IOException
+	 */
+	public boolean minify(InputStream in, String inCharset, OutputStream out,
+			String outCharset, ProblemReporter reporter) throws IOException {
+		try (Reader reader = new InputStreamReader(in, inCharset);
+				Writer writer = new BufferedWriter(
+						new OutputStreamWriter(out, outCharset))) {
+			return minify(reader, writer, reporter);
+		}
+	}
+
+	/**
+	 * Minifies the input. The streams are not closed.
+	 * 
+	 * @param in the input
+	 * @param out the output
+	 * @param reporter receives the problems found
+	 * @return {@code false} if the input could not be processed
+	 * (the problem has been reported)
+	 * @throws IOException
+	 */
+	public boolean minify(Reader in, Writer out, ProblemReporter reporter) 
+			throws IOException {
+		Run run = new Run(in, out);
+		try {
+			run.process();
+			return true;
+		} catch (SyntaxException e) {
+			reporter.report(e.getMessage(), e.line, 
+					ProblemReporter.SEVERITY_ERROR);
+			return false;
+		}
+	}
+
+	/**
+	 * Signals input that cannot be split into tokens.
+	 */
+	@SuppressWarnings("serial")
+	private static class SyntaxException extends IOException {
+		public final int line;
+		
+		public SyntaxException(String message, int line) {
+			super(message);
+			this.line = line;
+		}
+	}
+	
+	/**
+	 * The state of a single minification.
+	 */
+	private static class Run {
+		private final Reader in;
+		private final Writer out;
+		private final char[] buffer = new char[8192];
+		private int position;
+		private int limit;
+		private int line = 1;
+		private final StringBuilder text = new StringBuilder();
+		// The token written last
+		private Type lastType;
+		private String lastText;
+		private String beforeLastText;
+		// Whitespace (and comments) since the last token
+		private boolean space;
+		private boolean newline;
+		private int braceDepth;
+		private final Deque<Integer> templateDepths = new ArrayDeque<>();
+		// For each open parenthesis: whether it starts a statement's 
+		// header, i.e. a slash after the closing parenthesis starts 
+		// a regular expression
+		private final Deque<Boolean> headerParens = new ArrayDeque<>();
+		private boolean closedHeader;
+		
+		public Run(Reader in, Writer out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		private int peek(int offset) throws IOException {
+			if (position + offset >= limit) {
+				System.arraycopy(buffer, position, buffer, 0, limit - position);
+				limit -= position;
+				position = 0;
+				while (offset >= limit) {
+					int count = in.read(buffer, limit, buffer.length - limit);
+					if (count < 0) {
+						return -1;
+					}
+					limit += count;
+				}
+			}
+			return buffer[position + offset];
+		}
+		
+		private int next() throws IOException {
+			int ch = peek(0);
+			if (ch >= 0) {
+				position += 1;
+				if (ch == '\n') {
+					line += 1;
+				}
+			}
+			return ch;
+		}
+		
+		public void process() throws IOException {
+			if (peek(0) == '#' && peek(1) == '!') {
+				// Keep the "shebang" line
+				int ch;
+				while ((ch = peek(0)) >= 0 && ch != '\n') {
+					out.write(next());
+				}
+				newline = true;
+				lastType = Type.PUNCT;
+				lastText = ";";
+			}
+			while (true) {
+				int ch = peek(0);
+				if (ch < 0) {
+					break;
+				}
+				if (ch == '\n' || ch == '\r' || ch == '\u2028' || ch == '\u2029') {
+					next();
+					newline = true;
+					continue;
+				}
+				if (Character.isWhitespace(ch) || ch == '\u00A0' || ch == '\uFEFF') {
+					next();
+					space = true;
+					continue;
+				}
+				if (ch == '/' && peek(1) == '/') {
+					while ((ch = peek(0)) >= 0 && ch != '\n' && ch != '\r') {
+						next();
+					}
+					continue;
+				}
+				if (ch == '/' && peek(1) == '*') {
+					comment();
+					continue;
+				}
+				token();
+			}
+			out.flush();
+		}
+
+		private void comment() throws IOException {
+			int startLine = line;
+			text.setLength(0);
+			text.append((char)next()).append((char)next());
+			while (true) {
+				int ch = next();
+				if (ch < 0) {
+					throw new SyntaxException("Unterminated comment", startLine);
+				}
+				text.append((char)ch);
+				if (ch == '\n' || ch == '\r' || ch == '\u2028' || ch == '\u2029') {
+					newline = true;
+				}
+				if (ch == '*' && peek(0) == '/') {
+					text.append((char)next());
+					break;
+				}
+			}
+			space = true;
+			if (text.charAt(2) == '!' || text.indexOf("@license") >= 0
+					|| text.indexOf("@preserve") >= 0) {
+				if (lastType != null && newline) {
+					out.write('\n');
+				}
+				out.write(text.toString());
+				// Comment separates the tokens
+				space = false;
+			}
+		}
+		
+		private void token() throws IOException {
+			int ch = peek(0);
+			text.setLength(0);
+			Type type;
+			if (ch == '"' || ch == '\'') {
+				type = Type.STRING;
+				string();
+			} else if (ch == '`') {
+				type = Type.TEMPLATE;
+				text.append((char)next());
+				template();
+			} else if (ch == '}' && !templateDepths.isEmpty() 
+					&& templateDepths.peek() == braceDepth) {
+				templateDepths.pop();
+				type = Type.TEMPLATE;
+				text.append((char)next());
+				template();
+			} else if (ch == '/' && regexAllowed()) {
+				type = Type.REGEX;
+				regex();
+			} else if (isDigit(ch) || ch == '.' && isDigit(peek(1))) {
+				type = Type.NUMBER;
+				number();
+			} else if (isWordChar(ch)) {
+				type = Type.WORD;
+				while ((ch = peek(0)) >= 0 && isWordChar(ch)) {
+					text.append((char)next());
+					if (ch == '\\' && peek(0) >= 0) {
+						text.append((char)next());
+					}
+				}
+			} else {
+				type = Type.PUNCT;
+				operator();
+				if (ch == '{') {
+					braceDepth += 1;
+				} else if (ch == '}') {
+					braceDepth -= 1;
+				} else if (ch == '(') {
+					headerParens.push(lastType == Type.WORD 
+							&& HEADER_KEYWORDS.contains(lastText)
+							&& !".".equals(beforeLastText) 
+							&& !"?.".equals(beforeLastText));
+				} else if (ch == ')') {
+					closedHeader = !headerParens.isEmpty() 
+							&& headerParens.pop();
+				}
+			}
+			write(type, text.toString());
+		}
+
+		private void write(Type type, String token) throws IOException {
+			if (lastType != null) {
+				if (newline && endsStatement(lastType, lastText)
+						&& startsStatement(type, token)) {
+					out.write('\n');
+				} else if ((space || newline) 
+						&& needsSpace(lastType, lastText, token)) {
+					out.write(' ');
+				}
+			}
+			out.write(token);
+			lastType = type;
+			beforeLastText = lastText;
+			lastText = token;
+			space = false;
+			newline = false;
+		}
+		
+		private boolean regexAllowed() {
+			if (lastType == null) {
+				return true;
+			}
+			switch (lastType) {
+			case PUNCT:
+				if (lastText.equals(")")) {
+					// "if (x) /re/.test(s)"
+					return closedHeader;
+				}
+				return !lastText.equals("]")
+						&& !lastText.equals("++") && !lastText.equals("--");
+			case WORD:
+				// Keywords may be used as property names
+				return REGEX_AFTER.contains(lastText) 
+						&& !".".equals(beforeLastText) 
+						&& !"?.".equals(beforeLastText);
+			case TEMPLATE:
+				return lastText.endsWith("${");
+			default:
+				return false;
+			}
+		}
+		
+		private void string() throws IOException {
+			int startLine = line;
+			int quote = next();
+			text.append((char)quote);
+			while (true) {
+				int ch = next();
+				if (ch < 0 || ch == '\n') {
+					throw new SyntaxException("Unterminated string", startLine);
+				}
+				text.append((char)ch);
+				if (ch == '\\') {
+					int escaped = next();
+					if (escaped < 0) {
+						throw new SyntaxException("Unterminated string", startLine);
+					}
+					text.append((char)escaped);
+					if (escaped == '\r' && peek(0) == '\n') {
+						// Line continuation
+						text.append((char)next());
+					}
+					continue;
+				}
+				if (ch == quote) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Reads the characters of a template literal up to the closing 
+		 * backtick or the start of an embedded expression (the opening
+		 * backtick or closing brace has been consumed).
+		 */
+		private void template() throws IOException {
+			int startLine = line;
+			while (true) {
+				int ch = next();
+				if (ch < 0) {
+					throw new SyntaxException("Unterminated template", startLine);
+				}
+				text.append((char)ch);
+				if (ch == '\\') {
+					int escaped = next();
+					if (escaped < 0) {
+						throw new SyntaxException("Unterminated template", startLine);
+					}
+					text.append((char)escaped);
+					continue;
+				}
+				if (ch == '`') {
+					return;
+				}
+				if (ch == '$' && peek(0) == '{') {
+					text.append((char)next());
+					templateDepths.push(braceDepth);
+					return;
+				}
+			}
+		}
+		
+		private void regex() throws IOException {
+			int startLine = line;
+			text.append((char)next());
+			boolean inClass = false;
+			while (true) {
+				int ch = next();
+				if (ch < 0 || ch == '\n' || ch == '\r') {
+					throw new SyntaxException("Unterminated regular expression", 
+							startLine);
+				}
+				text.append((char)ch);
+				if (ch == '\\') {
+					int escaped = next();
+					if (escaped < 0 || escaped == '\n') {
+						throw new SyntaxException(
+								"Unterminated regular expression", startLine);
+					}
+					text.append((char)escaped);
+				} else if (ch == '[') {
+					inClass = true;
+				} else if (ch == ']') {
+					inClass = false;
+				} else if (ch == '/' && !inClass) {
+					break;
+				}
+			}
+			// Flags
+			int ch;
+			while ((ch = peek(0)) >= 0 && isWordChar(ch)) {
+				text.append((char)next());
+			}
+		}
+		
+		private void number() throws IOException {
+			int ch;
+			while ((ch = peek(0)) >= 0 && (isWordChar(ch) || ch == '.')) {
+				text.append((char)next());
+				if ((ch == 'e' || ch == 'E') && (peek(0) == '+' || peek(0) == '-')
+						&& !(text.length() > 1 && (text.charAt(1) == 'x' 
+							|| text.charAt(1) == 'X'))) {
+					text.append((char)next());
+				}
+			}
+		}
+		
+		private void operator() throws IOException {
+			for (String operator: OPERATORS) {
+				boolean matches = true;
+				for (int i = 0; i < operator.length(); i++) {
+					if (peek(i) != operator.charAt(i)) {
+						matches = false;
+						break;
+					}
+				}
+				if (matches && !(operator.equals("?.") && isDigit(peek(2)))) {
+					for (int i = 0; i < operator.length(); i++) {
+						text.append((char)next());
+					}
+					return;
+				}
+			}
+			text.append((char)next());
+		}
+	}
+
+	private static boolean isDigit(int ch) {
+		return ch >= '0' && ch <= '9';
+	}
+	
+	private static boolean isWordChar(int ch) {
+		return ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' 
+				|| isDigit(ch) || ch == '_' || ch == '$' || ch == '\\' 
+				|| ch > 127 && !Character.isWhitespace(ch) 
+				&& ch != '\u00A0' && ch != '\uFEFF' 
+				&& ch != '\u2028' && ch != '\u2029';
+	}
+
+	/**
+	 * Checks if the token can be the last token of a statement.
+	 */
+	private static boolean endsStatement(Type type, String token) {
+		switch (type) {
+		case PUNCT:
+			return token.equals(")") || token.equals("]") || token.equals("}")
+					|| token.equals("++") || token.equals("--");
+		case TEMPLATE:
+			return token.endsWith("`");
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Checks if the token can be the first token of a statement.
+	 */
+	private static boolean startsStatement(Type type, String token) {
+		switch (type) {
+		case PUNCT:
+			switch (token) {
+			case "(": case "[": case "{": case "++": case "--": case "+": 
+			case "-": case "!": case "~": case "@": case "#": case "<":
+				return true;
+			default:
+				return false;
+			}
+		case TEMPLATE:
+			return token.startsWith("`");
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Checks if the tokens must be separated by a space.
+	 */
+	private static boolean needsSpace(Type previousType, String previous, 
+			String next) {
+		char last = previous.charAt(previous.length() - 1);
+		char first = next.charAt(0);
+		return isWordChar(last) && isWordChar(first)
+				|| previousType == Type.NUMBER && first == '.'
+				|| last == '+' && first == '+' || last == '-' && first == '-'
+				|| last == '/' && first == '/' 
+				|| last == '<' && first == '!' || last == '-' && first == '>';
+	}
+}
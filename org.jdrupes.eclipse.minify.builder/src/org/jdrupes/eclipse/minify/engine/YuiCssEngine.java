@@ -0,0 +1,54 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+
+/**
+ * Minifies CSS using the YUICompressor.
+ */
+public class YuiCssEngine {
+
+	/**
+	 * Minifies the input.
+	 * 
+	 * @param in the input
+	 * @param inCharset the input's charset
+	 * @param out the output, closed when done
+	 * @param outCharset the output's charset
+	 * @throws IOException
+	 */
+	public void minify(InputStream in, String inCharset, 
+			OutputStream out, String outCharset) throws IOException {
+		try (Reader reader = new BufferedReader(
+				new InputStreamReader(in, inCharset));
+				Writer writer = new OutputStreamWriter(out, outCharset)) {
+			new CssCompressor(reader).compress(writer, -1);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the metrics of a single build.
+ */
+public class BuildMetrics {
+
+	/** The minifier reported for results taken from the {@link ResultCache}. */
+	public static final String CACHED = "Cache";
+	
+	private long started = System.nanoTime();
+	private long duration;
+	private List<FileMetrics> files = new ArrayList<>();
+	
+	/**
+	 * The metrics recorded for the minification of a single file
+	 * or the build of a bundle. 
+	 */
+	public static class FileMetrics {
+		public String path;
+		public String minifier;
+		public long readNanos;
+		public long minifyNanos;
+		public long writeNanos;
+		public long markerNanos;
+		public long inputBytes;
+		public long outputBytes;
+
+		public FileMetrics(String path, String minifier) {
+			this.path = path;
+			this.minifier = minifier;
+		}
+
+		/**
+		 * Returns the total time spent on the file.
+		 * 
+		 * @return the time in nanoseconds
+		 */
+		public long totalNanos() {
+			return readNanos + minifyNanos + writeNanos + markerNanos;
+		}
+		
+		/**
+		 * Returns the ratio of output bytes to input bytes.
+		 * 
+		 * @return the ratio or 0 if nothing has been read
+		 */
+		public double ratio() {
+			return inputBytes == 0 ? 0 : (double)outputBytes / inputBytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s [%s]: read %d ms, minify %d ms, "
+					+ "write %d ms, markers %d ms, %d -> %d bytes (%.1f%%)",
+					path, minifier, millis(readNanos), millis(minifyNanos), 
+					millis(writeNanos), millis(markerNanos), 
+					inputBytes, outputBytes, ratio() * 100);
+		}
+	}
+
+	/**
+	 * Adds the metrics of a file.
+	 * 
+	 * @param metrics the metrics
+	 */
+	public void record(FileMetrics metrics) {
+		files.add(metrics);
+	}
+	
+	/**
+	 * Marks the end of the build.
+	 */
+	public void finish() {
+		duration = System.nanoTime() - started;
+	}
+	
+	/**
+	 * Returns the metrics of the files, sorted by the time 
+	 * spent on them (slowest first).
+	 * 
+	 * @return the metrics
+	 */
+	public List<FileMetrics> files() {
+		List<FileMetrics> result = new ArrayList<>(files);
+		result.sort((a, b) -> Long.compare(b.totalNanos(), a.totalNanos()));
+		return result;
+	}
+	
+	/**
+	 * Returns a one line summary of the build.
+	 * 
+	 * @return the summary
+	 */
+	public String summary() {
+		FileMetrics total = new FileMetrics("", "");
+		int cached = 0;
+		for (FileMetrics file: files) {
+			add(total, file);
+			if (file.minifier.equals(CACHED)) {
+				cached += 1;
+			}
+		}
+		return String.format("Minified %d file(s) (%d cached) in %d ms: "
+				+ "read %d ms, minify %d ms, write %d ms, markers %d ms, "
+				+ "%d -> %d bytes (%.1f%%)", files.size(), cached,
+				millis(duration), millis(total.readNanos), 
+				millis(total.minifyNanos), millis(total.writeNanos), 
+				millis(total.markerNanos), total.inputBytes, 
+				total.outputBytes, total.ratio() * 100);
+	}
+
+	static void add(FileMetrics sum, FileMetrics file) {
+		sum.readNanos += file.readNanos;
+		sum.minifyNanos += file.minifyNanos;
+		sum.writeNanos += file.writeNanos;
+		sum.markerNanos += file.markerNanos;
+		sum.inputBytes += file.inputBytes;
+		sum.outputBytes += file.outputBytes;
+	}
+	
+	static long millis(long nanos) {
+		return nanos / 1000000;
+	}
+}
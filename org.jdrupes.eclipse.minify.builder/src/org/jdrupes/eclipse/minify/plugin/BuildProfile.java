@@ -0,0 +1,253 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+
+/**
+ * A build profile overrides the settings stored with the resources
+ * and the project. The active profile is selected in the workspace
+ * preferences or, for a single launch, with the system property
+ * {@value #PROFILE_PROPERTY} (which takes precedence).
+ *
+ * An override is looked up in the project's preferences using the key
+ * "profile.&lt;name&gt;.&lt;key&gt;", where key is the file extension
+ * and the property (e.g. "js.minifier"), "bundle." and the property
+ * or the name of a project setting (e.g. "gzipLevel"). If there is no
+ * such entry, the built-in default of the profile (if any) is used.
+ * An empty value disables a built-in default.
+ *
+ * Profiles never enable the minification of files that are not
+ * configured to be minified.
+ */
+public class BuildProfile {
+
+	/** The key of the selected profile in the workspace preferences. */
+	public static final String PROFILE = "profile";
+	/** The system property that selects the profile for a launch. */
+	public static final String PROFILE_PROPERTY
+		= "org.jdrupes.eclipse.minify.profile";
+	/** Fast builds for development. */
+	public static final String DEV = "dev";
+	/** Maximum compression for releases. */
+	public static final String RELEASE = "release";
+	/** The prefix of the keys of overrides in the project preferences. */
+	public static final String OVERRIDE_PREFIX = "profile.";
+	/** The prefix of the keys of overrides of bundle settings. */
+	public static final String BUNDLE_PREFIX = "bundle.";
+
+	private static final BuildProfile NONE
+		= new BuildProfile("", Collections.emptyMap());
+	private static final Map<String,Map<String,String>> BUILT_IN
+		= new HashMap<>();
+
+	static {
+		Map<String,String> dev = new HashMap<>();
+		dev.put("js." + MinifyBuilder.MINIFIER, MinifyBuilder.WHITESPACE_JS);
+		dev.put("js." + MinifyBuilder.GCC_CREATE_MAP_FILE, "false");
+		dev.put("css." + MinifyBuilder.MINIFIER, MinifyBuilder.STREAMING_CSS);
+		dev.put(BUNDLE_PREFIX + MinifyBuilder.GCC_OPTIMIZATION,
+				MinifyBuilder.GCC_OPT_WHITESPACE_ONLY);
+		dev.put(BUNDLE_PREFIX + MinifyBuilder.GCC_CREATE_MAP_FILE, "false");
+		dev.put(MinifyBuilder.GZIP_LEVEL, "0");
+		BUILT_IN.put(DEV, dev);
+
+		Map<String,String> release = new HashMap<>();
+		release.put("js." + MinifyBuilder.MINIFIER,
+				MinifyBuilder.GOOGLE_CLOSURE_COMPILER);
+		release.put("js." + MinifyBuilder.GCC_OPTIMIZATION,
+				MinifyBuilder.GCC_OPT_ADVANCED);
+		release.put("css." + MinifyBuilder.MINIFIER, MinifyBuilder.STREAMING_CSS);
+		release.put(BUNDLE_PREFIX + MinifyBuilder.GCC_OPTIMIZATION,
+				MinifyBuilder.GCC_OPT_ADVANCED);
+		release.put(MinifyBuilder.GZIP_LEVEL, "9");
+		BUILT_IN.put(RELEASE, release);
+	}
+
+	private static BuildProfile active;
+	private static boolean listening = false;
+
+	private String name;
+	private Map<String,String> builtIn;
+
+	private BuildProfile(String name, Map<String,String> builtIn) {
+		this.name = name;
+		this.builtIn = builtIn;
+	}
+
+	/**
+	 * Returns the profile with the given name. Names without
+	 * built-in defaults are allowed, they only use the overrides
+	 * from the project preferences.
+	 *
+	 * @param name the name, the empty string for no profile
+	 * @return the profile
+	 */
+	public static BuildProfile of(String name) {
+		name = name.trim();
+		if (name.isEmpty()) {
+			return NONE;
+		}
+		return new BuildProfile(name,
+				BUILT_IN.getOrDefault(name, Collections.emptyMap()));
+	}
+
+	/**
+	 * Returns the active profile.
+	 *
+	 * @return the profile
+	 */
+	public static synchronized BuildProfile active() {
+		if (active == null) {
+			String selected = System.getProperty(PROFILE_PROPERTY);
+			if (selected == null) {
+				IEclipsePreferences node = workspacePreferences();
+				if (!listening) {
+					node.addPreferenceChangeListener(event -> {
+						if (PROFILE.equals(event.getKey())) {
+							reset();
+						}
+					});
+					listening = true;
+				}
+				selected = node.get(PROFILE, "");
+			}
+			active = of(selected);
+		}
+		return active;
+	}
+
+	private static synchronized void reset() {
+		active = null;
+	}
+
+	/**
+	 * Returns the workspace preferences that hold the selected profile.
+	 *
+	 * @return the preferences
+	 */
+	public static IEclipsePreferences workspacePreferences() {
+		return InstanceScope.INSTANCE.getNode(MinifyBuilder.BUILDER_ID);
+	}
+
+	/**
+	 * Returns {@code true} if the profile has been selected for
+	 * the launch, i.e. the workspace preference is ignored.
+	 *
+	 * @return the result
+	 */
+	public static boolean selectedByLaunch() {
+		return System.getProperty(PROFILE_PROPERTY) != null;
+	}
+
+	/**
+	 * Returns the name of the profile, the empty string if
+	 * no profile is active.
+	 *
+	 * @return the name
+	 */
+	public String name() {
+		return name;
+	}
+
+	private String override(IEclipsePreferences prefs, String key) {
+		if (name.isEmpty()) {
+			return null;
+		}
+		String value = prefs.get(OVERRIDE_PREFIX + name + "." + key,
+				builtIn.get(key));
+		return value == null || value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * Returns the effective value of a property of a resource
+	 * (see {@link PrefsAccess#property}).
+	 *
+	 * @param prefs the preferences store with the resource's minify properties
+	 * @param resource the resource
+	 * @param property the property
+	 * @param defaultValue the value to return if the property is
+	 * neither set nor overridden
+	 * @return the value
+	 */
+	public String fileProperty(IEclipsePreferences prefs, IResource resource,
+			String property, String defaultValue) {
+		String stored = PrefsAccess.property(prefs, resource, property);
+		if (property.equals(MinifyBuilder.MINIFIER) && (stored == null
+				|| stored.equals(MinifyBuilder.DONT_MINIFY))) {
+			return stored == null ? defaultValue : stored;
+		}
+		String value = override(prefs,
+				resource.getFileExtension() + "." + property);
+		if (value != null) {
+			return value;
+		}
+		return stored == null ? defaultValue : stored;
+	}
+
+	/**
+	 * Returns the effective value of a project setting.
+	 *
+	 * @param prefs the project's preferences store
+	 * @param property the setting
+	 * @param defaultValue the value to return if the setting is
+	 * neither set nor overridden
+	 * @return the value
+	 */
+	public String projectProperty(IEclipsePreferences prefs,
+			String property, String defaultValue) {
+		String value = override(prefs, property);
+		return value != null ? value : prefs.get(property, defaultValue);
+	}
+
+	/**
+	 * Applies the overrides of bundle settings to the given bundles.
+	 *
+	 * @param prefs the project's preferences store
+	 * @param bundles the bundles (modified)
+	 * @return the bundles
+	 */
+	public List<Bundle> apply(IEclipsePreferences prefs, List<Bundle> bundles) {
+		String optimization = override(prefs,
+				BUNDLE_PREFIX + MinifyBuilder.GCC_OPTIMIZATION);
+		String createMapFile = override(prefs,
+				BUNDLE_PREFIX + MinifyBuilder.GCC_CREATE_MAP_FILE);
+		String includeSource = override(prefs,
+				BUNDLE_PREFIX + MinifyBuilder.GCC_INCLUDE_SOURCE);
+		for (Bundle bundle: bundles) {
+			if (optimization != null) {
+				bundle.setOptimization(optimization);
+			}
+			if (createMapFile != null) {
+				bundle.setCreateMapFile(Boolean.parseBoolean(createMapFile));
+			}
+			if (includeSource != null) {
+				bundle.setIncludeSource(Boolean.parseBoolean(includeSource));
+			}
+		}
+		return bundles;
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ISaveContext;
+import org.eclipse.core.resources.ISaveParticipant;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * The state of the outputs of a project as left by the last builds.
+ * For every minified file (or bundle), the time stamp of the source, 
+ * a digest of the options and the time stamp of the output are kept.
+ * For bundles, the paths of the additional outputs (chunks and source
+ * maps) are kept as well, so that outputs that are no longer produced
+ * can be removed.
+ * 
+ * The state is saved at the end of every build and when the workspace
+ * is saved. It allows the builder to minify only the stale resources 
+ * when no delta is available (e.g. after a restart).
+ */
+public class BuildState {
+
+	private static final int FORMAT = 2;
+	private static Map<String,BuildState> states = new HashMap<>();
+	private static boolean participantRegistered = false;
+	
+	private File file;
+	private Map<String,Entry> entries = new HashMap<>();
+	private Map<String,List<String>> extraOutputs = new HashMap<>();
+	private boolean modified;
+
+	/**
+	 * The state of an output.
+	 */
+	public static class Entry {
+		public long sourceStamp;
+		public String fingerprint;
+		public long outputStamp;
+
+		/**
+		 * Creates a new entry.
+		 * 
+		 * @param sourceStamp the source's time stamp (for bundles:
+		 * the latest time stamp of a member)
+		 * @param fingerprint the options (will be digested)
+		 * @param outputStamp the output's time stamp
+		 */
+		public Entry(long sourceStamp, String fingerprint, long outputStamp) {
+			this.sourceStamp = sourceStamp;
+			this.fingerprint = digest(fingerprint);
+			this.outputStamp = outputStamp;
+		}
+
+		private Entry() {
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry)) {
+				return false;
+			}
+			Entry other = (Entry)obj;
+			return sourceStamp == other.sourceStamp 
+					&& fingerprint.equals(other.fingerprint)
+					&& outputStamp == other.outputStamp;
+		}
+
+		@Override
+		public int hashCode() {
+			return fingerprint.hashCode();
+		}
+	}
+	
+	private BuildState(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Returns the state of the given project, loading it on first
+	 * invocation.
+	 * 
+	 * @param project the project
+	 * @return the state
+	 */
+	public static synchronized BuildState of(IProject project) {
+		BuildState state = states.get(project.getName());
+		if (state != null) {
+			return state;
+		}
+		Bundle bundle = FrameworkUtil.getBundle(BuildState.class);
+		state = new BuildState(new File(Platform.getStateLocation(bundle)
+				.append("state").toFile(), project.getName() + ".state"));
+		state.load();
+		states.put(project.getName(), state);
+		if (!participantRegistered) {
+			participantRegistered = true;
+			try {
+				ResourcesPlugin.getWorkspace().addSaveParticipant(
+						bundle.getSymbolicName(), new SaveParticipant());
+			} catch (CoreException e) {
+				// Still saved after every build
+			}
+		}
+		return state;
+	}
+	
+	private void load() {
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)))) {
+			if (in.readInt() != FORMAT) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = in.readUTF();
+				Entry entry = new Entry();
+				entry.sourceStamp = in.readLong();
+				entry.fingerprint = in.readUTF();
+				entry.outputStamp = in.readLong();
+				entries.put(key, entry);
+			}
+			count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = in.readUTF();
+				List<String> paths = new ArrayList<>();
+				for (int j = in.readInt(); j > 0; j--) {
+					paths.add(in.readUTF());
+				}
+				extraOutputs.put(key, paths);
+			}
+		} catch (IOException e) {
+			// Start from scratch
+			entries.clear();
+			extraOutputs.clear();
+		}
+	}
+
+	/**
+	 * Saves the state if it has been modified.
+	 */
+	public synchronized void save() {
+		if (!modified) {
+			return;
+		}
+		file.getParentFile().mkdirs();
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(FORMAT);
+			out.writeInt(entries.size());
+			for (Map.Entry<String,Entry> entry: entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().sourceStamp);
+				out.writeUTF(entry.getValue().fingerprint);
+				out.writeLong(entry.getValue().outputStamp);
+			}
+			out.writeInt(extraOutputs.size());
+			for (Map.Entry<String,List<String>> entry: extraOutputs.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (String path: entry.getValue()) {
+					out.writeUTF(path);
+				}
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), 
+					StandardCopyOption.REPLACE_EXISTING);
+			modified = false;
+		} catch (IOException e) {
+			tmp.delete();
+		}
+	}
+	
+	/**
+	 * Checks if the output with the given key is up to date.
+	 * 
+	 * @param key the key (the source's path or the bundle's key)
+	 * @param current the current state
+	 * @return the result
+	 */
+	public synchronized boolean isUpToDate(String key, Entry current) {
+		return current.equals(entries.get(key));
+	}
+	
+	/**
+	 * Records the state of an output.
+	 * 
+	 * @param key the key
+	 * @param entry the state
+	 */
+	public synchronized void put(String key, Entry entry) {
+		if (!entry.equals(entries.put(key, entry))) {
+			modified = true;
+		}
+	}
+	
+	/**
+	 * Removes the state of an output.
+	 * 
+	 * @param key the key
+	 */
+	public synchronized void remove(String key) {
+		if (entries.remove(key) != null) {
+			modified = true;
+		}
+	}
+	
+	/**
+	 * Removes the states of the outputs of all files in a folder.
+	 * 
+	 * @param folder the folder's project relative path
+	 */
+	public synchronized void removeFolder(String folder) {
+		String prefix = folder + "/";
+		if (entries.keySet().removeIf(key -> key.startsWith(prefix))) {
+			modified = true;
+		}
+	}
+	
+	/**
+	 * Returns the additional outputs recorded for the given key.
+	 * 
+	 * @param key the key
+	 * @return the project relative paths of the outputs
+	 */
+	public synchronized List<String> extraOutputs(String key) {
+		return new ArrayList<>(
+				extraOutputs.getOrDefault(key, Collections.emptyList()));
+	}
+	
+	/**
+	 * Records the additional outputs for the given key.
+	 * 
+	 * @param key the key
+	 * @param paths the project relative paths of the outputs
+	 */
+	public synchronized void setExtraOutputs(String key, List<String> paths) {
+		List<String> previous = paths.isEmpty() ? extraOutputs.remove(key)
+				: extraOutputs.put(key, new ArrayList<>(paths));
+		if (!paths.equals(previous == null 
+				? Collections.emptyList() : previous)) {
+			modified = true;
+		}
+	}
+	
+	private static String digest(String value) {
+		try {
+			StringBuilder result = new StringBuilder();
+			for (byte b: MessageDigest.getInstance("SHA-256").digest(
+					value.getBytes(StandardCharsets.UTF_8))) {
+				result.append(String.format("%02x", b));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return value;
+		}
+	}
+	
+	private static class SaveParticipant implements ISaveParticipant {
+
+		@Override
+		public void saving(ISaveContext context) throws CoreException {
+			synchronized (BuildState.class) {
+				for (BuildState state: states.values()) {
+					state.save();
+				}
+			}
+		}
+		
+		@Override
+		public void doneSaving(ISaveContext context) {
+		}
+
+		@Override
+		public void prepareToSave(ISaveContext context) throws CoreException {
+		}
+
+		@Override
+		public void rollback(ISaveContext context) {
+		}
+	}
+}
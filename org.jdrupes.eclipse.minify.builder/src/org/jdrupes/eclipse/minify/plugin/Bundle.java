@@ -0,0 +1,491 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.osgi.service.prefs.BackingStoreException;
+import org.osgi.service.prefs.Preferences;
+
+/**
+ * A JavaScript bundle, i.e. an ordered list of source files that are 
+ * compiled by the Google Closure Compiler into a single output file.
+ * 
+ * Sources are specified as project relative paths or glob patterns.
+ * In patterns, "*" and "?" match any characters (or a single character) 
+ * of a path segment and "**" matches any number of segments. Files 
+ * matched by a pattern are added in alphabetical order, files matched 
+ * by more than one entry are added only once.
+ * 
+ * A bundle may be split into chunks that can be loaded lazily. Every 
+ * chunk has a name and selects some of the bundle's sources with patterns.
+ * The sources not selected by any chunk form the base chunk, which is
+ * written to the bundle's output file. All other chunks depend on the 
+ * base chunk and are written to files named after the output file
+ * with the chunk name inserted (see {@link #chunkOutputPath(String)}).
+ * 
+ * Bundles are stored in the builder's project preferences, using
+ * one key per bundle ({@link #KEY_PREFIX} followed by the output path).
+ * As the key does not contain "//", bundles are not treated as 
+ * resource properties by {@link PrefsAccess}.
+ */
+public class Bundle {
+
+	public static final String KEY_PREFIX = "bundle:";
+	
+	private String outputPath;
+	private List<String> sources;
+	private String optimization = MinifyBuilder.GCC_OPT_SIMPLE;
+	private boolean createMapFile;
+	private boolean includeSource;
+	private List<Pattern> patterns;
+	private List<Chunk> chunks = new ArrayList<>();
+	
+	/**
+	 * A chunk of a bundle.
+	 */
+	public static class Chunk {
+		private String name;
+		private List<String> sources;
+		private List<Pattern> patterns = new ArrayList<>();
+		
+		/**
+		 * Creates a new chunk.
+		 * 
+		 * @param name the name (letters, digits, "_" and "-")
+		 * @param sources the patterns that select the sources 
+		 */
+		public Chunk(String name, List<String> sources) {
+			this.name = name;
+			this.sources = new ArrayList<>(sources);
+			for (String source: sources) {
+				patterns.add(Pattern.compile(globToRegex(source)));
+			}
+		}
+		
+		public String name() {
+			return name;
+		}
+		
+		public List<String> sources() {
+			return Collections.unmodifiableList(sources);
+		}
+		
+		/**
+		 * Checks if the file with the given path belongs to the chunk.
+		 * 
+		 * @param path the project relative path
+		 * @return the result
+		 */
+		public boolean matches(IPath path) {
+			String portable = path.toPortableString();
+			for (Pattern pattern: patterns) {
+				if (pattern.matcher(portable).matches()) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@Override
+		public String toString() {
+			return name + "=" + String.join(" ", sources);
+		}
+		
+		/**
+		 * Parses a chunk definition as created by {@link #toString()}.
+		 * 
+		 * @param definition the definition
+		 * @return the chunk or {@code null} if the definition is invalid
+		 */
+		public static Chunk parse(String definition) {
+			int sep = definition.indexOf('=');
+			if (sep < 0) {
+				return null;
+			}
+			String name = definition.substring(0, sep).trim();
+			if (!name.matches("[A-Za-z0-9_-]+")) {
+				return null;
+			}
+			List<String> sources = new ArrayList<>();
+			for (String source: definition.substring(sep + 1).trim().split("\\s+")) {
+				if (!source.isEmpty()) {
+					sources.add(source);
+				}
+			}
+			return new Chunk(name, sources);
+		}
+	}
+	
+	/**
+	 * Creates a new bundle.
+	 * 
+	 * @param outputPath the project relative path of the output file
+	 * @param sources the project relative paths or patterns of the sources
+	 */
+	public Bundle(String outputPath, List<String> sources) {
+		this.outputPath = outputPath;
+		this.sources = new ArrayList<>(sources);
+	}
+
+	/**
+	 * Returns all bundles defined in the given preferences.
+	 * 
+	 * @param prefs the builder's project preferences
+	 * @return the bundles, sorted by output path
+	 */
+	public static List<Bundle> bundles(Preferences prefs) {
+		List<Bundle> result = new ArrayList<>();
+		try {
+			String[] keys = prefs.keys();
+			Arrays.sort(keys);
+			for (String key: keys) {
+				if (key.startsWith(KEY_PREFIX)) {
+					result.add(decode(key.substring(KEY_PREFIX.length()), 
+							prefs.get(key, "")));
+				}
+			}
+		} catch (BackingStoreException e) {
+			// Treat as no bundles
+		}
+		return result;
+	}
+	
+	/**
+	 * Stores the bundle in the given preferences. The preferences
+	 * are not flushed.
+	 * 
+	 * @param prefs the builder's project preferences
+	 */
+	public void store(Preferences prefs) {
+		prefs.put(KEY_PREFIX + outputPath, encode());
+	}
+	
+	/**
+	 * Removes the bundle from the given preferences. The preferences
+	 * are not flushed.
+	 * 
+	 * @param prefs the builder's project preferences
+	 */
+	public void remove(Preferences prefs) {
+		prefs.remove(KEY_PREFIX + outputPath);
+	}
+	
+	/**
+	 * Returns the definition as a single string.
+	 * 
+	 * @return the encoded definition
+	 */
+	public String encode() {
+		List<String> chunkDefs = new ArrayList<>();
+		for (Chunk chunk: chunks) {
+			chunkDefs.add(chunk.toString());
+		}
+		return optimization + "|" + createMapFile + "|" + includeSource 
+				+ "|" + String.join(";", chunkDefs)
+				+ "|" + String.join(",", sources);
+	}
+
+	private static Bundle decode(String outputPath, String value) {
+		String[] parts = value.split("\\|", 5);
+		Bundle bundle = new Bundle(outputPath, Collections.emptyList());
+		if (parts.length < 4) {
+			return bundle;
+		}
+		bundle.optimization = parts[0];
+		bundle.createMapFile = Boolean.parseBoolean(parts[1]);
+		bundle.includeSource = Boolean.parseBoolean(parts[2]);
+		if (parts.length == 5) {
+			// Format with chunks
+			for (String chunkDef: parts[3].split(";")) {
+				Chunk chunk = Chunk.parse(chunkDef);
+				if (chunk != null) {
+					bundle.chunks.add(chunk);
+				}
+			}
+		}
+		for (String source: parts[parts.length - 1].split(",")) {
+			if (!source.trim().isEmpty()) {
+				bundle.sources.add(source.trim());
+			}
+		}
+		return bundle;
+	}
+	
+	public String outputPath() {
+		return outputPath;
+	}
+
+	public List<String> sources() {
+		return Collections.unmodifiableList(sources);
+	}
+	
+	public String optimization() {
+		return optimization;
+	}
+
+	public void setOptimization(String optimization) {
+		this.optimization = optimization;
+	}
+
+	public boolean createMapFile() {
+		return createMapFile;
+	}
+
+	public void setCreateMapFile(boolean createMapFile) {
+		this.createMapFile = createMapFile;
+	}
+
+	public boolean includeSource() {
+		return includeSource;
+	}
+
+	public void setIncludeSource(boolean includeSource) {
+		this.includeSource = includeSource;
+	}
+
+	public List<Chunk> chunks() {
+		return Collections.unmodifiableList(chunks);
+	}
+	
+	public void setChunks(List<Chunk> chunks) {
+		this.chunks = new ArrayList<>(chunks);
+	}
+	
+	/**
+	 * Returns the project relative path of the file with the given 
+	 * chunk's output. The chunk's name is inserted before the ".min.js"
+	 * or ".js" extension of the bundle's output path.
+	 * 
+	 * @param chunkName the chunk's name
+	 * @return the path
+	 */
+	public String chunkOutputPath(String chunkName) {
+		String suffix = outputPath.endsWith(".min.js") ? ".min.js" : ".js";
+		if (!outputPath.endsWith(suffix)) {
+			return outputPath + "." + chunkName;
+		}
+		return outputPath.substring(0, outputPath.length() - suffix.length())
+				+ "." + chunkName + suffix;
+	}
+	
+	/**
+	 * Checks if the given path is one of the files produced by the
+	 * bundle, i.e. the output, the output of a chunk or the source
+	 * map of one of them. Such files are never sources of the bundle,
+	 * even if they match one of its patterns.
+	 * 
+	 * @param path the project relative path
+	 * @return the result
+	 */
+	public boolean isOutput(String path) {
+		List<String> outputs = new ArrayList<>();
+		outputs.add(outputPath);
+		for (Chunk chunk: chunks) {
+			outputs.add(chunkOutputPath(chunk.name()));
+		}
+		for (String output: outputs) {
+			if (path.equals(output) || path.equals(output + ".map")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the output file.
+	 * 
+	 * @param project the project
+	 * @return the file
+	 */
+	public IFile outputFile(IProject project) {
+		return project.getFile(outputPath);
+	}
+	
+	private synchronized List<Pattern> patterns() {
+		if (patterns == null) {
+			patterns = new ArrayList<>();
+			for (String source: sources) {
+				patterns.add(Pattern.compile(globToRegex(source)));
+			}
+		}
+		return patterns;
+	}
+	
+	private static boolean isPattern(String source) {
+		return source.indexOf('*') >= 0 || source.indexOf('?') >= 0;
+	}
+	
+	/**
+	 * Converts a glob pattern to a regular expression.
+	 * 
+	 * @param glob the pattern
+	 * @return the regular expression
+	 */
+	public static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			switch (c) {
+			case '*':
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					i += 1;
+					if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+						// "**/" matches zero or more folders
+						i += 1;
+						regex.append("(?:.*/)?");
+					} else {
+						regex.append(".*");
+					}
+				} else {
+					regex.append("[^/]*");
+				}
+				break;
+			case '?':
+				regex.append("[^/]");
+				break;
+			default:
+				if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+					regex.append('\\');
+				}
+				regex.append(c);
+			}
+		}
+		return regex.toString();
+	}
+	
+	/**
+	 * Returns the longest leading part of a source specification that
+	 * contains no wildcards and ends with a complete folder name.
+	 * 
+	 * @param source the source specification
+	 * @return the folder path (empty for the project)
+	 */
+	private static String literalFolder(String source) {
+		int wildcard = source.length();
+		for (int i = 0; i < source.length(); i++) {
+			if (source.charAt(i) == '*' || source.charAt(i) == '?') {
+				wildcard = i;
+				break;
+			}
+		}
+		int sep = source.lastIndexOf('/', wildcard);
+		return sep < 0 ? "" : source.substring(0, sep);
+	}
+	
+	/**
+	 * Checks if the file with the given path is a source of the bundle.
+	 * 
+	 * @param path the project relative path
+	 * @return the result
+	 */
+	public boolean matches(IPath path) {
+		String portable = path.toPortableString();
+		if (isOutput(portable)) {
+			return false;
+		}
+		for (Pattern pattern: patterns()) {
+			if (pattern.matcher(portable).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if the folder with the given path may contain sources 
+	 * of the bundle.
+	 * 
+	 * @param path the project relative path (empty for the project)
+	 * @return the result
+	 */
+	public boolean mayContain(IPath path) {
+		String folder = path.toPortableString();
+		if (folder.isEmpty()) {
+			return true;
+		}
+		for (String source: sources) {
+			String literal = literalFolder(source);
+			if (literal.equals(folder) || literal.startsWith(folder + "/")
+					|| isPattern(source) && folder.startsWith(literal)
+					&& (literal.isEmpty() || folder.startsWith(literal + "/"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the source files of the bundle in the order in which
+	 * they are to be compiled.
+	 * 
+	 * @param project the project
+	 * @return the files
+	 * @throws CoreException
+	 */
+	public List<IFile> members(IProject project) throws CoreException {
+		Set<IFile> result = new LinkedHashSet<>();
+		for (String source: sources) {
+			if (!isPattern(source)) {
+				IFile file = project.getFile(source);
+				if (file.exists() && !isOutput(source)) {
+					result.add(file);
+				}
+				continue;
+			}
+			String literal = literalFolder(source);
+			IContainer root = literal.isEmpty() ? project 
+					: project.getFolder(new Path(literal));
+			if (!root.exists()) {
+				continue;
+			}
+			Pattern pattern = Pattern.compile(globToRegex(source));
+			List<IFile> matched = new ArrayList<>();
+			root.accept(resource -> {
+				if (resource.getType() == IResource.FILE) {
+					String path = resource.getProjectRelativePath().toPortableString();
+					if (pattern.matcher(path).matches() 
+							&& !isOutput(path)
+							&& !ResourceIndex.isDerivedOutput(resource.getName())) {
+						matched.add((IFile)resource);
+					}
+					return false;
+				}
+				return true;
+			});
+			matched.sort((a, b) -> a.getProjectRelativePath().toPortableString()
+					.compareTo(b.getProjectRelativePath().toPortableString()));
+			result.addAll(matched);
+		}
+		return new ArrayList<>(result);
+	}
+}
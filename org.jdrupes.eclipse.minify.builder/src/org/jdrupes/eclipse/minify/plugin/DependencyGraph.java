@@ -0,0 +1,253 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * The dependencies between the resources of a project that influence
+ * the result of a minification. A dependent is either the project 
+ * relative path of a minified file (which depends on its custom 
+ * externs) or the key of a bundle (which depends on its members).
+ * 
+ * The graph is persisted in the plugin's state location, so that
+ * it is available after a restart.
+ */
+public class DependencyGraph {
+
+	/** The prefix used for bundles in the graph. */
+	public static final String BUNDLE_PREFIX = "bundle:";
+	
+	private File file;
+	/** Dependency -&gt; dependents, sorted for prefix queries. */
+	private TreeMap<String,Set<String>> dependents = new TreeMap<>();
+	/** Dependent -&gt; dependencies. */
+	private Map<String,Set<String>> dependencies = new HashMap<>();
+	private boolean modified;
+	
+	private DependencyGraph(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Loads the graph of the given project.
+	 * 
+	 * @param project the project
+	 * @return the graph
+	 */
+	public static DependencyGraph load(IProject project) {
+		File directory = Platform.getStateLocation(FrameworkUtil.getBundle(
+				DependencyGraph.class)).append("dependencies").toFile();
+		DependencyGraph graph = new DependencyGraph(
+				new File(directory, project.getName() + ".deps"));
+		if (!graph.file.exists()) {
+			return graph;
+		}
+		try (BufferedReader in = Files.newBufferedReader(
+				graph.file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int sep = line.indexOf('\t');
+				if (sep > 0) {
+					graph.addEdge(line.substring(0, sep), line.substring(sep + 1));
+				}
+			}
+		} catch (IOException e) {
+			// Rebuilt by the next full build
+			graph.clear();
+		}
+		graph.modified = false;
+		return graph;
+	}
+
+	/**
+	 * Saves the graph if it has been modified since it was loaded
+	 * or last saved.
+	 */
+	public synchronized void save() {
+		if (!modified) {
+			return;
+		}
+		file.getParentFile().mkdirs();
+		File tmp = new File(file.getPath() + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(
+				tmp.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String,Set<String>> entry: dependencies.entrySet()) {
+				for (String dependency: entry.getValue()) {
+					out.write(entry.getKey());
+					out.write('\t');
+					out.write(dependency);
+					out.newLine();
+				}
+			}
+		} catch (IOException e) {
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), 
+					StandardCopyOption.REPLACE_EXISTING);
+			modified = false;
+		} catch (IOException e) {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Removes all dependencies.
+	 */
+	public synchronized void clear() {
+		modified = modified || !dependencies.isEmpty();
+		dependents.clear();
+		dependencies.clear();
+	}
+	
+	private void addEdge(String dependent, String dependency) {
+		dependencies.computeIfAbsent(dependent, k -> new HashSet<>())
+			.add(dependency);
+		dependents.computeIfAbsent(dependency, k -> new HashSet<>())
+			.add(dependent);
+	}
+	
+	/**
+	 * Replaces the dependencies of a dependent.
+	 * 
+	 * @param dependent the dependent
+	 * @param newDependencies its dependencies
+	 */
+	public synchronized void setDependencies(String dependent, 
+			Collection<String> newDependencies) {
+		Set<String> old = dependencies.get(dependent);
+		if (old == null ? newDependencies.isEmpty() 
+				: old.equals(new HashSet<>(newDependencies))) {
+			return;
+		}
+		removeDependent(dependent);
+		for (String dependency: newDependencies) {
+			addEdge(dependent, dependency);
+		}
+		modified = true;
+	}
+	
+	/**
+	 * Removes a dependent with all its dependencies.
+	 * 
+	 * @param dependent the dependent
+	 */
+	public synchronized void removeDependent(String dependent) {
+		Set<String> old = dependencies.remove(dependent);
+		if (old == null) {
+			return;
+		}
+		for (String dependency: old) {
+			Set<String> users = dependents.get(dependency);
+			users.remove(dependent);
+			if (users.isEmpty()) {
+				dependents.remove(dependency);
+			}
+		}
+		modified = true;
+	}
+
+	/**
+	 * Removes all dependents in a folder with their dependencies.
+	 * 
+	 * @param folder the folder's project relative path
+	 */
+	public synchronized void removeDependentsIn(String folder) {
+		String prefix = folder + "/";
+		for (String dependent: new ArrayList<>(dependencies.keySet())) {
+			if (dependent.startsWith(prefix)) {
+				removeDependent(dependent);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the resource with the given path is a dependency.
+	 * 
+	 * @param path the path
+	 * @return the result
+	 */
+	public synchronized boolean isDependency(IPath path) {
+		return dependents.containsKey(path.toPortableString());
+	}
+	
+	/**
+	 * Returns the dependencies contained in the given folder.
+	 * 
+	 * @param folder the folder's path
+	 * @return the paths of the dependencies
+	 */
+	public synchronized Set<String> dependenciesIn(IPath folder) {
+		if (folder.isEmpty()) {
+			return new HashSet<>(dependents.keySet());
+		}
+		String prefix = folder.toPortableString() + "/";
+		SortedMap<String,Set<String>> contained 
+			= dependents.subMap(prefix, folder.toPortableString() + "0");
+		return new HashSet<>(contained.keySet());
+	}
+	
+	/**
+	 * Returns all dependents (direct and indirect) of the given
+	 * dependencies.
+	 * 
+	 * @param changed the dependencies
+	 * @return the dependents
+	 */
+	public synchronized Set<String> transitiveDependents(
+			Collection<String> changed) {
+		Set<String> result = new LinkedHashSet<>();
+		Deque<String> toVisit = new ArrayDeque<>(changed);
+		while (!toVisit.isEmpty()) {
+			Set<String> direct = dependents.get(toVisit.remove());
+			if (direct == null) {
+				continue;
+			}
+			for (String dependent: direct) {
+				if (result.add(dependent)) {
+					toVisit.add(dependent);
+				}
+			}
+		}
+		return result;
+	}
+}
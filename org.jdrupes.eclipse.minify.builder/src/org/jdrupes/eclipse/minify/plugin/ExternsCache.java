@@ -0,0 +1,123 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.jdrupes.eclipse.minify.engine.GccEngine;
+
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceFile;
+
+/**
+ * Keeps the externs used by the Google Closure Compiler for the
+ * lifetime of the JVM. The compiler's default externs are cached
+ * by {@link GccEngine#builtinExterns(CompilerOptions.Environment)},
+ * externs from files in the workspace are cached until the file 
+ * is modified.
+ */
+public class ExternsCache {
+
+	private static Map<IFile,CustomExterns> customs 
+		= new ConcurrentHashMap<>();
+	
+	private ExternsCache() {
+	}
+
+	private static class CustomExterns {
+		public long stamp;
+		public SourceFile source;
+		
+		public CustomExterns(long stamp, SourceFile source) {
+			this.stamp = stamp;
+			this.source = source;
+		}
+	}
+	
+	/**
+	 * Returns the externs for a compilation. The returned list is a
+	 * new instance and may be modified by the invoker.
+	 * 
+	 * @param environment the environment that determines the 
+	 * default externs
+	 * @param customFiles additional externs provided by files
+	 * from the workspace
+	 * @return the externs
+	 * @throws IOException
+	 */
+	public static List<SourceFile> externs(
+			CompilerOptions.Environment environment, List<IFile> customFiles)
+			throws IOException {
+		List<SourceFile> result 
+			= new ArrayList<>(GccEngine.builtinExterns(environment));
+		result.addAll(customExterns(customFiles));
+		return result;
+	}
+	
+	/**
+	 * Returns the externs provided by files from the workspace.
+	 * 
+	 * @param customFiles the files
+	 * @return the externs
+	 * @throws IOException
+	 */
+	public static List<SourceFile> customExterns(List<IFile> customFiles)
+			throws IOException {
+		List<SourceFile> result = new ArrayList<>();
+		for (IFile file: customFiles) {
+			result.add(customExterns(file));
+		}
+		return result;
+	}
+	
+	private static SourceFile customExterns(IFile file) throws IOException {
+		CustomExterns cached = customs.get(file);
+		// The file's modification stamp changes with every modification
+		if (cached != null && cached.stamp == file.getModificationStamp()) {
+			return cached.source;
+		}
+		try {
+			long stamp = file.getModificationStamp();
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			try (InputStream in = file.getContents()) {
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = in.read(buffer)) > 0) {
+					content.write(buffer, 0, count);
+				}
+			}
+			SourceFile source = SourceFile.fromCode(
+					file.getFullPath().toPortableString(), 
+					content.toString(file.getCharset()));
+			customs.put(file, new CustomExterns(stamp, source));
+			return source;
+		} catch (CoreException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+	
+}
@@ -0,0 +1,171 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.jdrupes.eclipse.minify.engine.GccBundleEngine;
+import org.jdrupes.eclipse.minify.engine.MinifyOptions;
+import org.jdrupes.eclipse.minify.engine.MinifyWorker;
+import org.jdrupes.eclipse.minify.engine.ProblemReporter;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder.MinifyRunner;
+
+/**
+ * Compiles all sources of a {@link Bundle} in a single invocation of
+ * the Google Closure Compiler (see {@link GccBundleEngine}), in the
+ * IDE or, if configured, in a worker JVM. Because the compiler sees 
+ * all sources, optimizations (and the source map) span all files.
+ * 
+ * The base chunk is written to the output stream like the result of
+ * an ordinary compilation, the other chunks (and all source maps) are
+ * written to extra outputs, which the builder writes to the workspace.
+ */
+public class GccBundleMinifier extends MinifyRunner {
+
+	private Bundle bundle;
+	private List<IFile> members;
+	private IFile destFile;
+	private OutputStream out;
+	private String outCharset;
+	private MinifierConsole console;
+	private WorkerPool workers;
+	private Map<String,String> properties = new HashMap<>();
+	private Map<String,IFile> membersByName = new HashMap<>();
+	private volatile boolean failed;
+	
+	public GccBundleMinifier(MinifyBuilder builder, Bundle bundle, 
+			List<IFile> members, IFile destFile, OutputStream out,
+			IEclipsePreferences prefs) throws CoreException {
+		super(builder);
+		this.bundle = bundle;
+		this.members = members;
+		this.destFile = destFile;
+		this.out = out;
+		this.outCharset = destFile.exists() ? destFile.getCharset() : "ascii";
+		workers = WorkerPool.of(prefs);
+		console = builder.minifierConsole();
+		properties.put(MinifyBuilder.MINIFIER, 
+				MinifyBuilder.GOOGLE_CLOSURE_COMPILER);
+		properties.put(MinifyBuilder.GCC_OPTIMIZATION, bundle.optimization());
+		properties.put(MinifyBuilder.GCC_CREATE_MAP_FILE, 
+				Boolean.toString(bundle.createMapFile()));
+		properties.put(MinifyBuilder.GCC_INCLUDE_SOURCE, 
+				Boolean.toString(bundle.includeSource()));
+	}
+
+	/**
+	 * Returns the charset of the result or {@code null} if the
+	 * compilation failed (no result).
+	 */
+	@Override
+	public String destCharset() {
+		return failed ? null : outCharset;
+	}
+
+	@Override
+	protected void runSafe() throws Exception {
+		GccBundleEngine.Sources sources 
+			= new GccBundleEngine.Sources(bundle.outputPath());
+		for (Bundle.Chunk chunk: bundle.chunks()) {
+			sources.addChunk(chunk.name(), bundle.chunkOutputPath(chunk.name()));
+		}
+		// Make the sources' locations relative to the map file
+		StringBuilder toProject = new StringBuilder();
+		for (int i = 1; i < destFile.getProjectRelativePath().segmentCount(); i++) {
+			toProject.append("../");
+		}
+		for (IFile member: members) {
+			String name = toProject 
+					+ member.getProjectRelativePath().toPortableString();
+			membersByName.put(name, member);
+			String chunkName = GccBundleEngine.BASE;
+			for (Bundle.Chunk chunk: bundle.chunks()) {
+				if (chunk.matches(member.getProjectRelativePath())) {
+					chunkName = chunk.name();
+					break;
+				}
+			}
+			sources.addMember(name, readCode(member), chunkName);
+		}
+		// The base chunk is the main output 
+		Function<String,OutputStream> outputs = path -> 
+			path.equals(bundle.outputPath()) ? out 
+				: extraOutput(destFile.getProject().getFile(path));
+		try (PrintStream err = console.newStream()) {
+			if (workers != null) {
+				try {
+					failed = !workers.compile(new MinifyWorker.Request(
+							bundle.outputPath(), outCharset, outCharset, 
+							properties).setBundle(sources), outputs, 
+							this::report, err);
+				} catch (MinifyWorker.TerminatedException e) {
+					if (!members.isEmpty()) {
+						builder().addBundleMarker(members.get(0), 
+								bundle.outputPath(), "Bundle " 
+								+ bundle.outputPath() + " not built: " 
+								+ e.getMessage(), -1, 
+								ProblemReporter.SEVERITY_ERROR);
+					}
+					failed = true;
+				}
+				return;
+			}
+			failed = !new GccBundleEngine(MinifyOptions.of(properties::get), err)
+					.setCancelled(this::isCancelled)
+					.compile(sources, outCharset, outputs, this::report);
+		}
+	}
+
+	private String readCode(IFile member) throws CoreException, IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try (InputStream in = readSource(member)) {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				content.write(buffer, 0, count);
+			}
+		}
+		return new String(content.toByteArray(), member.getCharset());
+	}
+	
+	/**
+	 * Reports problems as markers on the bundle's member files.
+	 */
+	private void report(String member, String message, int lineNumber, 
+			int severity) {
+		IFile file = membersByName.get(member);
+		if (file == null) {
+			return;
+		}
+		builder().addBundleMarker(file, bundle.outputPath(),
+				message + " (bundle " + bundle.outputPath() + ")",
+				lineNumber, severity);
+	}
+}
@@ -1,39 +1,37 @@
 package org.jdrupes.eclipse.minify.plugin;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.nio.charset.Charset;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
-import org.eclipse.ui.console.MessageConsole;
+import org.jdrupes.eclipse.minify.engine.GccEngine;
+import org.jdrupes.eclipse.minify.engine.MinifyOptions;
+import org.jdrupes.eclipse.minify.engine.MinifyWorker;
 import org.jdrupes.eclipse.minify.plugin.MinifyBuilder.MinifyRunner;
 
-import com.google.javascript.jscomp.CheckLevel;
-import com.google.javascript.jscomp.CommandLineRunner;
 import com.google.javascript.jscomp.CompilationLevel;
-import com.google.javascript.jscomp.CompilerOptions;
-import com.google.javascript.jscomp.ErrorHandler;
-import com.google.javascript.jscomp.JSError;
-import com.google.javascript.jscomp.SourceMap;
 
 public class GccMinifier extends MinifyRunner {
 
 	private IFile srcFile;
 	private IFile mapFile;
+	private OutputStream mapOut;
 	private OutputStream out;
+	private String inCharset;
 	private String outCharset;
-	private MessageConsole console;
-	private CompilationLevel compilationLevel;
-	private boolean createMapFile;
-	private boolean includeSource;
+	private MinifierConsole console;
+	private MinifyOptions options;
+	private List<IFile> externFiles = new ArrayList<>();
+	private WorkerPool workers;
+	private Map<String,String> properties;
+	private boolean failed;
 	
 	public GccMinifier(MinifyBuilder builder, IFile srcFile, IFile destFile, 
 			OutputStream out, IEclipsePreferences prefs)
@@ -41,104 +39,82 @@ public class GccMinifier extends MinifyRunner {
 		super(builder);
 		this.srcFile = srcFile;
 		this.out = out;
+		this.inCharset = srcFile.getCharset();
 		this.outCharset = destFile.exists() ? destFile.getCharset() : "ascii";
 		console = builder.minifierConsole();
 
-		String optLevel = prefs.get(PrefsAccess.preferenceKey(
-				srcFile, MinifyBuilder.GCC_OPTIMIZATION),
-				MinifyBuilder.GCC_OPT_WHITESPACE_ONLY);
-		switch (optLevel) {
-		case MinifyBuilder.GCC_OPT_ADVANCED:
-			compilationLevel = CompilationLevel.ADVANCED_OPTIMIZATIONS;
-			break;
-		case MinifyBuilder.GCC_OPT_SIMPLE:
-			compilationLevel = CompilationLevel.SIMPLE_OPTIMIZATIONS;
-			break;
-		default:
-			compilationLevel = CompilationLevel.WHITESPACE_ONLY;
-		}
-		createMapFile = prefs.getBoolean(PrefsAccess.preferenceKey(
-				srcFile, MinifyBuilder.GCC_CREATE_MAP_FILE), false);
-		if (createMapFile) {
+		options = MinifyBuilder.options(srcFile, prefs);
+		if (options.createMapFile()) {
 			IPath destPath = destFile.getProjectRelativePath();
 			IPath mapPath = destPath.addFileExtension("map");
 			mapFile = destFile.getProject().getFile(mapPath);
-			addCreatedExtraFile(mapFile);
+			mapOut = extraOutput(mapFile);
+		}
+		externFiles = externFiles(srcFile, prefs);
+		workers = WorkerPool.of(prefs);
+		if (workers != null) {
+			properties = MinifyBuilder.optionProperties(srcFile, prefs);
 		}
-		includeSource = prefs.getBoolean(PrefsAccess.preferenceKey(
-				srcFile, MinifyBuilder.GCC_INCLUDE_SOURCE), false);
-	}
-
-	@Override
-	public String destCharset() {
-		return outCharset;
 	}
 
-	@Override
-	protected void runSafe() throws Exception {
-		PrintStream stdout = new PrintStream(out);
-		try {
-			CommandLineRunner clr = new GccCommandLineRunner(
-					new BufferedInputStream(srcFile.getContents()),
-					stdout, 
-					new PrintStream(console.newMessageStream()));
-			clr.setExitCodeReceiver((r) -> { return null; }); 
-			clr.run();
-		} finally {
-			stdout.close();
-		}
+	/**
+	 * Maps the value of the optimization property to the compilation level.
+	 * 
+	 * @param optLevel the property value
+	 * @return the compilation level
+	 */
+	public static CompilationLevel compilationLevel(String optLevel) {
+		return GccEngine.compilationLevel(optLevel);
 	}
 	
-	private class GccCommandLineRunner extends CommandLineRunner {
-		private GccCommandLineRunner(InputStream in, PrintStream out, PrintStream err)
-			throws CoreException {
-			super(new String[0], in, out, err);
-			getCommandLineConfig().setCharset(srcFile.getCharset());
-			if (mapFile != null) {
-				getCommandLineConfig().setCreateSourceMap(mapFile.getLocation().toOSString());
-				getCommandLineConfig().setSourceMapLocationMappings(Arrays.asList(
-						new SourceMap.LocationMapping("stdin", srcFile.getName())));
-				getCommandLineConfig().setOutputWrapper(
-						"%output%\n//# sourceMappingURL=" + mapFile.getName());
-			}
-		}
-
-		@Override
-		protected CompilerOptions createOptions() {
-			 CompilerOptions options = super.createOptions();
-			 compilationLevel.setOptionsForCompilationLevel(options);
-			 options.setOutputCharset(Charset.forName(outCharset));
-			 options.setErrorHandler(new GccErrorHandler(srcFile));
-			 options.setSourceMapIncludeSourcesContent(includeSource);
-			 return options;
+	/**
+	 * Returns the files configured as additional externs for the
+	 * given source file.
+	 * 
+	 * @param srcFile the source file
+	 * @param prefs the preferences store with the file's minify properties
+	 * @return the files
+	 */
+	public static List<IFile> externFiles(IFile srcFile, IEclipsePreferences prefs) {
+		List<IFile> result = new ArrayList<>();
+		for (String path: MinifyBuilder.options(srcFile, prefs).externs()) {
+			result.add(srcFile.getProject().getFile(path));
 		}
+		return result;
 	}
 
 	/**
-	 * The error reporter for the GCC.
+	 * Returns the charset of the result or {@code null} if the
+	 * worker terminated (no result).
 	 */
-	private class GccErrorHandler implements ErrorHandler {
-		
-		private IFile file;
-
-		public GccErrorHandler(IFile file) {
-			this.file = file;
-		}
+	@Override
+	public String destCharset() {
+		return failed ? null : outCharset;
+	}
 
-		@Override
-		public void report(CheckLevel level, JSError error) {
-			int imLevel;
-			switch (level) {
-			case ERROR:
-				imLevel = IMarker.SEVERITY_ERROR;
-				break;
-			case WARNING:
-				imLevel = IMarker.SEVERITY_WARNING;
-				break;
-			default:
+	@Override
+	protected void runSafe() throws Exception {
+		try (PrintStream err = console.newStream()) {
+			if (workers != null) {
+				try {
+					workers.minify(new MinifyWorker.Request(srcFile.getName(), 
+							inCharset, outCharset, properties)
+							.setMapName(mapFile == null ? null : mapFile.getName())
+							.addExterns(ExternsCache.customExterns(externFiles))
+							.setSource(readSource(srcFile)), 
+							out, mapOut, problemReporter(srcFile), err);
+				} catch (MinifyWorker.TerminatedException e) {
+					reportTerminated(srcFile, e);
+					failed = true;
+				}
 				return;
 			}
-			builder().addMarker(file, error.description, error.getLineNumber(), imLevel);
+			GccEngine engine = new GccEngine(options, 
+					ExternsCache.customExterns(externFiles), err)
+					.setCancelled(this::isCancelled);
+			engine.minify(readSource(srcFile), inCharset, srcFile.getName(), 
+					out, outCharset, mapFile == null ? null : mapFile.getName(),
+					mapOut, problemReporter(srcFile));
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,219 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.console.ConsolePlugin;
+import org.eclipse.ui.console.IConsole;
+import org.eclipse.ui.console.IConsoleListener;
+import org.eclipse.ui.console.IConsoleManager;
+import org.eclipse.ui.console.MessageConsole;
+import org.eclipse.ui.console.MessageConsoleStream;
+
+/**
+ * The sink for all output to the "Minifier" console. Writers never
+ * block: complete lines are put in a bounded queue that is drained
+ * by a system job in batches. If more lines arrive than the queue
+ * can hold, the surplus is dropped and the number of dropped lines
+ * is reported. The job writes at most {@link #LINES_PER_FLUSH} lines 
+ * per run, which limits the rate at which noisy output reaches 
+ * the console.
+ */
+public class MinifierConsole {
+
+	/** The name of the console. */
+	public static final String NAME = "Minifier";
+	/** The maximum number of lines waiting to be written. */
+	private static final int MAX_PENDING = 2000;
+	/** The maximum number of lines written per run of the job. */
+	private static final int LINES_PER_FLUSH = 200;
+	/** Delay between runs of the job. */
+	private static final long FLUSH_DELAY = 200;
+	
+	private static MinifierConsole instance;
+	
+	private final Deque<String> pending = new ArrayDeque<>();
+	private int dropped;
+	private MessageConsole console;
+	private MessageConsoleStream stream;
+	private final Job flusher = new Job("Minifier console") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			flush();
+			return Status.OK_STATUS;
+		}
+	};
+	
+	private MinifierConsole() {
+		flusher.setSystem(true);
+	}
+	
+	/**
+	 * Returns the single instance.
+	 * 
+	 * @return the instance
+	 */
+	public static synchronized MinifierConsole instance() {
+		if (instance == null) {
+			instance = new MinifierConsole();
+		}
+		return instance;
+	}
+
+	/**
+	 * Queues a line for output.
+	 * 
+	 * @param line the line
+	 */
+	public void println(String line) {
+		synchronized (pending) {
+			if (pending.size() >= MAX_PENDING) {
+				dropped += 1;
+				return;
+			}
+			pending.add(line);
+			if (pending.size() > 1) {
+				// Job has already been scheduled
+				return;
+			}
+		}
+		flusher.schedule(FLUSH_DELAY);
+	}
+	
+	/**
+	 * Returns a new print stream that queues each line written to it
+	 * for output. The stream buffers incomplete lines, it is therefore
+	 * intended to be used by a single producer. Closing it is optional
+	 * (but flushes a pending incomplete line). 
+	 * 
+	 * @return the stream
+	 */
+	public PrintStream newStream() {
+		return new PrintStream(new LineSplitter(), true);
+	}
+
+	private void flush() {
+		StringBuilder batch = new StringBuilder();
+		boolean more;
+		synchronized (pending) {
+			for (int i = 0; i < LINES_PER_FLUSH && !pending.isEmpty(); i++) {
+				batch.append(pending.poll()).append('\n');
+			}
+			if (dropped > 0 && pending.isEmpty()) {
+				batch.append("... ").append(dropped)
+					.append(" lines dropped (too much output)\n");
+				dropped = 0;
+			}
+			more = !pending.isEmpty();
+		}
+		if (batch.length() > 0) {
+			stream().print(batch.toString());
+		}
+		if (more) {
+			flusher.schedule(FLUSH_DELAY);
+		}
+	}
+
+	/**
+	 * Returns the (cached) stream to the console, creating the 
+	 * console if necessary.
+	 * 
+	 * @return the stream
+	 */
+	private synchronized MessageConsoleStream stream() {
+		if (stream != null) {
+			return stream;
+		}
+		IConsoleManager conMan = ConsolePlugin.getDefault().getConsoleManager();
+		for (IConsole existing: conMan.getConsoles()) {
+			if (NAME.equals(existing.getName())) {
+				console = (MessageConsole) existing;
+				break;
+			}
+		}
+		if (console == null) {
+			console = new MessageConsole(NAME, null);
+			conMan.addConsoles(new IConsole[] { console });
+		}
+		conMan.addConsoleListener(new IConsoleListener() {
+			@Override
+			public void consolesAdded(IConsole[] consoles) {
+			}
+
+			@Override
+			public void consolesRemoved(IConsole[] consoles) {
+				for (IConsole removed: consoles) {
+					if (removed == console) {
+						conMan.removeConsoleListener(this);
+						forget();
+					}
+				}
+			}
+		});
+		stream = console.newMessageStream();
+		return stream;
+	}
+
+	private synchronized void forget() {
+		console = null;
+		stream = null;
+	}
+	
+	/**
+	 * Splits the bytes written into lines.
+	 */
+	private class LineSplitter extends OutputStream {
+		private ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		@Override
+		public void write(int b) throws IOException {
+			if (b == '\n') {
+				emit();
+				return;
+			}
+			line.write(b);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (line.size() > 0) {
+				emit();
+			}
+		}
+		
+		private void emit() {
+			String text = line.toString();
+			line.reset();
+			if (text.endsWith("\r")) {
+				text = text.substring(0, text.length() - 1);
+			}
+			println(text);
+		}
+	}
+}
@@ -18,20 +18,46 @@
 
 package org.jdrupes.eclipse.minify.plugin;
 
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
-import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -39,46 +65,101 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
-import org.eclipse.ui.console.ConsolePlugin;
-import org.eclipse.ui.console.IConsole;
-import org.eclipse.ui.console.IConsoleManager;
-import org.eclipse.ui.console.MessageConsole;
-import org.mozilla.javascript.EvaluatorException;
+import org.jdrupes.eclipse.minify.engine.MinifyOptions;
+import org.jdrupes.eclipse.minify.engine.MinifyRules;
+import org.jdrupes.eclipse.minify.engine.MinifyWorker;
+import org.jdrupes.eclipse.minify.engine.ProblemReporter;
 import org.osgi.service.prefs.Preferences;
 
 public class MinifyBuilder extends IncrementalProjectBuilder {
 	
 	public static final String BUILDER_ID = "org.jdrupes.eclipse.minify.plugin.minifyBuilder";
-	public static final String DONT_MINIFY = "DONT_MINIFY";
-	public static final String MINIFIER = "minifier";
-	public static final String YUI_COMPRESSOR = "YuiCompressor";
-	public static final String YUI_PRESERVE_SEMICOLONS = "preserveSemicolons";
-	public static final String YUI_DISABLE_OPTIMIZATIONS = "disableOptimizations";
-	
-	public static final String GOOGLE_CLOSURE_COMPILER = "GoogleClosureComiler";
-	public static final String GCC_OPTIMIZATION = "optWhitespaceOnly";
-	public static final String GCC_OPT_WHITESPACE_ONLY = "optWhitespaceOnly";
-	public static final String GCC_OPT_SIMPLE = "optSimple";
-	public static final String GCC_OPT_ADVANCED = "optAdvanced";
-	public static final String GCC_CREATE_MAP_FILE = "createMapFile";
-	public static final String GCC_INCLUDE_SOURCE = "includeSource";
+	public static final String DONT_MINIFY = MinifyOptions.DONT_MINIFY;
+	public static final String MINIFIER = MinifyOptions.MINIFIER;
+	public static final String YUI_COMPRESSOR = MinifyOptions.YUI_COMPRESSOR;
+	public static final String YUI_PRESERVE_SEMICOLONS = MinifyOptions.YUI_PRESERVE_SEMICOLONS;
+	public static final String YUI_DISABLE_OPTIMIZATIONS = MinifyOptions.YUI_DISABLE_OPTIMIZATIONS;
+	public static final String STREAMING_CSS = MinifyOptions.STREAMING_CSS;
+	public static final String WHITESPACE_JS = MinifyOptions.WHITESPACE_JS;
+	
+	public static final String GOOGLE_CLOSURE_COMPILER = MinifyOptions.GOOGLE_CLOSURE_COMPILER;
+	public static final String GCC_OPTIMIZATION = MinifyOptions.GCC_OPTIMIZATION;
+	public static final String GCC_OPT_WHITESPACE_ONLY = MinifyOptions.GCC_OPT_WHITESPACE_ONLY;
+	public static final String GCC_OPT_SIMPLE = MinifyOptions.GCC_OPT_SIMPLE;
+	public static final String GCC_OPT_ADVANCED = MinifyOptions.GCC_OPT_ADVANCED;
+	public static final String GCC_CREATE_MAP_FILE = MinifyOptions.GCC_CREATE_MAP_FILE;
+	public static final String GCC_INCLUDE_SOURCE = MinifyOptions.GCC_INCLUDE_SOURCE;
+	public static final String GCC_EXTERNS = MinifyOptions.GCC_EXTERNS;
+	
+	/** The properties that influence the result of a minification. */
+	private static final String[] OPTION_PROPERTIES = new String[] {
+		MINIFIER, YUI_PRESERVE_SEMICOLONS, YUI_DISABLE_OPTIMIZATIONS,
+		GCC_OPTIMIZATION, GCC_CREATE_MAP_FILE, GCC_INCLUDE_SOURCE, GCC_EXTERNS };
+	
+	/** Project wide setting: the number of files minified in parallel. */
+	public static final String PARALLELISM = "parallelism";
+	/** Project wide setting: the level used for creating gzip variants 
+	 * of the minified files, 0 if no variants are to be created. */
+	public static final String GZIP_LEVEL = "gzipLevel";
+	/** Project wide setting: minify in a background job instead of
+	 * during the build. */
+	public static final String ASYNCHRONOUS = "asynchronous";
+	/** Project wide setting: the number of worker JVMs that run the
+	 * YUI Compressor and the Google Closure Compiler, 0 for running
+	 * them in the IDE. */
+	public static final String WORKER_PROCESSES = "workerProcesses";
+	/** Project wide setting: the maximum heap (MB) of a worker JVM. */
+	public static final String WORKER_HEAP = "workerHeap";
 	
 	private static final String MARKER_TYPE = "org.jdrupes.eclipse.minify.plugin.minifyProblem";
+	public static final String BUNDLE_MARKER_TYPE 
+		= "org.jdrupes.eclipse.minify.plugin.minifyBundleProblem";
+	/** Marker attribute with the output path of the bundle. */
+	public static final String BUNDLE_ATTRIBUTE = "bundle";
+
+	private static ThreadPoolExecutor workers;
+	/** How often (ms) to check for cancellation while waiting for results. */
+	private static final long CANCEL_POLL_INTERVAL = 100;
+	
+	/** The definitions of the bundles built by this builder. */
+	private Map<String,String> builtBundles = new ConcurrentHashMap<>();
+	/** The dependencies between the project's resources, loaded on demand. */
+	private DependencyGraph dependencies;
+	/** Does the work in asynchronous mode, created on demand. */
+	private MinifyJob job;
+	/** The profile and the rules used for the last build. */
+	private String builtSettings;
 
 	@Override
 	protected IProject[] build(int kind, @SuppressWarnings("rawtypes") Map args,
 			IProgressMonitor monitor) throws CoreException {
 		ProjectScope projectScope = new ProjectScope(getProject());
 		IEclipsePreferences prefs = projectScope.getNode(BUILDER_ID);
+		// After switching the profile or modifying the rules, 
+		// the delta doesn't show all that's stale
+		String settings = BuildProfile.active().name() + "\n"
+				+ ResourceIndex.of(prefs).rules().encode() + "\n"
+				+ gzipLevel(prefs);
+		boolean settingsChanged = builtSettings != null 
+				&& !builtSettings.equals(settings);
+		builtSettings = settings;
 		if (kind == FULL_BUILD) {
 			fullBuild(prefs, monitor);
 		} else {
 			IResourceDelta delta = getDelta(getProject());
 			if (delta == null) {
-				fullBuild(prefs, monitor);
+				staleBuild(prefs, monitor);
+			} else if (settingsChanged) {
+				// Removals and moves are only known from the delta. 
+				// Resources found by both builds are minified once 
+				// (up to date or coalesced by the job).
+				SubMonitor subMonitor = SubMonitor.convert(monitor, 2);
+				incrementalBuild(delta, prefs, subMonitor.split(1));
+				staleBuild(prefs, subMonitor.split(1));
 			} else {
 				incrementalBuild(delta, prefs, monitor);
 			}
@@ -89,19 +170,57 @@ public class MinifyBuilder extends IncrementalProjectBuilder {
 	protected void fullBuild(final IEclipsePreferences prefs, final IProgressMonitor monitor)
 			throws CoreException {
 		try {
+			// Rebuilt while processing the resources
+			dependencies().clear();
+			// Only the configured resources need to be visited
+			final List<IResource> toProcess = new ArrayList<>(
+					configuredFiles(ResourceIndex.of(prefs), getProject()));
+			List<Bundle> bundles = bundles(prefs);
+			SubMonitor subMonitor = SubMonitor.convert(
+					monitor, toProcess.size() + bundles.size());
+			dispatch(toProcess, bundles, prefs, subMonitor);
+		} catch (CoreException e) {
+		}
+	}
+
+	/**
+	 * Invoked if no delta is available (e.g. after a restart) or if
+	 * the {@link BuildProfile} has been switched or the rules have
+	 * been modified. Compares 
+	 * the saved {@link BuildState} with the workspace and processes only
+	 * the resources and bundles with stale outputs.
+	 * 
+	 * @param prefs the preferences store with the minify properties
+	 * @param monitor the monitor
+	 * @throws CoreException
+	 */
+	protected void staleBuild(final IEclipsePreferences prefs, 
+			final IProgressMonitor monitor) throws CoreException {
+		try {
+			BuildState state = BuildState.of(getProject());
 			final List<IResource> toProcess = new ArrayList<>();
-			getProject().accept(new IResourceVisitor() {
-				@Override
-				public boolean visit(IResource resource) throws CoreException {
-					toProcess.add(resource);
-					return true;
+			for (IFile file: configuredFiles(
+					ResourceIndex.of(prefs), getProject())) {
+				String path = file.getProjectRelativePath().toPortableString();
+				if (!state.isUpToDate(path, 
+						currentState(file, destFile(file), prefs))) {
+					toProcess.add(file);
 				}
-			});
-			SubMonitor subMonitor = SubMonitor.convert(monitor, toProcess.size());
-			for (IResource resource: toProcess) {
-				subMonitor.split(1);
-				minifyResource(resource, prefs);
 			}
+			List<Bundle> bundles = new ArrayList<>();
+			for (Bundle bundle: bundles(prefs)) {
+				List<IFile> members = bundle.members(getProject());
+				if (state.isUpToDate(DependencyGraph.BUNDLE_PREFIX 
+						+ bundle.outputPath(), 
+						currentState(bundle, members, gzipLevel(prefs)))) {
+					builtBundles.put(bundle.outputPath(), bundle.encode());
+				} else {
+					bundles.add(bundle);
+				}
+			}
+			SubMonitor subMonitor = SubMonitor.convert(
+					monitor, toProcess.size() + bundles.size());
+			dispatch(toProcess, bundles, prefs, subMonitor);
 		} catch (CoreException e) {
 		}
 	}
@@ -110,164 +229,1388 @@ public class MinifyBuilder extends IncrementalProjectBuilder {
 			IEclipsePreferences prefs, IProgressMonitor monitor) throws CoreException {
 		// the visitor does the work.
 		List<IResourceDelta> deltas = new ArrayList<>();
+		ResourceIndex index = ResourceIndex.of(prefs);
+		List<Bundle> bundles = bundles(prefs);
+		Set<Bundle> dirtyBundles = new LinkedHashSet<>();
+		for (Bundle bundle: bundles) {
+			if (!bundle.encode().equals(builtBundles.get(bundle.outputPath()))) {
+				// New or modified definition
+				dirtyBundles.add(bundle);
+			}
+		}
+		DependencyGraph graph = dependencies();
+		Set<String> changedDependencies = new HashSet<>();
 		change.accept(new IResourceDeltaVisitor() {
 			@Override
 			public boolean visit(IResourceDelta delta) throws CoreException {
-				// We're only interested in css and js file changes.
-				if (delta.getResource() instanceof IFile) {
-					IFile file = (IFile)delta.getResource();
-					if ("js".equals(file.getFileExtension())
-							|| "css".equals(file.getFileExtension())) {
+				IResource resource = delta.getResource();
+				IPath path = resource.getProjectRelativePath();
+				if (!(resource instanceof IFile)) {
+					boolean bundleFolder = false;
+					for (Bundle bundle: bundles) {
+						if (bundle.mayContain(path)) {
+							bundleFolder = true;
+							if (delta.getKind() == IResourceDelta.REMOVED) {
+								dirtyBundles.add(bundle);
+							}
+						}
+					}
+					Set<String> containedDependencies = graph.dependenciesIn(path);
+					if (delta.getKind() == IResourceDelta.REMOVED) {
+						changedDependencies.addAll(containedDependencies);
+					}
+					// Skip folders without configured resources (or
+					// stored properties that must follow the resources)
+					if (!index.containsConfigured(path) 
+							&& !index.hasProperties(path)) {
+						return bundleFolder || !containedDependencies.isEmpty();
+					}
+					if (resource.getType() == IResource.FOLDER
+							&& delta.getKind() == IResourceDelta.REMOVED) {
+						// Handled as a whole
 						deltas.add(delta);
+						return false;
+					}
+					return true;
+				}
+				// We're only interested in configured css and js files
+				// and files with stored properties (which may exclude
+				// the file from being minified by the rules).
+				IFile file = (IFile)resource;
+				if (ResourceIndex.isDerivedOutput(file.getName())) {
+					return false;
+				}
+				if (graph.isDependency(path)) {
+					changedDependencies.add(path.toPortableString());
+				}
+				for (Bundle bundle: bundles) {
+					if (bundle.matches(path)) {
+						dirtyBundles.add(bundle);
 					}
 				}
-				return true;
+				if (("js".equals(file.getFileExtension())
+						|| "css".equals(file.getFileExtension()))
+						&& (index.isConfigured(path) 
+								|| index.hasProperties(path))) {
+					deltas.add(delta);
+				}
+				return false;
 			}
 		});
+		SubMonitor subMonitor = SubMonitor.convert(
+				monitor, deltas.size() + dirtyBundles.size());
+		Set<IResource> toMinify = new LinkedHashSet<>();
 		// Handle removals first, they may actually be renames.
-		deltas.sort((a, b) -> 
-			a.getKind() == IResourceDelta.REMOVED 
-					&& b.getKind() != IResourceDelta.REMOVED ? -1 : 0);
-		SubMonitor subMonitor = SubMonitor.convert(monitor, deltas.size());
+		List<IResourceDelta> removals = new ArrayList<>();
+		for (IResourceDelta delta: deltas) {
+			if (delta.getKind() == IResourceDelta.REMOVED) {
+				removals.add(delta);
+			}
+		}
+		if (!removals.isEmpty()) {
+			ResourcesPlugin.getWorkspace().run(
+					m -> handleRemovals(removals, toMinify, subMonitor),
+					ResourcesPlugin.getWorkspace().getRoot(), 
+					IWorkspace.AVOID_UPDATE, null);
+		}
 		for (IResourceDelta delta: deltas) {
-			subMonitor.split(1);
-			IResource resource = delta.getResource();
 			switch (delta.getKind()) {
 			case IResourceDelta.ADDED:
-				// handle added resource
-				minifyResource(resource, prefs);
+			case IResourceDelta.CHANGED:
+				toMinify.add(delta.getResource());
 				break;
 			case IResourceDelta.REMOVED:
-				// handle removed resource
+				break;
+			default:
+				subMonitor.split(1);
+				break;
+			}
+		}
+		// Add the dependents of modified resources
+		for (String dependent: graph.transitiveDependents(changedDependencies)) {
+			if (dependent.startsWith(DependencyGraph.BUNDLE_PREFIX)) {
+				String outputPath = dependent.substring(
+						DependencyGraph.BUNDLE_PREFIX.length());
+				for (Bundle bundle: bundles) {
+					if (bundle.outputPath().equals(outputPath)) {
+						dirtyBundles.add(bundle);
+					}
+				}
+				continue;
+			}
+			IFile file = getProject().getFile(dependent);
+			if (file.exists() && index.isConfigured(file.getProjectRelativePath())) {
+				toMinify.add(file);
+			}
+		}
+		subMonitor.setWorkRemaining(toMinify.size() + dirtyBundles.size());
+		dispatch(new ArrayList<>(toMinify), 
+				new ArrayList<>(dirtyBundles), prefs, subMonitor);
+	}
+	
+	/**
+	 * Returns the current state of a file's output.
+	 * 
+	 * @param srcFile the file
+	 * @param destFile the output
+	 * @param prefs the preferences store with the file's minify properties
+	 * @return the state
+	 * @throws CoreException
+	 */
+	private BuildState.Entry currentState(IFile srcFile, IFile destFile,
+			IEclipsePreferences prefs) throws CoreException {
+		return new BuildState.Entry(srcFile.getLocalTimeStamp(),
+				optionsFingerprint(srcFile, destFile, prefs) 
+				+ GZIP_LEVEL + "=" + gzipLevel(prefs), 
+				destFile.getLocalTimeStamp());
+	}
+
+	/**
+	 * Returns the current state of a bundle's output.
+	 * 
+	 * @param bundle the bundle
+	 * @param members the bundle's members
+	 * @param gzipLevel the level used for the compressed variants
+	 * @return the state
+	 */
+	private BuildState.Entry currentState(Bundle bundle, List<IFile> members,
+			int gzipLevel) {
+		long latest = IResource.NULL_STAMP;
+		StringBuilder fingerprint = new StringBuilder(bundle.encode())
+			.append('\n').append(GZIP_LEVEL).append('=').append(gzipLevel);
+		for (IFile member: members) {
+			fingerprint.append('\n').append(member.getProjectRelativePath())
+				.append(':').append(member.getLocalTimeStamp());
+			latest = Math.max(latest, member.getLocalTimeStamp());
+		}
+		return new BuildState.Entry(latest, fingerprint.toString(),
+				bundle.outputFile(getProject()).getLocalTimeStamp());
+	}
+	
+	/**
+	 * Returns the dependency graph of the project, loading it on
+	 * first invocation.
+	 * 
+	 * @return the graph
+	 */
+	private synchronized DependencyGraph dependencies() {
+		if (dependencies == null) {
+			dependencies = DependencyGraph.load(getProject());
+		}
+		return dependencies;
+	}
+	
+	/**
+	 * Minifies the given resources and bundles as part of the build or, 
+	 * if configured, passes them to the background job.
+	 * 
+	 * @param resources the resources
+	 * @param bundles the bundles
+	 * @param prefs the preferences store with the minify properties
+	 * @param monitor the monitor
+	 * @throws CoreException
+	 */
+	private void dispatch(List<IResource> resources, List<Bundle> bundles,
+			IEclipsePreferences prefs, SubMonitor monitor) throws CoreException {
+		if (!Boolean.parseBoolean(BuildProfile.active()
+				.projectProperty(prefs, ASYNCHRONOUS, "false"))) {
+			minifyResources(resources, bundles, prefs, false, monitor);
+			return;
+		}
+		synchronized (this) {
+			if (job == null) {
+				job = new MinifyJob(this);
+			}
+		}
+		job.add(resources, bundles);
+		monitor.done();
+	}
+	
+	/**
+	 * Invoked by the {@link MinifyJob} to minify the given resources
+	 * and bundles. 
+	 * 
+	 * @param resources the resources
+	 * @param bundles the bundles
+	 * @param monitor the monitor
+	 * @throws CoreException
+	 */
+	void minifyInBackground(List<IResource> resources, List<Bundle> bundles,
+			IProgressMonitor monitor) throws CoreException {
+		IEclipsePreferences prefs 
+			= new ProjectScope(getProject()).getNode(BUILDER_ID);
+		minifyResources(resources, bundles, prefs, true, SubMonitor.convert(
+				monitor, "Minifying", resources.size() + bundles.size()));
+	}
+	
+	/**
+	 * Handles removed resources (or folders with resources). The 
+	 * properties are moved to the new location if the resource has 
+	 * been moved. Changes of the preferences are flushed once and all
+	 * changes of the workspace are made in a single operation.
+	 * 
+	 * @param removals the deltas with the removed resources
+	 * @param toMinify receives moved resources that need to be minified
+	 * @param monitor the monitor, one unit of work is consumed per delta
+	 * @throws CoreException
+	 */
+	private void handleRemovals(List<IResourceDelta> removals, 
+			Set<IResource> toMinify, SubMonitor monitor) throws CoreException {
+		try (PrefsAccess.Batch batch = new PrefsAccess.Batch()) {
+			for (IResourceDelta delta: removals) {
+				IResource resource = delta.getResource();
 				Preferences resPrefs = PrefsAccess.preferences(resource);
+				IResource toResource = null;
 				if ((delta.getFlags() & IResourceDelta.MOVED_TO) != 0) {
 					IPath toPath = delta.getMovedToPath();
-					IResource toResource = ResourcesPlugin
+					toResource = ResourcesPlugin
 							.getWorkspace().getRoot().findMember(toPath);
-					PrefsAccess.moveResource(resPrefs, resource, 
-							PrefsAccess.preferences(toResource), toResource);
 				}
-				PrefsAccess.removeResource(resPrefs, resource);
-				break;
-			case IResourceDelta.CHANGED:
-				// handle changed resource
-				minifyResource(resource, prefs);
-				break;
+				if (toResource != null) {
+					IEclipsePreferences toPrefs 
+						= PrefsAccess.preferences(toResource);
+					batch.moveResource(resPrefs, resource, toPrefs, toResource);
+					// The folder with the moved resources may not have
+					// been visited
+					if (toResource.getProject().equals(getProject())) {
+						if (toResource instanceof IContainer) {
+							toMinify.addAll(configuredFiles(ResourceIndex
+									.of(toPrefs), (IContainer)toResource));
+						} else if (ResourceIndex.of(toPrefs).isConfigured(
+								toResource.getProjectRelativePath())) {
+							toMinify.add(toResource);
+						}
+					}
+				}
+				batch.removeResource(resPrefs, resource);
+				if (resource instanceof IFile) {
+					pendingMarkers.remove(resource);
+					dependencies().removeDependent(
+							resource.getProjectRelativePath().toPortableString());
+					BuildState.of(getProject()).remove(
+							resource.getProjectRelativePath().toPortableString());
+					deleteDerived((IFile)resource);
+				} else if (resource.getType() == IResource.FOLDER) {
+					// Handled as a whole, no deltas for the contained files
+					String folder 
+						= resource.getProjectRelativePath().toPortableString();
+					dependencies().removeDependentsIn(folder);
+					BuildState.of(getProject()).removeFolder(folder);
+				}
+				monitor.split(1);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the existing files in the given container that have 
+	 * a minifier configured, either stored for the file or by the rules.
+	 * 
+	 * @param index the index of the project's preferences
+	 * @param container the container (usually the project)
+	 * @return the files
+	 * @throws CoreException
+	 */
+	private static List<IFile> configuredFiles(ResourceIndex index, 
+			IContainer container) throws CoreException {
+		Set<IFile> result = new LinkedHashSet<>();
+		IProject project = container.getProject();
+		for (String path: container.getType() == IResource.PROJECT 
+				? index.configuredPaths() 
+				: index.configuredPaths(container.getProjectRelativePath())) {
+			IFile file = project.getFile(path);
+			if (file.exists()) {
+				result.add(file);
+			}
+		}
+		MinifyRules rules = index.rules();
+		if (rules.isEmpty() || !container.exists()) {
+			return new ArrayList<>(result);
+		}
+		// Visits only the folders that may contain matching files
+		container.accept(resource -> {
+			if (resource.isDerived()) {
+				return false;
+			}
+			if (resource.getType() == IResource.FILE) {
+				if (index.isConfigured(resource.getProjectRelativePath())) {
+					result.add((IFile)resource);
+				}
+				return false;
+			}
+			return resource.getType() == IResource.PROJECT || rules.mayMatchIn(
+					resource.getProjectRelativePath().toPortableString());
+		});
+		return new ArrayList<>(result);
+	}
+	
+	/**
+	 * Returns the file with the minified content.
+	 * 
+	 * @param srcFile the source file
+	 * @return the file
+	 */
+	public static IFile destFile(IFile srcFile) {
+		IPath srcPath = srcFile.getProjectRelativePath();
+		IPath destPath = srcPath.removeFileExtension().addFileExtension(
+				"min." + srcFile.getFileExtension());
+		return srcFile.getProject().getFile(destPath);
+	}
+	
+	/**
+	 * Deletes the files derived from the given source file.
+	 * 
+	 * @param srcFile the source file
+	 * @throws CoreException
+	 */
+	private void deleteDerived(IFile srcFile) throws CoreException {
+		IFile destFile = destFile(srcFile);
+		IFile mapFile = destFile.getProject().getFile(
+				destFile.getProjectRelativePath().addFileExtension("map"));
+		for (IFile derived: new IFile[] { destFile, mapFile,
+				Precompressor.compressedFile(destFile) }) {
+			if (derived.exists() && derived.isDerived()) {
+				derived.delete(IResource.FORCE, null);
 			}
 		}
 	}
 	
 	protected void clean(IProgressMonitor monitor) throws CoreException {
+		synchronized (this) {
+			if (job != null) {
+				job.cancel();
+			}
+		}
 		// delete markers set and files created
 		getProject().deleteMarkers(MARKER_TYPE, true, IResource.DEPTH_INFINITE);
 	}
 
-	private void deleteMarkers(IFile file) {
+
+	/**
+	 * Returns the number of files to be minified in parallel as configured
+	 * for the project. Defaults to the number of available processors.
+	 * 
+	 * @param prefs the preferences store with the project's properties
+	 * @return the parallelism degree
+	 */
+	public static int parallelism(IEclipsePreferences prefs) {
+		return Math.max(1, prefs.getInt(PARALLELISM, 
+				Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Returns the level used for creating the gzip variants with the
+	 * overrides of the active {@link BuildProfile} applied.
+	 * 
+	 * @param prefs the preferences store with the project's properties
+	 * @return the level, 0 if no variants are to be created
+	 */
+	private static int gzipLevel(IEclipsePreferences prefs) {
+		return Integer.parseInt(
+				BuildProfile.active().projectProperty(prefs, GZIP_LEVEL, "0"));
+	}
+
+	/**
+	 * Returns the project's bundles with the overrides of the
+	 * active {@link BuildProfile} applied.
+	 *
+	 * @param prefs the preferences store with the project's properties
+	 * @return the bundles
+	 */
+	private static List<Bundle> bundles(IEclipsePreferences prefs) {
+		return BuildProfile.active().apply(prefs, Bundle.bundles(prefs));
+	}
+
+	/**
+	 * Returns the pool with the worker threads that execute the
+	 * minifiers. The pool is shared by all builders and adapted
+	 * to the requested size. Idle threads terminate after some time.
+	 * 
+	 * @param parallelism the number of threads
+	 * @return the pool
+	 */
+	private static synchronized ThreadPoolExecutor workers(int parallelism) {
+		if (workers == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			ThreadFactory threadFactory = r -> {
+				Thread thread = new Thread(r, 
+						"Minifier-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+			workers = new ThreadPoolExecutor(parallelism, parallelism,
+					60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), 
+					threadFactory);
+			workers.allowCoreThreadTimeOut(true);
+		}
+		if (parallelism > workers.getMaximumPoolSize()) {
+			workers.setMaximumPoolSize(parallelism);
+			workers.setCorePoolSize(parallelism);
+		} else if (parallelism < workers.getMaximumPoolSize()) {
+			workers.setCorePoolSize(parallelism);
+			workers.setMaximumPoolSize(parallelism);
+		}
+		return workers;
+	}
+	
+	/**
+	 * Replaces the pool with the worker threads, if it is (still)
+	 * the given pool. The threads of the old pool terminate when 
+	 * their current (cancelled) minifiers have stopped and they have 
+	 * been idle for some time. The old pool is not shut down, because it may 
+	 * still be used by builds of other projects.
+	 * 
+	 * @param pool the pool to retire
+	 */
+	private static synchronized void retireWorkers(ThreadPoolExecutor pool) {
+		if (workers == pool) {
+			workers = null;
+		}
+		pool.purge();
+	}
+	
+	/**
+	 * Minifies the given resources and bundles using a bounded pool of 
+	 * worker threads. The minifiers run in the worker threads and write 
+	 * their results to memory. Anything that modifies the workspace 
+	 * (writing the result, creating markers) is done in the build thread 
+	 * as results become available or, when running in the background 
+	 * job, in short workspace operations for several results.
+	 * 
+	 * @param resources the resources to minify
+	 * @param bundles the bundles to build
+	 * @param prefs the preferences store with the resources' minify properties
+	 * @param batched if set, the results are collected and applied
+	 * in short workspace operations (used when running outside the build)
+	 * @param monitor the monitor, one unit of work is consumed per 
+	 * resource and bundle
+	 * @throws CoreException
+	 */
+	private void minifyResources(List<IResource> resources, List<Bundle> bundles,
+			IEclipsePreferences prefs, boolean batched, SubMonitor monitor) 
+					throws CoreException {
+		int parallelism = parallelism(prefs);
+		ThreadPoolExecutor pool = workers(parallelism);
+		MinifyRun run = new MinifyRun(new Precompressor(
+				pool, gzipLevel(prefs), BuildState.of(getProject())));
+		List<TaskPreparer> preparers = new ArrayList<>();
+		for (IResource resource: resources) {
+			preparers.add(() -> prepareTask(run, resource, prefs));
+		}
+		for (Bundle bundle: bundles) {
+			preparers.add(() -> prepareBundleTask(run, bundle, prefs));
+		}
+		// Limit the number of results kept in memory
+		int maxPending = 2 * parallelism;
+		CompletionService<Task> completion = new ExecutorCompletionService<>(pool);
+		Set<Task> submitted = new HashSet<>();
+		boolean finished = false;
+		List<Task> completed = new ArrayList<>();
 		try {
-			file.deleteMarkers(MARKER_TYPE, false, IResource.DEPTH_ZERO);
-		} catch (CoreException ce) {
+			int pending = 0;
+			for (TaskPreparer preparer: preparers) {
+				Task task = preparer.prepare();
+				if (task == null) {
+					monitor.split(1);
+					continue;
+				}
+				submitted.add(task);
+				task.future = completion.submit(task);
+				pending += 1;
+				while (pending >= maxPending) {
+					monitor.split(1);
+					Task done = awaitCompleted(completion, monitor);
+					submitted.remove(done);
+					completed.add(done);
+					pending -= 1;
+					if (!batched || completed.size() >= maxPending) {
+						applyResults(run, completed, batched, false);
+					}
+				}
+			}
+			while (pending > 0) {
+				monitor.split(1);
+				Task done = awaitCompleted(completion, monitor);
+				submitted.remove(done);
+				completed.add(done);
+				pending -= 1;
+				if (!batched) {
+					applyResults(run, completed, false, false);
+				}
+			}
+			applyResults(run, completed, batched, true);
+			finished = true;
+			reportMetrics(run);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			throw new CoreException(new Status(IStatus.ERROR, BUILDER_ID, 
+					e.getCause().getMessage(), e.getCause()));
+		} finally {
+			// Left over if the build has been cancelled or failed. The
+			// results are discarded, existing files remain unchanged.
+			boolean abandoned = false;
+			for (Task task: submitted) {
+				task.cancel();
+				abandoned |= task.future.cancel(true);
+			}
+			for (Task task: completed) {
+				task.release();
+			}
+			if (!finished) {
+				run.precompressor.cancel();
+				applyCollectedMarkers(run);
+			}
+			if (abandoned) {
+				// Cancelled minifiers stop at the next check only, don't 
+				// let the next build wait for them
+				retireWorkers(pool);
+			}
+			dependencies().save();
+			BuildState.of(getProject()).save();
 		}
 	}
 
 	/**
-	 * Does the actual work.
+	 * Applies the results of completed tasks. If batched, all changes
+	 * are made in a single workspace operation. Marker updates are
+	 * deferred until the last invocation (if not batched), so that
+	 * all marker changes of a build are made in a single workspace
+	 * operation.
+	 * 
+	 * @param run the state of the current run
+	 * @param tasks the completed tasks, cleared when applied
+	 * @param batched whether to use a workspace operation
+	 * @param last if set, the results of the precompressor and the
+	 * marker updates are also applied
+	 * @throws CoreException
+	 */
+	private void applyResults(MinifyRun run, List<Task> tasks, boolean batched,
+			boolean last) throws CoreException {
+		IWorkspaceRunnable action = m -> {
+			while (!tasks.isEmpty()) {
+				applyResult(tasks.remove(0));
+			}
+			if (last) {
+				run.precompressor.finish();
+			}
+			if (batched || last) {
+				updateMarkers(run);
+			}
+		};
+		if (batched || last) {
+			ResourcesPlugin.getWorkspace().run(
+					action, getProject(), IWorkspace.AVOID_UPDATE, null);
+		} else {
+			action.run(null);
+		}
+	}
+	
+	/**
+	 * Applies the marker updates collected before a run failed or
+	 * was cancelled, so that the problems of the results that have
+	 * been applied are not lost.
+	 * 
+	 * @param run the run
+	 */
+	private void applyCollectedMarkers(MinifyRun run) {
+		if (run.markerUpdates.isEmpty()) {
+			return;
+		}
+		try {
+			ResourcesPlugin.getWorkspace().run(m -> updateMarkers(run), 
+					getProject(), IWorkspace.AVOID_UPDATE, null);
+		} catch (CoreException e) {
+			// The failure of the run is reported
+		}
+	}
+	
+	/**
+	 * Waits for the next completed task. The monitor is checked for 
+	 * cancellation while waiting.
+	 * 
+	 * @param completion the completion service
+	 * @param monitor the monitor
+	 * @return the completed task
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	private Task awaitCompleted(CompletionService<Task> completion, 
+			SubMonitor monitor) throws InterruptedException, ExecutionException {
+		while (true) {
+			Future<Task> done = completion.poll(
+					CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			if (done != null) {
+				return done.get();
+			}
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+		}
+	}
+	
+	/**
+	 * Publishes the metrics of the given run and writes a summary
+	 * to the "Minifier" console.
+	 * 
+	 * @param run the run
+	 */
+	private void reportMetrics(MinifyRun run) {
+		run.metrics.finish();
+		if (run.metrics.files().isEmpty()) {
+			return;
+		}
+		MinifyMetrics.instance().add(run.metrics);
+		minifierConsole().println(
+				getProject().getName() + ": " + run.metrics.summary());
+	}
+	
+	/**
+	 * The state of an invocation of {@link #minifyResources}. A build
+	 * and the background job may minify concurrently, so this state
+	 * is not kept in the builder.
+	 */
+	private class MinifyRun {
+		/** Marker changes collected during the run. */
+		public List<MarkerUpdate> markerUpdates = new ArrayList<>();
+		/** Creates the compressed variants. */
+		public Precompressor precompressor;
+		/** The metrics of the run. */
+		public BuildMetrics metrics = new BuildMetrics();
+		
+		public MinifyRun(Precompressor precompressor) {
+			this.precompressor = precompressor;
+		}
+	}
+	
+	@FunctionalInterface
+	private interface TaskPreparer {
+		Task prepare() throws CoreException;
+	}
+	
+	/**
+	 * Prepares the minification of a resource. Must be invoked from
+	 * the build thread (or the background job).
 	 * 
+	 * @param run the current run
 	 * @param resource the resource to minify.
 	 * @param prefs the preferences store with the resource's minify properties
-	 * @throws CoreException
+	 * @return the task or {@code null} if the resource is not to be minified
 	 */
-	private void minifyResource(IResource resource, IEclipsePreferences prefs) 
-			throws CoreException {
+	private Task prepareTask(MinifyRun run, IResource resource, 
+			IEclipsePreferences prefs) {
 		if (!(resource instanceof IFile)) {
-			return;
+			return null;
 		}
 		IFile srcFile = (IFile) resource;
-		String minifier = prefs.get(PrefsAccess.preferenceKey(resource, MINIFIER), DONT_MINIFY);
-		deleteMarkers(srcFile);
+		String minifier = BuildProfile.active()
+				.fileProperty(prefs, resource, MINIFIER, DONT_MINIFY);
+		String path = srcFile.getProjectRelativePath().toPortableString();
 		if (minifier.equals(DONT_MINIFY)) {
-			return;
+			// Remove markers from previous runs
+			run.markerUpdates.add(new MarkerUpdate(srcFile, null, 
+					Collections.emptyList(), null));
+			dependencies().removeDependent(path);
+			return null;
 		}
-		deleteMarkers(srcFile);
-		IPath srcPath = srcFile.getProjectRelativePath();
-		IPath destPath = srcPath.removeFileExtension().addFileExtension(
-				"min." + resource.getFileExtension());
-		IFile destFile = srcFile.getProject().getFile(destPath);
-		try {
-			MinifyRunner producer = null;
-			try (PipedInputStream toIFile = new PipedInputStream();
-					OutputStream out = new PipedOutputStream(toIFile)) {
-				if (resource.getFileExtension().equals("css")) {
-					producer = new YuiCssMinifier(this, srcFile, destFile, out, prefs);
-				} else if (resource.getFileExtension().equals("js")) {
+		List<String> externs = new ArrayList<>();
+		if (minifier.equals(GOOGLE_CLOSURE_COMPILER)) {
+			for (IFile file: GccMinifier.externFiles(srcFile, prefs)) {
+				externs.add(file.getProjectRelativePath().toPortableString());
+			}
+		}
+		dependencies().setDependencies(path, externs);
+		IFile destFile = destFile(srcFile);
+		return new MinifyTask(run, srcFile, destFile, minifier, prefs);
+	}
+
+	/**
+	 * Prepares the build of a bundle. Must be invoked from
+	 * the build thread (or the background job).
+	 * 
+	 * @param run the current run
+	 * @param bundle the bundle
+	 * @param prefs the preferences store with the project's properties
+	 * @return the task
+	 * @throws CoreException 
+	 */
+	private Task prepareBundleTask(MinifyRun run, Bundle bundle,
+			IEclipsePreferences prefs) throws CoreException {
+		List<IFile> members = bundle.members(getProject());
+		List<String> memberPaths = new ArrayList<>();
+		for (IFile member: members) {
+			memberPaths.add(member.getProjectRelativePath().toPortableString());
+		}
+		dependencies().setDependencies(
+				DependencyGraph.BUNDLE_PREFIX + bundle.outputPath(), memberPaths);
+		return new BundleTask(run, bundle, members, prefs);
+	}
+	
+	/**
+	 * Returns the minify options of the given file.
+	 * 
+	 * @param srcFile the file
+	 * @param prefs the preferences store with the file's minify properties
+	 * @return the options
+	 */
+	public static MinifyOptions options(IFile srcFile, IEclipsePreferences prefs) {
+		return MinifyOptions.of(optionProperties(srcFile, prefs)::get);
+	}
+	
+	/**
+	 * Returns the properties of the given file that are used as 
+	 * minify options.
+	 * 
+	 * @param srcFile the file
+	 * @param prefs the preferences store with the file's minify properties
+	 * @return the properties that are set
+	 */
+	public static Map<String,String> optionProperties(IFile srcFile, 
+			IEclipsePreferences prefs) {
+		BuildProfile profile = BuildProfile.active();
+		Map<String,String> result = new HashMap<>();
+		for (String property: OPTION_PROPERTIES) {
+			String value = profile.fileProperty(prefs, srcFile, property, null);
+			if (value != null) {
+				result.put(property, value);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns a string that represents all settings that influence
+	 * the result of minifying the given file.
+	 * 
+	 * @param srcFile the file to minify
+	 * @param destFile the file with the result
+	 * @param prefs the preferences store with the file's minify properties
+	 * @return the fingerprint
+	 * @throws CoreException
+	 */
+	public static String optionsFingerprint(IFile srcFile, IFile destFile,
+			IEclipsePreferences prefs) throws CoreException {
+		BuildProfile profile = BuildProfile.active();
+		StringBuilder fingerprint = new StringBuilder();
+		for (String property: OPTION_PROPERTIES) {
+			fingerprint.append(property).append('=')
+				.append(profile.fileProperty(prefs, srcFile, property, ""))
+				.append('\n');
+		}
+		for (IFile externs: GccMinifier.externFiles(srcFile, prefs)) {
+			fingerprint.append(externs.getModificationStamp()).append('\n');
+		}
+		fingerprint.append(srcFile.getCharset()).append('\n')
+			.append(destFile.exists() ? destFile.getCharset() : "").append('\n');
+		return fingerprint.toString();
+	}
+	
+	/**
+	 * The base class for work executed by the worker threads.
+	 * The result is kept in memory. 
+	 */
+	private abstract class Task implements Callable<Task> {
+		protected MinifyRun run;
+		protected IFile destFile;
+		protected Future<Task> future;
+		protected volatile MinifyRunner producer;
+		protected volatile boolean cancelled;
+		protected OutputBuffer result = OutputBuffer.obtain();
+		protected String destCharset;
+		protected Map<IFile,OutputBuffer> extraOutputs = new LinkedHashMap<>();
+		protected Exception exception;
+		protected BuildMetrics.FileMetrics metrics;
+
+		public Task(MinifyRun run, IFile destFile) {
+			this.run = run;
+			this.destFile = destFile;
+		}
+		
+		/**
+		 * Runs the producer and takes over its results.
+		 * 
+		 * @throws Exception
+		 */
+		protected void runProducer() throws Exception {
+			// Executed in the pool's thread
+			long started = System.nanoTime();
+			if (cancelled) {
+				// Cancelled before the producer was created
+				producer.cancel();
+			}
+			try {
+				producer.run();
+			} finally {
+				metrics.readNanos = producer.readNanos();
+				metrics.minifyNanos = System.nanoTime() - started 
+						- producer.readNanos();
+				metrics.inputBytes = producer.inputBytes();
+				// Taken over in any case, released with the task
+				extraOutputs.putAll(producer.extraOutputs());
+				producer.extraOutputs().clear();
+			}
+			producer.checkException();
+			destCharset = producer.destCharset();
+		}
+		
+		/**
+		 * Collects the problems reported while running the task 
+		 * as {@link MarkerUpdate}s.
+		 * 
+		 * @throws CoreException
+		 */
+		protected abstract void collectMarkers() throws CoreException;
+		
+		/**
+		 * Invoked after the result has been applied to the workspace.
+		 * 
+		 * @throws CoreException
+		 */
+		protected void applied() throws CoreException {
+		}
+		
+		/**
+		 * Stops the task's producer, if it is running, or prevents it 
+		 * from doing any work, if it is started later.
+		 */
+		public void cancel() {
+			cancelled = true;
+			MinifyRunner running = producer;
+			if (running != null) {
+				running.cancel();
+			}
+		}
+		
+		/**
+		 * Releases the resources held by the task. Must only be invoked
+		 * after the task has completed.
+		 */
+		public void release() {
+			if (result != null) {
+				result.release();
+				result = null;
+			}
+			for (OutputBuffer extra: extraOutputs.values()) {
+				extra.release();
+			}
+			extraOutputs.clear();
+		}
+		
+		protected IFile mapFile() {
+			return destFile.getProject().getFile(
+					destFile.getProjectRelativePath().addFileExtension("map"));
+		}
+	}
+	
+	/**
+	 * The minification of a single file. The minifier is created and 
+	 * run in a worker thread. If the file has been minified with the 
+	 * same settings before, the result is taken from the 
+	 * {@link ResultCache}.
+	 */
+	private class MinifyTask extends Task {
+		private IFile srcFile;
+		private String minifier;
+		private IEclipsePreferences prefs;
+
+		public MinifyTask(MinifyRun run, IFile srcFile, IFile destFile, 
+				String minifier, IEclipsePreferences prefs) {
+			super(run, destFile);
+			this.srcFile = srcFile;
+			this.minifier = minifier;
+			this.prefs = prefs;
+			metrics = new BuildMetrics.FileMetrics(
+					srcFile.getProjectRelativePath().toString(), minifierName());
+		}
+
+		private String minifierName() {
+			if (srcFile.getFileExtension().equals("css")) {
+				return minifier.equals(STREAMING_CSS) ? "Streaming CSS" : "YUI CSS";
+			}
+			if (minifier.equals(YUI_COMPRESSOR)) {
+				return "YUI JS";
+			}
+			if (minifier.equals(WHITESPACE_JS)) {
+				return "Whitespace JS";
+			}
+			return "GCC " + GccMinifier.compilationLevel(BuildProfile.active()
+					.fileProperty(prefs, srcFile, GCC_OPTIMIZATION, 
+							GCC_OPT_WHITESPACE_ONLY));
+		}
+
+		@Override
+		protected void collectMarkers() {
+			run.markerUpdates.add(new MarkerUpdate(srcFile, null,
+					takeMarkers(srcFile, null), metrics));
+		}
+		
+		@Override
+		protected void applied() throws CoreException {
+			String key = srcFile.getProjectRelativePath().toPortableString();
+			if (destCharset == null) {
+				// Failed, must be retried
+				BuildState.of(getProject()).remove(key);
+			} else {
+				BuildState.of(getProject()).put(
+						key, currentState(srcFile, destFile, prefs));
+			}
+		}
+		
+		@Override
+		public Task call() {
+			try {
+				ResultCache cache = ResultCache.instance();
+				String cacheKey = cache.key(
+						srcFile, optionsFingerprint(srcFile, destFile, prefs));
+				ResultCache.Entry cached = cache.get(cacheKey);
+				if (cached != null) {
+					long started = System.nanoTime();
+					restore(cached);
+					metrics.minifier = BuildMetrics.CACHED;
+					metrics.readNanos = System.nanoTime() - started;
+					metrics.inputBytes = cached.inputBytes;
+					return this;
+				}
+				if (srcFile.getFileExtension().equals("css")) {
+					if (minifier.equals(STREAMING_CSS)) {
+						producer = new StreamingCssMinifier(
+								MinifyBuilder.this, srcFile, destFile, result, prefs);
+					} else {
+						producer = new YuiCssMinifier(
+								MinifyBuilder.this, srcFile, destFile, result, prefs);
+					}
+				} else if (srcFile.getFileExtension().equals("js")) {
 					if (minifier.equals(YUI_COMPRESSOR)) {
-						try {
-							producer = new YuiJsMinifier(this, srcFile, destFile, out, prefs);
-						} catch (EvaluatorException e) {
-							return;
-						}
+						producer = new YuiJsMinifier(
+								MinifyBuilder.this, srcFile, destFile, result, prefs);
 					} else 	if (minifier.equals(GOOGLE_CLOSURE_COMPILER)) {
-						producer = new GccMinifier(this, srcFile, destFile, out, prefs);
+						producer = new GccMinifier(
+								MinifyBuilder.this, srcFile, destFile, result, prefs);
+					} else if (minifier.equals(WHITESPACE_JS)) {
+						producer = new WhitespaceJsMinifier(
+								MinifyBuilder.this, srcFile, destFile, result, prefs);
 					}
 				}
-				producer.start();
-				if (!destFile.exists()) {
-					destFile.create(toIFile, IResource.FORCE | IResource.DERIVED, null);
-				} else {
-					destFile.setDerived(true, null);
-					destFile.setContents(toIFile, true, true, null);
+				if (producer != null) {
+					runProducer();
+					if (destCharset != null) {
+						cache.put(cacheKey, toCacheEntry());
+					}
+				}
+			} catch (Exception e) {
+				exception = e;
+			}
+			return this;
+		}
+		
+		private ResultCache.Entry toCacheEntry() throws IOException {
+			ResultCache.Entry entry = new ResultCache.Entry();
+			entry.charset = destCharset;
+			entry.content = result.toByteArray();
+			entry.inputBytes = metrics.inputBytes;
+			OutputBuffer map = extraOutputs.get(mapFile());
+			if (map != null) {
+				entry.mapContent = map.toByteArray();
+			}
+			List<MarkerInfo> markers = pendingMarkers.get(srcFile);
+			if (markers != null) {
+				synchronized (markers) {
+					for (MarkerInfo mi: markers) {
+						if (mi.bundle != null) {
+							continue;
+						}
+						entry.problems.add(new ResultCache.Problem(
+								mi.message, mi.lineNumber, mi.severity));
+					}
 				}
-				destFile.setCharset(producer.destCharset(), null);
 			}
-			producer.join();
-			for (IFile extraFile: producer.createdExtraFiles()) {
-				if (!extraFile.isSynchronized(IResource.DEPTH_ZERO)) {
-					extraFile.refreshLocal(IResource.DEPTH_ZERO, null);
+			return entry;
+		}
+		
+		private void restore(ResultCache.Entry entry) throws IOException {
+			destCharset = entry.charset;
+			result.write(entry.content);
+			if (entry.mapContent != null) {
+				OutputBuffer map = OutputBuffer.obtain();
+				map.write(entry.mapContent);
+				extraOutputs.put(mapFile(), map);
+			}
+			for (ResultCache.Problem problem: entry.problems) {
+				addMarker(srcFile, problem.message, 
+						problem.lineNumber, problem.severity);
+			}
+		}
+	}
+	
+	/**
+	 * The build of a bundle.
+	 */
+	private class BundleTask extends Task {
+		private Bundle bundle;
+		private List<IFile> members;
+		private IEclipsePreferences prefs;
+		
+		public BundleTask(MinifyRun run, Bundle bundle, List<IFile> members,
+				IEclipsePreferences prefs) {
+			super(run, bundle.outputFile(getProject()));
+			this.bundle = bundle;
+			this.members = members;
+			this.prefs = prefs;
+			metrics = new BuildMetrics.FileMetrics(bundle.outputPath(), 
+					"GCC " + GccMinifier.compilationLevel(bundle.optimization())
+					+ " (bundle)");
+		}
+
+		@Override
+		protected void collectMarkers() throws CoreException {
+			Set<IResource> updated = new HashSet<>();
+			for (IFile member: members) {
+				run.markerUpdates.add(new MarkerUpdate(member, bundle.outputPath(),
+						takeMarkers(member, bundle.outputPath()), metrics));
+				updated.add(member);
+			}
+			// Files that are no longer members
+			for (IMarker marker: getProject().findMarkers(
+					BUNDLE_MARKER_TYPE, false, IResource.DEPTH_INFINITE)) {
+				if (bundle.outputPath().equals(
+						marker.getAttribute(BUNDLE_ATTRIBUTE, null))
+						&& marker.getResource() instanceof IFile
+						&& updated.add(marker.getResource())) {
+					run.markerUpdates.add(new MarkerUpdate(
+							(IFile)marker.getResource(), bundle.outputPath(),
+							Collections.emptyList(), metrics));
 				}
-				if (extraFile.exists()) {
-					extraFile.setDerived(true, null);
+			}
+		}
+		
+		@Override
+		protected void applied() throws CoreException {
+			builtBundles.put(bundle.outputPath(), bundle.encode());
+			String key = DependencyGraph.BUNDLE_PREFIX + bundle.outputPath();
+			BuildState state = BuildState.of(getProject());
+			if (destCharset == null) {
+				state.remove(key);
+				return;
+			}
+			state.put(key, currentState(bundle, members, 
+					run.precompressor.level()));
+			// Remove chunks (and maps) that are no longer produced
+			List<String> produced = new ArrayList<>();
+			for (IFile extra: extraOutputs.keySet()) {
+				produced.add(extra.getProjectRelativePath().toPortableString());
+			}
+			for (String path: state.extraOutputs(key)) {
+				if (!produced.contains(path)) {
+					IFile stale = getProject().getFile(path);
+					for (IFile derived: new IFile[] { stale,
+							Precompressor.compressedFile(stale) }) {
+						if (derived.exists() && derived.isDerived()) {
+							derived.delete(IResource.FORCE, null);
+						}
+					}
 				}
 			}
-			processMarkers();
-			producer.checkException();
+			state.setExtraOutputs(key, produced);
+		}
+		
+		@Override
+		public Task call() {
+			try {
+				producer = new GccBundleMinifier(MinifyBuilder.this, 
+						bundle, members, destFile, result, prefs);
+				runProducer();
+			} catch (Exception e) {
+				exception = e;
+			}
+			return this;
+		}
+	}
+	
+	/**
+	 * Writes the result of a task to the workspace. Must be invoked from
+	 * the build thread (or the background job).
+	 * 
+	 * @param task the completed task
+	 * @throws CoreException
+	 */
+	private void applyResult(Task task) throws CoreException {
+		IFile destFile = task.destFile;
+		try {
+			if (task.exception != null) {
+				throw task.exception;
+			}
+			if (task.destCharset == null) {
+				// Nothing produced
+				task.collectMarkers();
+				task.run.metrics.record(task.metrics);
+				task.applied();
+				return;
+			}
+			long writeStarted = System.nanoTime();
+			task.metrics.outputBytes = task.result.size();
+			boolean changed = writeDerived(destFile, task.result);
+			if (!task.destCharset.equals(destFile.getCharset(false))) {
+				destFile.setCharset(task.destCharset, null);
+			}
+			if (task.run.precompressor.isEnabled()) {
+				// Hand over the content, released when compressed
+				task.run.precompressor.submit(destFile, task.result, changed);
+				task.result = null;
+			}
+			for (Map.Entry<IFile,OutputBuffer> extra: 
+					task.extraOutputs.entrySet()) {
+				writeDerived(extra.getKey(), extra.getValue());
+			}
+			task.metrics.writeNanos = System.nanoTime() - writeStarted;
+			task.collectMarkers();
+			task.run.metrics.record(task.metrics);
+			task.applied();
 		} catch (CoreException e) {
+			// Applied by minifyResources before the failure is propagated
+			task.collectMarkers();
 			throw e;
 		} catch (Exception e) {
+			task.collectMarkers();
 			throw new CoreException(new Status(IStatus.ERROR, BUILDER_ID, e.getMessage(), e));
+		} finally {
+			task.release();
 		}
 	}
 
-	public MessageConsole minifierConsole() {
-		IConsoleManager conMan = ConsolePlugin.getDefault().getConsoleManager();
-		IConsole[] existing = conMan.getConsoles();
-		for (int i = 0; i < existing.length; i++)
-			if ("Minifier".equals(existing[i].getName()))
-				return (MessageConsole) existing[i];
-		//no console found, so create a new one
-		MessageConsole myConsole = new MessageConsole("Minifier", null);
-		conMan.addConsoles(new IConsole[] { myConsole });
-		return myConsole;
+	/**
+	 * Writes the content to a derived file. Writes (and the resulting
+	 * resource deltas) are avoided if the file's content is unchanged.
+	 * 
+	 * @param file the file
+	 * @param content the content
+	 * @return whether the content has changed
+	 * @throws CoreException
+	 * @throws IOException
+	 */
+	private static boolean writeDerived(IFile file, OutputBuffer content)
+			throws CoreException, IOException {
+		boolean changed = !file.exists() || !content.contentEquals(
+				file.getLocation().toFile());
+		if (!file.exists()) {
+			file.create(content.inputStream(), 
+					IResource.FORCE | IResource.DERIVED, null);
+			return changed;
+		}
+		if (!file.isDerived()) {
+			file.setDerived(true, null);
+		}
+		if (changed) {
+			// Derived files don't need a local history
+			file.setContents(content.inputStream(), IResource.FORCE, null);
+		} else if (!file.isSynchronized(IResource.DEPTH_ZERO)) {
+			file.refreshLocal(IResource.DEPTH_ZERO, null);
+		}
+		return changed;
 	}
 	
-	public static abstract class MinifyRunner extends Thread {
+	/**
+	 * Returns the sink for messages to the "Minifier" console.
+	 * 
+	 * @return the console
+	 */
+	public MinifierConsole minifierConsole() {
+		return MinifierConsole.instance();
+	}
+	
+	/**
+	 * The base class for the minifiers. Minifiers are executed by the
+	 * threads of the worker pool. 
+	 */
+	public static abstract class MinifyRunner implements Runnable {
 		
 		private MinifyBuilder builder;
 		private Exception exception = null;
-		private List<IFile> createdExtraFiles = new ArrayList<>();
+		private Map<IFile,OutputBuffer> extraOutputs = new LinkedHashMap<>();
+		private long readNanos;
+		private long inputBytes;
+		private volatile boolean cancelled;
 
 		protected MinifyRunner(MinifyBuilder builder) {
 			this.builder = builder;
 		}
 
+		/**
+		 * Requests the minifier to stop. Minifiers check the request 
+		 * when reading their input and, where the engine supports it,
+		 * while processing the input. 
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+		
+		/**
+		 * Checks if the minifier has been cancelled, either by 
+		 * {@link #cancel()} or by interrupting its thread.
+		 * 
+		 * @return the result
+		 */
+		public boolean isCancelled() {
+			return cancelled || Thread.currentThread().isInterrupted();
+		}
+
 		protected MinifyBuilder builder() {
 			return builder;
 		}
 		
-		public List<IFile> createdExtraFiles() {
-			return createdExtraFiles;
+		/**
+		 * Returns the content of the files created in addition to the
+		 * main output (e.g. source maps).
+		 * 
+		 * @return the outputs
+		 */
+		public Map<IFile,OutputBuffer> extraOutputs() {
+			return extraOutputs;
+		}
+
+		/**
+		 * Returns a buffer for the content of a file created in addition
+		 * to the main output. Like the main output, the content is 
+		 * written to the workspace by the builder (and only if it has
+		 * changed).
+		 * 
+		 * @param file the file
+		 * @return the buffer
+		 */
+		protected OutputBuffer extraOutput(IFile file) {
+			return extraOutputs.computeIfAbsent(file, f -> OutputBuffer.obtain());
+		}
+		
+		/**
+		 * Returns a reporter that adds the problems as markers
+		 * to the given file.
+		 * 
+		 * @param file the file
+		 * @return the reporter
+		 */
+		protected ProblemReporter problemReporter(IFile file) {
+			return (message, lineNumber, severity) 
+					-> builder.addMarker(file, message, lineNumber, severity);
+		}
+		
+		/**
+		 * Reports that the worker process minifying the given file
+		 * has terminated (twice). The file is left unminified, but
+		 * the build continues with the other files.
+		 * 
+		 * @param file the file
+		 * @param e the exception
+		 */
+		protected void reportTerminated(IFile file, 
+				MinifyWorker.TerminatedException e) {
+			builder.addMarker(file, "Not minified: " + e.getMessage(), -1, 
+					ProblemReporter.SEVERITY_ERROR);
 		}
+		
+		/**
+		 * Reads the content of a source file into memory, recording
+		 * the time spent and the number of bytes read.
+		 * 
+		 * @param file the file
+		 * @return a stream with the file's content
+		 * @throws CoreException
+		 * @throws IOException
+		 */
+		protected InputStream readSource(IFile file) 
+				throws CoreException, IOException {
+			long started = System.nanoTime();
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			try (InputStream in = file.getContents()) {
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = in.read(buffer)) > 0) {
+					if (isCancelled()) {
+						throw new InterruptedIOException("Minification cancelled");
+					}
+					content.write(buffer, 0, count);
+				}
+			}
+			readNanos += System.nanoTime() - started;
+			inputBytes += content.size();
+			// Engines that parse while reading stop when cancelled
+			return new FilterInputStream(
+					new ByteArrayInputStream(content.toByteArray())) {
+				@Override
+				public int read() throws IOException {
+					byte[] single = new byte[1];
+					return read(single, 0, 1) < 0 ? -1 : (single[0] & 0xff);
+				}
 
-		protected void addCreatedExtraFile(IFile file) {
-			createdExtraFiles.add(file);
+				@Override
+				public int read(byte[] buffer, int offset, int length)
+						throws IOException {
+					if (isCancelled()) {
+						throw new InterruptedIOException("Minification cancelled");
+					}
+					return super.read(buffer, offset, length);
+				}
+			};
+		}
+		
+		/**
+		 * Opens a source file for reading without loading its content
+		 * into memory. The time spent and the number of bytes read are
+		 * recorded as with {@link #readSource(IFile)}. Intended for 
+		 * minifiers that process their input as a stream.
+		 * 
+		 * @param file the file
+		 * @return a stream with the file's content
+		 * @throws CoreException
+		 */
+		protected InputStream streamSource(IFile file) throws CoreException {
+			long started = System.nanoTime();
+			InputStream in = file.getContents();
+			readNanos += System.nanoTime() - started;
+			return new FilterInputStream(in) {
+				@Override
+				public int read() throws IOException {
+					byte[] single = new byte[1];
+					return read(single, 0, 1) < 0 ? -1 : (single[0] & 0xff);
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length)
+						throws IOException {
+					if (isCancelled()) {
+						throw new InterruptedIOException("Minification cancelled");
+					}
+					long readStarted = System.nanoTime();
+					int count = super.read(buffer, offset, length);
+					readNanos += System.nanoTime() - readStarted;
+					if (count > 0) {
+						inputBytes += count;
+					}
+					return count;
+				}
+			};
+		}
+		
+		/**
+		 * Records input that is read by the minifier itself.
+		 * 
+		 * @param bytes the number of bytes
+		 */
+		protected void addInputBytes(long bytes) {
+			inputBytes += bytes;
+		}
+		
+		/**
+		 * @return the time spent in {@link #readSource(IFile)}
+		 */
+		public long readNanos() {
+			return readNanos;
+		}
+		
+		/**
+		 * @return the number of bytes read
+		 */
+		public long inputBytes() {
+			return inputBytes;
 		}
 		
 		public void checkException() throws Exception {
@@ -293,23 +1636,27 @@ public class MinifyBuilder extends IncrementalProjectBuilder {
 	
 	private class MarkerInfo {
 		public IFile file;
+		public String bundle;
 		public String message;
 		public int lineNumber;
 		public int severity;
 		
-		public MarkerInfo(IFile file, String message, int lineNumber, int severity) {
+		public MarkerInfo(IFile file, String bundle, String message, 
+				int lineNumber, int severity) {
 			this.file = file;
+			this.bundle = bundle;
 			this.message = message;
 			this.lineNumber = lineNumber;
 			this.severity = severity;
 		}
 	}
 	
-	private List<MarkerInfo> pendingMarkers = new ArrayList<>();
+	private Map<IFile,List<MarkerInfo>> pendingMarkers = new ConcurrentHashMap<>();
 
 	/**
 	 * Marker can only be created in the "main" thread, so the information
-	 * has to be buffered.
+	 * has to be buffered. May be invoked concurrently by the minifiers
+	 * running in the worker threads.
 	 * 
 	 * @param file
 	 * @param message
@@ -317,22 +1664,150 @@ public class MinifyBuilder extends IncrementalProjectBuilder {
 	 * @param severity
 	 */
 	public void addMarker(IFile file, String message, int lineNumber, int severity) {
-		pendingMarkers.add(new MarkerInfo(file, message, lineNumber, severity));
+		addBundleMarker(file, null, message, lineNumber, severity);
 	}
 
-	private void processMarkers() {
-		try {
-			for (MarkerInfo mi: pendingMarkers) {
-				IMarker marker = mi.file.createMarker(MARKER_TYPE);
-				marker.setAttribute(IMarker.MESSAGE, mi.message);
-				marker.setAttribute(IMarker.SEVERITY, mi.severity);
+	/**
+	 * Like {@link #addMarker(IFile, String, int, int)} for a problem
+	 * reported while building a bundle.
+	 * 
+	 * @param file
+	 * @param bundle the bundle's output path
+	 * @param message
+	 * @param lineNumber
+	 * @param severity
+	 */
+	public void addBundleMarker(IFile file, String bundle, String message, 
+			int lineNumber, int severity) {
+		pendingMarkers.computeIfAbsent(file, 
+				f -> Collections.synchronizedList(new ArrayList<>()))
+			.add(new MarkerInfo(file, bundle, message, lineNumber, severity));
+	}
+
+	/**
+	 * Removes and returns the buffered problems of the given file,
+	 * reported for the given bundle (or for the file itself if 
+	 * bundle is {@code null}).
+	 * 
+	 * @param file the file
+	 * @param bundle the bundle's output path or {@code null}
+	 * @return the problems
+	 */
+	private List<MarkerInfo> takeMarkers(IFile file, String bundle) {
+		List<MarkerInfo> result = new ArrayList<>();
+		pendingMarkers.computeIfPresent(file, (f, markers) -> {
+			synchronized (markers) {
+				for (Iterator<MarkerInfo> iter = markers.iterator(); 
+						iter.hasNext();) {
+					MarkerInfo mi = iter.next();
+					if (Objects.equals(mi.bundle, bundle)) {
+						result.add(mi);
+						iter.remove();
+					}
+				}
+				return markers.isEmpty() ? null : markers;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Makes the markers of a file (of the builder's type, for a 
+	 * given bundle or the file itself) match the reported problems. 
+	 */
+	private class MarkerUpdate {
+		public IFile file;
+		public String bundle;
+		public List<MarkerInfo> problems;
+		public BuildMetrics.FileMetrics metrics;
+		
+		public MarkerUpdate(IFile file, String bundle, 
+				List<MarkerInfo> problems, BuildMetrics.FileMetrics metrics) {
+			this.file = file;
+			this.bundle = bundle;
+			this.problems = problems;
+			this.metrics = metrics;
+		}
+		
+		/**
+		 * Compares the existing markers with the problems. Only
+		 * markers for problems that have been resolved are deleted,
+		 * only markers for new problems are created.
+		 * 
+		 * @throws CoreException
+		 */
+		public void apply() throws CoreException {
+			long started = System.nanoTime();
+			if (!file.exists()) {
+				return;
+			}
+			Map<String,Deque<MarkerInfo>> wanted = new HashMap<>();
+			for (MarkerInfo mi: problems) {
 				if (mi.lineNumber == -1) {
 					mi.lineNumber = 1;
 				}
-				marker.setAttribute(IMarker.LINE_NUMBER, mi.lineNumber);
+				wanted.computeIfAbsent(markerKey(mi.message, mi.lineNumber, 
+						mi.severity), k -> new ArrayDeque<>()).add(mi);
 			}
-			pendingMarkers.clear();
-		} catch (CoreException e) {
+			String type = bundle == null ? MARKER_TYPE : BUNDLE_MARKER_TYPE;
+			for (IMarker marker: file.findMarkers(type, false, IResource.DEPTH_ZERO)) {
+				if (bundle != null && !bundle.equals(
+						marker.getAttribute(BUNDLE_ATTRIBUTE, null))) {
+					continue;
+				}
+				Deque<MarkerInfo> matching = wanted.get(markerKey(
+						marker.getAttribute(IMarker.MESSAGE, ""),
+						marker.getAttribute(IMarker.LINE_NUMBER, -1),
+						marker.getAttribute(IMarker.SEVERITY, -1)));
+				if (matching != null && !matching.isEmpty()) {
+					// Unchanged, keep
+					matching.remove();
+				} else {
+					marker.delete();
+				}
+			}
+			for (Deque<MarkerInfo> missing: wanted.values()) {
+				for (MarkerInfo mi: missing) {
+					IMarker marker = file.createMarker(type);
+					if (bundle == null) {
+						marker.setAttributes(MARKER_ATTRIBUTES, new Object[] { 
+							mi.message, mi.severity, mi.lineNumber });
+					} else {
+						marker.setAttributes(BUNDLE_MARKER_ATTRIBUTES, new Object[] {
+							mi.message, mi.severity, mi.lineNumber, bundle });
+					}
+				}
+			}
+			if (metrics != null) {
+				metrics.markerNanos += System.nanoTime() - started;
+			}
+		}
+	}
+	
+	private static final String[] MARKER_ATTRIBUTES = new String[] {
+		IMarker.MESSAGE, IMarker.SEVERITY, IMarker.LINE_NUMBER };
+	private static final String[] BUNDLE_MARKER_ATTRIBUTES = new String[] {
+		IMarker.MESSAGE, IMarker.SEVERITY, IMarker.LINE_NUMBER, BUNDLE_ATTRIBUTE };
+	
+	private static String markerKey(String message, int lineNumber, int severity) {
+		return severity + ":" + lineNumber + ":" + message;
+	}
+	
+	/**
+	 * Applies the marker updates collected by the given run. Must be 
+	 * invoked from the build thread (or the background job), preferably
+	 * in a workspace operation.
+	 * 
+	 * @param run the run
+	 * @throws CoreException
+	 */
+	private void updateMarkers(MinifyRun run) throws CoreException {
+		try {
+			for (MarkerUpdate update: run.markerUpdates) {
+				update.apply();
+			}
+		} finally {
+			run.markerUpdates.clear();
 		}
 	}
 
@@ -0,0 +1,121 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Minifies resources in the background when the builder runs in 
+ * asynchronous mode. The builder only records the dirty resources 
+ * and bundles. Repeated requests for the same resource or bundle 
+ * are coalesced until the job runs. 
+ */
+public class MinifyJob extends Job {
+
+	/** Delay before the job runs, allows saves to be coalesced. */
+	private static final long DELAY = 250;
+	
+	private MinifyBuilder builder;
+	private Set<IResource> resources = new LinkedHashSet<>();
+	private Map<String,Bundle> bundles = new LinkedHashMap<>();
+	
+	/**
+	 * Creates a new job for the given builder.
+	 * 
+	 * @param builder the builder
+	 */
+	public MinifyJob(MinifyBuilder builder) {
+		super("Minifying " + builder.getProject().getName());
+		this.builder = builder;
+		setSystem(false);
+	}
+
+	/**
+	 * Adds resources and bundles to be processed and (re)schedules
+	 * the job.
+	 * 
+	 * @param resources the resources
+	 * @param bundles the bundles
+	 */
+	public void add(List<IResource> resources, List<Bundle> bundles) {
+		if (resources.isEmpty() && bundles.isEmpty()) {
+			return;
+		}
+		synchronized (this) {
+			this.resources.addAll(resources);
+			for (Bundle bundle: bundles) {
+				this.bundles.put(bundle.outputPath(), bundle);
+			}
+		}
+		schedule(DELAY);
+	}
+	
+	@Override
+	public boolean belongsTo(Object family) {
+		return MinifyBuilder.BUILDER_ID.equals(family);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		List<IResource> toMinify = new ArrayList<>();
+		List<Bundle> toBuild;
+		synchronized (this) {
+			for (IResource resource: resources) {
+				// May have been deleted in the meantime
+				if (resource.exists()) {
+					toMinify.add(resource);
+				}
+			}
+			toBuild = new ArrayList<>(bundles.values());
+			resources.clear();
+			bundles.clear();
+		}
+		if (toMinify.isEmpty() && toBuild.isEmpty()) {
+			return Status.OK_STATUS;
+		}
+		try {
+			builder.minifyInBackground(toMinify, toBuild, monitor);
+		} catch (OperationCanceledException e) {
+			// Keep the work for the next run
+			synchronized (this) {
+				resources.addAll(toMinify);
+				for (Bundle bundle: toBuild) {
+					bundles.putIfAbsent(bundle.outputPath(), bundle);
+				}
+			}
+			return Status.CANCEL_STATUS;
+		} catch (CoreException e) {
+			return e.getStatus();
+		}
+		return Status.OK_STATUS;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Accumulates the metrics of all builds and publishes them as
+ * MBean "org.jdrupes.eclipse.minify:type=Metrics".
+ */
+public class MinifyMetrics implements MinifyMetricsMBean {
+
+	public static final String OBJECT_NAME = "org.jdrupes.eclipse.minify:type=Metrics";
+	
+	private static MinifyMetrics instance;
+	
+	private long buildCount;
+	private long fileCount;
+	private BuildMetrics lastBuild;
+	private Map<String,MinifierStatistics> byMinifier = new TreeMap<>();
+	
+	private static class MinifierStatistics {
+		public long files;
+		public BuildMetrics.FileMetrics totals 
+			= new BuildMetrics.FileMetrics("", "");
+	}
+	
+	/**
+	 * Returns the instance, registering it with the platform's 
+	 * MBean server on first invocation.
+	 * 
+	 * @return the instance
+	 */
+	public static synchronized MinifyMetrics instance() {
+		if (instance == null) {
+			instance = new MinifyMetrics();
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if (!server.isRegistered(name)) {
+					server.registerMBean(instance, name);
+				}
+			} catch (JMException e) {
+				// Metrics are still collected, but not published
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Adds the metrics of a completed build.
+	 * 
+	 * @param build the build's metrics
+	 */
+	public synchronized void add(BuildMetrics build) {
+		List<BuildMetrics.FileMetrics> files = build.files();
+		if (files.isEmpty()) {
+			return;
+		}
+		buildCount += 1;
+		fileCount += files.size();
+		lastBuild = build;
+		for (BuildMetrics.FileMetrics file: files) {
+			MinifierStatistics stats = byMinifier.computeIfAbsent(
+					file.minifier, k -> new MinifierStatistics());
+			stats.files += 1;
+			BuildMetrics.add(stats.totals, file);
+		}
+	}
+	
+	@Override
+	public synchronized long getBuildCount() {
+		return buildCount;
+	}
+
+	@Override
+	public synchronized long getFileCount() {
+		return fileCount;
+	}
+
+	@Override
+	public synchronized String getLastBuildSummary() {
+		return lastBuild == null ? "" : lastBuild.summary();
+	}
+
+	@Override
+	public synchronized String[] getLastBuildFiles() {
+		if (lastBuild == null) {
+			return new String[0];
+		}
+		List<String> result = new ArrayList<>();
+		for (BuildMetrics.FileMetrics file: lastBuild.files()) {
+			result.add(file.toString());
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public synchronized String[] getMinifierStatistics() {
+		List<String> result = new ArrayList<>();
+		for (Map.Entry<String,MinifierStatistics> entry: byMinifier.entrySet()) {
+			MinifierStatistics stats = entry.getValue();
+			result.add(String.format("%s: %d file(s), read %d ms, "
+					+ "minify %d ms, write %d ms, markers %d ms, "
+					+ "%d -> %d bytes (%.1f%%)", entry.getKey(), stats.files,
+					BuildMetrics.millis(stats.totals.readNanos), 
+					BuildMetrics.millis(stats.totals.minifyNanos),
+					BuildMetrics.millis(stats.totals.writeNanos),
+					BuildMetrics.millis(stats.totals.markerNanos),
+					stats.totals.inputBytes, stats.totals.outputBytes,
+					stats.totals.ratio() * 100));
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public synchronized void reset() {
+		buildCount = 0;
+		fileCount = 0;
+		lastBuild = null;
+		byMinifier.clear();
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+/**
+ * The management interface of {@link MinifyMetrics}.
+ */
+public interface MinifyMetricsMBean {
+
+	/**
+	 * @return the number of builds that minified at least one file
+	 */
+	long getBuildCount();
+
+	/**
+	 * @return the number of files minified since the start
+	 */
+	long getFileCount();
+	
+	/**
+	 * @return the summary of the last build
+	 */
+	String getLastBuildSummary();
+	
+	/**
+	 * @return the metrics of the files minified by the last build,
+	 * slowest first
+	 */
+	String[] getLastBuildFiles();
+	
+	/**
+	 * @return the cumulative metrics for each minifier
+	 */
+	String[] getMinifierStatistics();
+
+	/**
+	 * Resets all counters.
+	 */
+	void reset();
+}
@@ -0,0 +1,112 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A buffer for the output of a minifier. The content can be read
+ * without copying it and buffers are reused for subsequent
+ * minifications.
+ */
+public class OutputBuffer extends ByteArrayOutputStream {
+
+	/** Larger buffers are not kept for reuse. */
+	private static final int MAX_POOLED_SIZE = 1024 * 1024;
+	private static final int MAX_POOLED = 64;
+	
+	private static Queue<OutputBuffer> pool = new ConcurrentLinkedQueue<>();
+
+	private OutputBuffer() {
+		super(16 * 1024);
+	}
+	
+	/**
+	 * Obtains an empty buffer, reusing a released buffer if possible.
+	 * 
+	 * @return the buffer
+	 */
+	public static OutputBuffer obtain() {
+		OutputBuffer buffer = pool.poll();
+		if (buffer == null) {
+			return new OutputBuffer();
+		}
+		return buffer;
+	}
+	
+	/**
+	 * Makes the buffer available for reuse. The buffer must not
+	 * be used by the invoker after this method has been called.
+	 */
+	public void release() {
+		if (buf.length > MAX_POOLED_SIZE || pool.size() >= MAX_POOLED) {
+			return;
+		}
+		reset();
+		pool.offer(this);
+	}
+	
+	/**
+	 * Returns a stream that reads the buffer's current content 
+	 * without copying it.
+	 * 
+	 * @return the stream
+	 */
+	public synchronized InputStream inputStream() {
+		return new ByteArrayInputStream(buf, 0, count);
+	}
+
+	/**
+	 * Checks if the file's content equals the buffer's current content. 
+	 * The file is read only if it has the same size as the content.
+	 * 
+	 * @param file the file
+	 * @return the result
+	 * @throws IOException
+	 */
+	public synchronized boolean contentEquals(File file) throws IOException {
+		if (!file.exists() || file.length() != count) {
+			return false;
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] buffer = new byte[8192];
+			int offset = 0;
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				if (offset + read > count) {
+					return false;
+				}
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] != buf[offset + i]) {
+						return false;
+					}
+				}
+				offset += read;
+			}
+			return offset == count;
+		}
+	}
+}
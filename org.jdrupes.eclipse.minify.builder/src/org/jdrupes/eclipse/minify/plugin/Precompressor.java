@@ -0,0 +1,179 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Creates gzip compressed variants of minified files, so that web
+ * servers can deliver them without compressing them on every request.
+ * 
+ * Compression is done by the worker threads. The compressed content
+ * is written to the file system directly, the workspace is updated
+ * from the build thread by {@link #finish()}.
+ */
+public class Precompressor {
+
+	/** Prefix of the keys used for the compressed variants' states. */
+	public static final String GZIP_PREFIX = "gzip:";
+	
+	private ExecutorService executor;
+	private int level;
+	private BuildState state;
+	private List<Future<IFile>> pending = new ArrayList<>();
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param executor the executor used for compression
+	 * @param level the compression level (1-9) or 0 to disable compression 
+	 * @param state the build state used to record the level of the
+	 * compressed variants
+	 */
+	public Precompressor(ExecutorService executor, int level, 
+			BuildState state) {
+		this.executor = executor;
+		this.level = level;
+		this.state = state;
+	}
+
+	/**
+	 * Returns the file with the compressed variant of a file.
+	 * 
+	 * @param file the file
+	 * @return the compressed variant
+	 */
+	public static IFile compressedFile(IFile file) {
+		return file.getProject().getFile(
+				file.getProjectRelativePath().addFileExtension("gz"));
+	}
+	
+	/**
+	 * Checks if compression is enabled.
+	 * 
+	 * @return the result
+	 */
+	public boolean isEnabled() {
+		return level > 0;
+	}
+	
+	/**
+	 * Returns the compression level.
+	 * 
+	 * @return the level
+	 */
+	public int level() {
+		return level;
+	}
+	
+	/**
+	 * Creates the compressed variant of the given file with the content
+	 * from the buffer, unless the file's content is unchanged and the 
+	 * compressed variant exists already and has been created with the
+	 * current level. The buffer is released when compression has completed.
+	 * 
+	 * @param file the file
+	 * @param content the file's (new) content
+	 * @param changed whether the content has changed
+	 */
+	public void submit(IFile file, OutputBuffer content, boolean changed) {
+		IFile gzFile = compressedFile(file);
+		String key = GZIP_PREFIX 
+				+ file.getProjectRelativePath().toPortableString();
+		BuildState.Entry current = new BuildState.Entry(
+				IResource.NULL_STAMP, "level=" + level, IResource.NULL_STAMP);
+		if (!isEnabled() 
+				|| !changed && gzFile.getLocation().toFile().exists()
+				&& state.isUpToDate(key, current)) {
+			content.release();
+			return;
+		}
+		pending.add(executor.submit(() -> {
+			try (InputStream in = content.inputStream();
+					OutputStream out = new GZIPOutputStream(
+							new FileOutputStream(gzFile.getLocation().toFile())) {
+						{
+							def.setLevel(level);
+						}
+					}) {
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = in.read(buffer)) > 0) {
+					out.write(buffer, 0, count);
+				}
+			} catch (Exception e) {
+				state.remove(key);
+				throw e;
+			} finally {
+				content.release();
+			}
+			state.put(key, current);
+			return gzFile;
+		}));
+	}
+	
+	/**
+	 * Waits for all submitted compressions to complete and updates
+	 * the workspace. Must be invoked from the build thread.
+	 * 
+	 * @throws CoreException
+	 */
+	public void finish() throws CoreException {
+		try {
+			for (Future<IFile> result: pending) {
+				IFile gzFile = result.get();
+				gzFile.refreshLocal(IResource.DEPTH_ZERO, null);
+				if (gzFile.exists() && !gzFile.isDerived()) {
+					gzFile.setDerived(true, null);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new CoreException(new Status(IStatus.ERROR, 
+					MinifyBuilder.BUILDER_ID, e.getCause().getMessage(), e.getCause()));
+		} finally {
+			pending.clear();
+		}
+	}
+	
+	/**
+	 * Cancels all pending compressions.
+	 */
+	public void cancel() {
+		for (Future<IFile> result: pending) {
+			result.cancel(true);
+		}
+		pending.clear();
+	}
+}
@@ -18,11 +18,16 @@
 
 package org.jdrupes.eclipse.minify.plugin;
 
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
@@ -39,6 +44,12 @@ import org.osgi.service.prefs.Preferences;
  * {@code org.eclipse.core.resources.prefs} for storing e.g. the encoding of a file
  * in project scoped preferences.
  * 
+ * To avoid scanning all keys, removing and moving resources is based 
+ * on the {@link ResourceIndex} maintained for the preferences node. 
+ * Removing or moving a folder is a single operation on all resources
+ * contained in the folder. Several such operations can be combined
+ * in a {@link Batch} that flushes the modified preferences only once.
+ * 
  * Such a class (started with the workbench) should -- according to the Eclipse
  * documentation -- never be written.
  */
@@ -51,7 +62,7 @@ public class PrefsAccess {
 	 * @param resource a resource from the project
 	 * @return the preferences
 	 */
-	public static Preferences preferences(IResource resource) {
+	public static IEclipsePreferences preferences(IResource resource) {
 		ProjectScope projectScope = new ProjectScope(resource.getProject());
 		return projectScope.getNode(MinifyBuilder.BUILDER_ID);
 	}
@@ -67,8 +78,31 @@ public class PrefsAccess {
 		return property + "//" + resource.getProjectRelativePath().toPortableString();
 	}
 
+	/**
+	 * Returns the value of a resource's property. If a minifier is
+	 * stored for the resource, the value stored for the resource is 
+	 * returned, else the value defined by the project's rules. 
+	 * 
+	 * @param prefs the preferences
+	 * @param resource the resource
+	 * @param property the property
+	 * @return the value or {@code null} if not set
+	 */
+	public static String property(IEclipsePreferences prefs, 
+			IResource resource, String property) {
+		ResourceIndex index = ResourceIndex.of(prefs);
+		String path = resource.getProjectRelativePath().toPortableString();
+		if (index.hasProperty(path, MinifyBuilder.MINIFIER)) {
+			// Configured for the resource, overrides the rules
+			return prefs.get(property + "//" + path, null);
+		}
+		return index.rules().property(path, property);
+	}
+
 	/**
 	 * Remove a resource (i.e. all its properties) from the builder's preferences.
+	 * If the resource is a folder, the properties of all resources in 
+	 * the folder are removed as well.
 	 * 
 	 * @param prefs the preferences
 	 * @param resource the resource
@@ -76,22 +110,16 @@ public class PrefsAccess {
 	 */
 	public static void removeResource(Preferences prefs, IResource resource) 
 			throws CoreException {
-		try {
-			String[] keys = prefs.keys();
-			for (String key: keys) {
-				if (key.endsWith("//" + resource.getProjectRelativePath().toPortableString())) {
-					prefs.remove(key);
-				}
-			}
-			prefs.flush();
-		} catch (BackingStoreException e) {
-			throw new CoreException(new Status(
-					IStatus.ERROR, MinifyBuilder.BUILDER_ID, e.getMessage(), e));
+		try (Batch batch = new Batch()) {
+			batch.removeResource(prefs, resource);
 		}
 	}
 
 	/**
 	 * Associate one resource's properties with another resource.
+	 * If the resource is a folder, the properties of all resources
+	 * in the folder are associated with the corresponding resources
+	 * in the other folder.
 	 * 
 	 * @param fromPrefs the preferences to take the properties from
 	 * @param fromResource the resource to take the properties from
@@ -102,21 +130,83 @@ public class PrefsAccess {
 	public static void moveResource(Preferences fromPrefs, IResource fromResource,
 			Preferences toPrefs, IResource toResource) 
 			throws CoreException {
-		try {
-			String[] keys = fromPrefs.keys();
-			for (String key: keys) {
-				if (key.endsWith("//" + fromResource.getProjectRelativePath().toPortableString())) {
-					String resourcePreference = key.substring(0, key.indexOf('/'));
-					toPrefs.put(preferenceKey(toResource, resourcePreference), fromPrefs.get(key, ""));
+		try (Batch batch = new Batch()) {
+			batch.moveResource(fromPrefs, fromResource, toPrefs, toResource);
+		}
+	}
+
+	/**
+	 * Combines several modifications. The preferences modified are
+	 * flushed once when the batch is closed.
+	 */
+	public static class Batch implements AutoCloseable {
+		
+		private Set<Preferences> modified = new LinkedHashSet<>();
+		
+		/**
+		 * Like {@link PrefsAccess#removeResource(Preferences, IResource)}
+		 * but without flushing the preferences.
+		 * 
+		 * @param prefs the preferences
+		 * @param resource the resource
+		 */
+		public void removeResource(Preferences prefs, IResource resource) {
+			for (Map.Entry<String,Set<String>> entry: index(prefs).properties(
+					resource.getProjectRelativePath(), true).entrySet()) {
+				for (String property: entry.getValue()) {
+					prefs.remove(property + "//" + entry.getKey());
+				}
+				modified.add(prefs);
+			}
+		}
+		
+		/**
+		 * Like {@link PrefsAccess#moveResource(Preferences, IResource, Preferences, IResource)}
+		 * but without flushing the preferences.
+		 * 
+		 * @param fromPrefs the preferences to take the properties from
+		 * @param fromResource the resource to take the properties from
+		 * @param toPrefs the preferences to move the properties to
+		 * @param toResource the resource to associated with the properties
+		 */
+		public void moveResource(Preferences fromPrefs, IResource fromResource,
+				Preferences toPrefs, IResource toResource) {
+			String fromPath = fromResource.getProjectRelativePath().toPortableString();
+			String toPath = toResource.getProjectRelativePath().toPortableString();
+			for (Map.Entry<String,Set<String>> entry: index(fromPrefs).properties(
+					fromResource.getProjectRelativePath(), true).entrySet()) {
+				String movedPath = toPath + entry.getKey().substring(fromPath.length());
+				for (String property: entry.getValue()) {
+					String key = property + "//" + entry.getKey();
+					String value = fromPrefs.get(key, "");
 					fromPrefs.remove(key);
+					toPrefs.put(property + "//" + movedPath, value);
 				}
+				modified.add(fromPrefs);
+				modified.add(toPrefs);
 			}
-			fromPrefs.flush();
-			toPrefs.flush();
-		} catch (BackingStoreException e) {
-			throw new CoreException(new Status(
-					IStatus.ERROR, MinifyBuilder.BUILDER_ID, e.getMessage(), e));
 		}
-	}
 
-}
+		/**
+		 * Flushes all modified preferences.
+		 */
+		@Override
+		public void close() throws CoreException {
+			try {
+				for (Preferences prefs: modified) {
+					prefs.flush();
+				}
+				modified.clear();
+			} catch (BackingStoreException e) {
+				throw new CoreException(new Status(
+						IStatus.ERROR, MinifyBuilder.BUILDER_ID, e.getMessage(), e));
+			}
+		}
+	}
+	
+	private static ResourceIndex index(Preferences prefs) {
+		// The nodes provided by the project scope always are 
+		// IEclipsePreferences.
+		return ResourceIndex.of((IEclipsePreferences)prefs);
+	}
+}
\ No newline at end of file
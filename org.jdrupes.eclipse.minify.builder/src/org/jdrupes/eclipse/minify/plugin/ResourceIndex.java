@@ -0,0 +1,278 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.jdrupes.eclipse.minify.engine.MinifyRules;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * An index of the resource related keys in a project's preferences 
+ * (see {@link PrefsAccess}). It provides the properties stored for
+ * a resource (or all resources in a folder) and the resources that 
+ * have a minifier configured. The index is built once from the 
+ * preferences' keys and kept up to date by listening for changes 
+ * of the preferences. The {@link MinifyRules} are compiled whenever
+ * they are modified.
+ * 
+ * A resource has a minifier configured if a minifier is stored
+ * for the resource or, if no minifier is stored for the resource, 
+ * if the rules configure a minifier for it.
+ * 
+ * Paths are project relative and in portable format. Because paths
+ * are kept sorted, the resources in a folder form a contiguous range.
+ */
+public class ResourceIndex implements IPreferenceChangeListener {
+
+	private static final String MINIFIER_PREFIX = MinifyBuilder.MINIFIER + "//";
+	
+	private static Map<IEclipsePreferences,ResourceIndex> indices 
+		= Collections.synchronizedMap(new WeakHashMap<>());
+	
+	private NavigableMap<String,Set<String>> properties = new TreeMap<>();
+	private NavigableMap<String,String> minifiers = new TreeMap<>();
+	private MinifyRules rules = MinifyRules.EMPTY;
+
+	/**
+	 * Returns the index for the given preferences.
+	 * 
+	 * @param prefs the project's builder preferences
+	 * @return the index
+	 */
+	public static ResourceIndex of(IEclipsePreferences prefs) {
+		return indices.computeIfAbsent(prefs, p -> new ResourceIndex(p));
+	}
+	
+	private ResourceIndex(IEclipsePreferences prefs) {
+		prefs.addPreferenceChangeListener(this);
+		try {
+			for (String key: prefs.keys()) {
+				update(key, prefs.get(key, null));
+			}
+		} catch (BackingStoreException e) {
+			// Leave empty
+		}
+	}
+
+	@Override
+	public void preferenceChange(PreferenceChangeEvent event) {
+		update(event.getKey(), (String)event.getNewValue());
+	}
+	
+	private synchronized void update(String key, String value) {
+		if (key.equals(MinifyRules.KEY)) {
+			rules = MinifyRules.parse(value);
+			return;
+		}
+		int sep = key.indexOf("//");
+		if (sep < 0) {
+			// Not resource related
+			return;
+		}
+		String property = key.substring(0, sep);
+		String path = key.substring(sep + 2);
+		if (value == null) {
+			Set<String> props = properties.get(path);
+			if (props != null) {
+				props.remove(property);
+				if (props.isEmpty()) {
+					properties.remove(path);
+				}
+			}
+		} else {
+			properties.computeIfAbsent(path, p -> new HashSet<>()).add(property);
+		}
+		if (!key.startsWith(MINIFIER_PREFIX)) {
+			return;
+		}
+		if (value == null || value.equals(MinifyBuilder.DONT_MINIFY)) {
+			minifiers.remove(path);
+			return;
+		}
+		minifiers.put(path, value);
+	}
+	
+	/**
+	 * Returns the properties stored for the resource with the given 
+	 * path and, optionally, for all resources contained in it.
+	 * 
+	 * @param path the project relative path
+	 * @param withMembers whether to include the resources contained
+	 * in the resource
+	 * @return the properties, mapped by the path of the resource
+	 * they belong to
+	 */
+	public synchronized Map<String,Set<String>> properties(
+			IPath path, boolean withMembers) {
+		Map<String,Set<String>> result = new TreeMap<>();
+		String portable = path.toPortableString();
+		Set<String> props = properties.get(portable);
+		if (props != null) {
+			result.put(portable, new HashSet<>(props));
+		}
+		if (withMembers) {
+			// All paths with the given prefix and a "/"; as '0' follows 
+			// '/', this is the range from "path/" (inclusive) to "path0".
+			for (Map.Entry<String,Set<String>> entry: properties.subMap(
+					portable + "/", true, portable + "0", false).entrySet()) {
+				result.put(entry.getKey(), new HashSet<>(entry.getValue()));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Checks if the given property is stored for the resource 
+	 * with the given path.
+	 * 
+	 * @param path the project relative path in portable format
+	 * @param property the property
+	 * @return the result
+	 */
+	public synchronized boolean hasProperty(String path, String property) {
+		Set<String> props = properties.get(path);
+		return props != null && props.contains(property);
+	}
+	
+	/**
+	 * Checks if any property is stored for the resource with the
+	 * given path or, if the resource is a folder, for a resource 
+	 * contained in it. Such properties must follow the resource 
+	 * when it is moved or removed, even if the resource does not have
+	 * a minifier configured (e.g. because it is explicitly excluded
+	 * from minification).
+	 * 
+	 * @param path the project relative path (empty for the project)
+	 * @return the result
+	 */
+	public synchronized boolean hasProperties(IPath path) {
+		if (path.isEmpty()) {
+			return !properties.isEmpty();
+		}
+		String portable = path.toPortableString();
+		if (properties.containsKey(portable)) {
+			return true;
+		}
+		String prefix = portable + "/";
+		String next = properties.ceilingKey(prefix);
+		return next != null && next.startsWith(prefix);
+	}
+	
+	/**
+	 * Returns the project's rules.
+	 * 
+	 * @return the rules
+	 */
+	public synchronized MinifyRules rules() {
+		return rules;
+	}
+	
+	/**
+	 * Checks if the resource with the given path has a minifier configured.
+	 * 
+	 * @param path the project relative path
+	 * @return the result
+	 */
+	public synchronized boolean isConfigured(IPath path) {
+		String portable = path.toPortableString();
+		if (minifiers.containsKey(portable)) {
+			return true;
+		}
+		if (hasProperty(portable, MinifyBuilder.MINIFIER)) {
+			// Explicitly not minified
+			return false;
+		}
+		return rules.isConfigured(portable);
+	}
+	
+	/**
+	 * Checks if the folder with the given path contains any resource
+	 * that has a minifier configured. If a rule may apply to resources
+	 * in the folder, the folder is assumed to contain such a resource.
+	 * 
+	 * @param path the project relative path of the folder 
+	 * (empty for the project)
+	 * @return the result
+	 */
+	public synchronized boolean containsConfigured(IPath path) {
+		if (rules.mayMatchIn(path.toPortableString())) {
+			return true;
+		}
+		if (path.isEmpty()) {
+			return !minifiers.isEmpty();
+		}
+		String prefix = path.toPortableString() + "/";
+		String next = minifiers.ceilingKey(prefix);
+		return next != null && next.startsWith(prefix);
+	}
+	
+	/**
+	 * Returns the paths of all resources that have a minifier 
+	 * stored. Resources configured by the rules only are not
+	 * included.
+	 * 
+	 * @return the paths
+	 */
+	public synchronized List<String> configuredPaths() {
+		return new ArrayList<>(minifiers.keySet());
+	}
+	
+	/**
+	 * Returns the paths of the resources that have a minifier stored
+	 * and are either the resource with the given path or contained in it.
+	 * Resources configured by the rules only are not included.
+	 * 
+	 * @param path the project relative path
+	 * @return the paths
+	 */
+	public synchronized List<String> configuredPaths(IPath path) {
+		List<String> result = new ArrayList<>();
+		String portable = path.toPortableString();
+		if (minifiers.containsKey(portable)) {
+			result.add(portable);
+		}
+		result.addAll(minifiers.subMap(
+				portable + "/", true, portable + "0", false).keySet());
+		return result;
+	}
+	
+	/**
+	 * Checks if the given file name is the name of a file created
+	 * by the builder.
+	 * 
+	 * @param name the file name
+	 * @return the result
+	 */
+	public static boolean isDerivedOutput(String name) {
+		return name.endsWith(".min.js") || name.endsWith(".min.css");
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * A persistent cache for the results of minifications, kept in 
+ * the plugin's state location.
+ * 
+ * The key of an entry is a hash calculated from the content of the 
+ * source file and everything else that influences the result (the 
+ * minifier and its options, the charsets, the plugin's version). 
+ * An entry holds the minified content, the content of the map file 
+ * (if created) and the problems reported by the minifier.
+ * 
+ * The total size of the entries is bounded, the least recently used 
+ * entries are evicted first. 
+ */
+public class ResultCache {
+
+	private static final int FORMAT = 2;
+	private static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+	private static final String ENTRY_SUFFIX = ".entry";
+	
+	private static ResultCache instance;
+	
+	private File directory;
+	private long maxSize;
+	private String pluginVersion;
+	private Map<String,Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalSize = 0;
+	
+	/**
+	 * Returns the cache, creating it on first invocation.
+	 * 
+	 * @return the cache
+	 */
+	public static synchronized ResultCache instance() {
+		if (instance == null) {
+			Bundle bundle = FrameworkUtil.getBundle(ResultCache.class);
+			instance = new ResultCache(
+					Platform.getStateLocation(bundle).append("results").toFile(),
+					Long.getLong("org.jdrupes.eclipse.minify.cacheSize", 
+							DEFAULT_MAX_SIZE),
+					bundle.getVersion().toString());
+		}
+		return instance;
+	}
+	
+	private ResultCache(File directory, long maxSize, String pluginVersion) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.pluginVersion = pluginVersion;
+		directory.mkdirs();
+		File[] files = directory.listFiles(
+				(dir, name) -> name.endsWith(ENTRY_SUFFIX));
+		if (files == null) {
+			return;
+		}
+		// Restore LRU order from the time of last use
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file: files) {
+			String name = file.getName();
+			entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), 
+					file.length());
+			totalSize += file.length();
+		}
+		evict();
+	}
+
+	/**
+	 * A cached result.
+	 */
+	public static class Entry {
+		public String charset;
+		public byte[] content;
+		public byte[] mapContent;
+		public List<Problem> problems = new ArrayList<>();
+		/** The size of the source, for the build metrics. */
+		public long inputBytes;
+	}
+	
+	/**
+	 * A problem reported by a minifier.
+	 */
+	public static class Problem {
+		public String message;
+		public int lineNumber;
+		public int severity;
+		
+		public Problem(String message, int lineNumber, int severity) {
+			this.message = message;
+			this.lineNumber = lineNumber;
+			this.severity = severity;
+		}
+	}
+	
+	/**
+	 * Calculates the key for a source file and the settings used
+	 * to minify it.
+	 * 
+	 * @param srcFile the source file
+	 * @param fingerprint a string that represents all settings that 
+	 * influence the result
+	 * @return the key
+	 * @throws CoreException
+	 * @throws IOException
+	 */
+	public String key(IFile srcFile, String fingerprint) 
+			throws CoreException, IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update((pluginVersion + "\n" + srcFile.getName() + "\n" 
+				+ fingerprint + "\n").getBytes(StandardCharsets.UTF_8));
+		byte[] buffer = new byte[8192];
+		try (InputStream in = srcFile.getContents()) {
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b: digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Looks up an entry.
+	 * 
+	 * @param key the key
+	 * @return the entry or {@code null} if not found
+	 */
+	public Entry get(String key) {
+		synchronized (this) {
+			if (entries.get(key) == null) {
+				return null;
+			}
+		}
+		File file = entryFile(key);
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FORMAT) {
+				remove(key);
+				return null;
+			}
+			Entry entry = new Entry();
+			entry.charset = in.readUTF();
+			entry.content = readBytes(in);
+			entry.mapContent = readBytes(in);
+			int problems = in.readInt();
+			for (int i = 0; i < problems; i++) {
+				entry.problems.add(new Problem(
+						new String(readBytes(in), StandardCharsets.UTF_8),
+						in.readInt(), in.readInt()));
+			}
+			entry.inputBytes = in.readLong();
+			// Persist the LRU order
+			file.setLastModified(System.currentTimeMillis());
+			return entry;
+		} catch (IOException e) {
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Adds an entry to the cache, evicting the least recently used 
+	 * entries if the cache's size limit is exceeded.
+	 * 
+	 * @param key the key
+	 * @param entry the entry
+	 */
+	public void put(String key, Entry entry) {
+		File file = entryFile(key);
+		File tmpFile = new File(directory, key + "." 
+				+ Thread.currentThread().getId() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+				out.writeInt(FORMAT);
+				out.writeUTF(entry.charset);
+				writeBytes(out, entry.content);
+				writeBytes(out, entry.mapContent);
+				out.writeInt(entry.problems.size());
+				for (Problem problem: entry.problems) {
+					writeBytes(out, problem.message.getBytes(StandardCharsets.UTF_8));
+					out.writeInt(problem.lineNumber);
+					out.writeInt(problem.severity);
+				}
+				out.writeLong(entry.inputBytes);
+			}
+			synchronized (this) {
+				file.delete();
+				if (!tmpFile.renameTo(file)) {
+					tmpFile.delete();
+					return;
+				}
+				Long oldSize = entries.put(key, file.length());
+				if (oldSize != null) {
+					totalSize -= oldSize;
+				}
+				totalSize += file.length();
+				evict();
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+		}
+	}
+	
+	private synchronized void remove(String key) {
+		Long size = entries.remove(key);
+		if (size != null) {
+			totalSize -= size;
+		}
+		entryFile(key).delete();
+	}
+	
+	private synchronized void evict() {
+		Iterator<Map.Entry<String,Long>> iter = entries.entrySet().iterator();
+		while (totalSize > maxSize && iter.hasNext()) {
+			Map.Entry<String,Long> eldest = iter.next();
+			totalSize -= eldest.getValue();
+			entryFile(eldest.getKey()).delete();
+			iter.remove();
+		}
+	}
+	
+	private File entryFile(String key) {
+		return new File(directory, key + ENTRY_SUFFIX);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] data = new byte[length];
+		in.readFully(data);
+		return data;
+	}
+	
+	private static void writeBytes(DataOutputStream out, byte[] data) 
+			throws IOException {
+		if (data == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(data.length);
+		out.write(data);
+	}
+}
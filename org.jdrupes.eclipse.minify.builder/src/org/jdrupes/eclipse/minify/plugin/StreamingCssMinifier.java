@@ -0,0 +1,41 @@
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.OutputStream;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.jdrupes.eclipse.minify.engine.StreamingCssEngine;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder.MinifyRunner;
+
+/**
+ * Minifies CSS with the {@link StreamingCssEngine}. The source is
+ * not loaded into memory.
+ */
+public class StreamingCssMinifier extends MinifyRunner {
+	private IFile srcFile;
+	private OutputStream out;
+	private String inCharset;
+	private String outCharset;
+
+	public StreamingCssMinifier(MinifyBuilder builder, IFile srcFile, 
+			IFile destFile, OutputStream out, IEclipsePreferences prefs)
+					throws CoreException {
+		super(builder);
+		this.srcFile = srcFile;
+		this.inCharset = srcFile.getCharset();
+		this.out = out;
+		this.outCharset = destFile.exists() ? destFile.getCharset() : srcFile.getCharset();
+	}
+
+	@Override
+	public String destCharset() {
+		return outCharset;
+	}
+	
+	@Override
+	protected void runSafe() throws Exception {
+		new StreamingCssEngine().minify(
+				streamSource(srcFile), inCharset, out, outCharset);
+	}
+}
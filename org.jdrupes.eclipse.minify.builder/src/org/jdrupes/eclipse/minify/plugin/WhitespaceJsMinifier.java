@@ -0,0 +1,64 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.OutputStream;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.jdrupes.eclipse.minify.engine.WhitespaceJsEngine;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder.MinifyRunner;
+
+/**
+ * Removes comments and whitespace from JavaScript with the
+ * {@link WhitespaceJsEngine}.
+ */
+public class WhitespaceJsMinifier extends MinifyRunner {
+	private IFile srcFile;
+	private OutputStream out;
+	private String inCharset;
+	private String outCharset;
+	private boolean failed;
+
+	public WhitespaceJsMinifier(MinifyBuilder builder, IFile srcFile, 
+			IFile destFile, OutputStream out, IEclipsePreferences prefs)
+					throws CoreException {
+		super(builder);
+		this.srcFile = srcFile;
+		this.out = out;
+		inCharset = srcFile.getCharset();
+		outCharset = destFile.exists() ? destFile.getCharset() : srcFile.getCharset();
+	}
+
+	/**
+	 * Returns the charset of the result or {@code null} if the
+	 * source could not be processed (no result).
+	 */
+	@Override
+	public String destCharset() {
+		return failed ? null : outCharset;
+	}
+	
+	@Override
+	protected void runSafe() throws Exception {
+		failed = !new WhitespaceJsEngine().minify(streamSource(srcFile), 
+				inCharset, out, outCharset, problemReporter(srcFile));
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.jdrupes.eclipse.minify.engine.GccBundleEngine;
+import org.jdrupes.eclipse.minify.engine.MinifyWorker;
+import org.jdrupes.eclipse.minify.engine.ProblemReporter;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * A pool of long-lived worker JVMs that run the YUI Compressor and the
+ * Google Closure Compiler (for single files and bundles) outside the 
+ * IDE's heap. There is a pool for each configuration (number of
+ * workers and maximum heap), shared by all projects with this
+ * configuration, so that builds of projects with different settings
+ * don't replace each other's workers. Workers are
+ * kept between builds and replaced when they have terminated, failed,
+ * served {@link #MAX_REQUESTS} requests or retain more than
+ * {@link #MAX_HEAP_USAGE} of their heap after a request. A request
+ * is repeated once with a newly started worker if the worker serving
+ * it terminates (e.g. because it has run out of memory).
+ */
+public class WorkerPool {
+
+	/** Default maximum heap of a worker (MB). */
+	public static final int DEFAULT_HEAP = 1024;
+	private static final int MAX_REQUESTS = 500;
+	private static final double MAX_HEAP_USAGE = 0.75;
+
+	/** The pools, mapped by size and heap. */
+	private static Map<String,WorkerPool> pools = new HashMap<>();
+	private static List<String> classpath;
+
+	private final int size;
+	private final int heap;
+	private Deque<Worker> idle = new ArrayDeque<>();
+	private int busy;
+
+	private static class Worker extends MinifyWorker.Connection {
+		public Worker(List<String> command) throws IOException {
+			super(command);
+		}
+	}
+
+	private WorkerPool(int size, int heap) {
+		this.size = size;
+		this.heap = heap;
+	}
+
+	/**
+	 * Returns the pool for the given project's settings or
+	 * {@code null} if the project's files are to be minified in
+	 * the IDE.
+	 *
+	 * @param prefs the preferences store with the project's properties
+	 * @return the pool
+	 */
+	public static synchronized WorkerPool of(IEclipsePreferences prefs) {
+		int size = prefs.getInt(MinifyBuilder.WORKER_PROCESSES, 0);
+		if (size <= 0) {
+			return null;
+		}
+		int heap = prefs.getInt(MinifyBuilder.WORKER_HEAP, DEFAULT_HEAP);
+		return pools.computeIfAbsent(size + "/" + heap, 
+				key -> new WorkerPool(size, heap));
+	}
+
+	/**
+	 * Has a worker minify the source from the request. Blocks until
+	 * a worker is available.
+	 *
+	 * @param request the request
+	 * @param result the output, closed when done
+	 * @param mapResult the output for the source map, closed when done,
+	 * may be {@code null} if no map has been requested
+	 * @param reporter receives the problems found
+	 * @param console receives the compiler's messages,
+	 * may be {@code null}
+	 * @return {@code false} if the source could not be parsed
+	 * (details have been passed to the reporter)
+	 * @throws MinifyWorker.TerminatedException if the worker
+	 * terminated again when the request was repeated
+	 * @throws IOException if the worker failed
+	 */
+	public boolean minify(MinifyWorker.Request request, OutputStream result,
+			OutputStream mapResult, ProblemReporter reporter, 
+			PrintStream console) throws IOException {
+		return use(worker -> worker.minify(
+				request, result, mapResult, reporter, console));
+	}
+
+	/**
+	 * Has a worker compile the bundle from the request. Blocks until
+	 * a worker is available.
+	 *
+	 * @param request the request
+	 * @param outputs provides the outputs for the paths of the 
+	 * chunks and source maps, which are closed when done
+	 * @param reporter receives the problems found
+	 * @param console receives the compiler's messages,
+	 * may be {@code null}
+	 * @return {@code false} if the compilation failed
+	 * (details have been passed to the reporter)
+	 * @throws MinifyWorker.TerminatedException if the worker
+	 * terminated again when the request was repeated
+	 * @throws IOException if the worker failed
+	 */
+	public boolean compile(MinifyWorker.Request request, 
+			Function<String,OutputStream> outputs, 
+			GccBundleEngine.MemberReporter reporter, 
+			PrintStream console) throws IOException {
+		return use(worker -> worker.compile(
+				request, outputs, reporter, console));
+	}
+	
+	@FunctionalInterface
+	private interface WorkerCall {
+		boolean call(Worker worker) throws IOException;
+	}
+	
+	private boolean use(WorkerCall call) throws IOException {
+		boolean repeated = false;
+		while (true) {
+			Worker worker = acquire(repeated);
+			boolean reusable = false;
+			try {
+				boolean success = call.call(worker);
+				reusable = true;
+				return success;
+			} catch (MinifyWorker.TerminatedException e) {
+				if (repeated) {
+					throw e;
+				}
+				repeated = true;
+			} finally {
+				release(worker, reusable);
+			}
+		}
+	}
+
+	/**
+	 * Returns an idle worker or a newly started worker.
+	 * 
+	 * @param fresh if a newly started worker is required
+	 * @return the worker
+	 * @throws IOException
+	 */
+	private synchronized Worker acquire(boolean fresh) throws IOException {
+		while (busy >= size) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Minification cancelled");
+			}
+		}
+		busy += 1;
+		while (!fresh && !idle.isEmpty()) {
+			Worker worker = idle.pollFirst();
+			if (worker.isAlive()) {
+				return worker;
+			}
+			worker.close();
+		}
+		try {
+			return new Worker(command());
+		} catch (IOException e) {
+			busy -= 1;
+			notifyAll();
+			throw e;
+		}
+	}
+
+	private synchronized void release(Worker worker, boolean reusable) {
+		busy -= 1;
+		if (reusable && worker.isAlive() && worker.requests() < MAX_REQUESTS
+				&& worker.heapUsage() < MAX_HEAP_USAGE
+				&& idle.size() + busy < size) {
+			// Most recently used first, keeps the others warm as spares
+			idle.addFirst(worker);
+		} else {
+			worker.close();
+		}
+		notifyAll();
+	}
+
+	private List<String> command() throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home")
+				+ File.separator + "bin" + File.separator + "java");
+		command.add("-Xmx" + heap + "m");
+		command.add("-cp");
+		command.add(String.join(File.pathSeparator, classpath()));
+		command.add(MinifyWorker.class.getName());
+		return command;
+	}
+
+	/**
+	 * Returns the class path of the plugin, with the libraries
+	 * extracted from the plugin's jar if necessary.
+	 */
+	private static synchronized List<String> classpath() throws IOException {
+		if (classpath != null) {
+			return classpath;
+		}
+		Bundle bundle = FrameworkUtil.getBundle(WorkerPool.class);
+		List<String> result = new ArrayList<>();
+		File bundleFile = FileLocator.getBundleFile(bundle);
+		if (bundleFile.isDirectory()) {
+			// Either unpacked or launched from the workspace
+			File bin = new File(bundleFile, "bin");
+			result.add((bin.isDirectory() ? bin : bundleFile).getPath());
+		} else {
+			result.add(bundleFile.getPath());
+		}
+		String header = bundle.getHeaders().get(Constants.BUNDLE_CLASSPATH);
+		if (header != null) {
+			for (String entry: header.split(",")) {
+				entry = entry.trim();
+				if (entry.isEmpty() || entry.equals(".")) {
+					continue;
+				}
+				URL url = FileLocator.find(bundle, new Path(entry), null);
+				if (url != null) {
+					result.add(new File(FileLocator.toFileURL(url).getPath())
+							.getPath());
+				}
+			}
+		}
+		classpath = result;
+		return classpath;
+	}
+}
@@ -1,23 +1,23 @@
 package org.jdrupes.eclipse.minify.plugin;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.Writer;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.jdrupes.eclipse.minify.engine.MinifyWorker;
+import org.jdrupes.eclipse.minify.engine.YuiCssEngine;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder.MinifyRunner;
 
-import com.yahoo.platform.yui.compressor.CssCompressor;
-
-public class YuiCssMinifier extends YuiMinifier {
+public class YuiCssMinifier extends MinifyRunner {
 	private IFile srcFile;
 	private OutputStream out;
 	private String inCharset;
 	private String outCharset;
+	private WorkerPool workers;
+	private Map<String,String> properties;
+	private boolean failed;
 
 	public YuiCssMinifier(MinifyBuilder builder, IFile srcFile, 
 			IFile destFile, OutputStream out, IEclipsePreferences prefs)
@@ -27,23 +27,35 @@ public class YuiCssMinifier extends YuiMinifier {
 		this.inCharset = srcFile.getCharset();
 		this.out = out;
 		this.outCharset = destFile.exists() ? destFile.getCharset() : srcFile.getCharset();
+		workers = WorkerPool.of(prefs);
+		if (workers != null) {
+			properties = MinifyBuilder.optionProperties(srcFile, prefs);
+		}
 	}
 
+	/**
+	 * Returns the charset of the result or {@code null} if the
+	 * worker terminated (no result).
+	 */
 	@Override
 	public String destCharset() {
-		return outCharset;
+		return failed ? null : outCharset;
 	}
 	
 	@Override
 	protected void runSafe() throws Exception {
-		try (Reader reader = new BufferedReader(new InputStreamReader(
-				srcFile.getContents(), inCharset));
-				Writer writer = new OutputStreamWriter(out, outCharset)) {
+		if (workers != null) {
 			try {
-				new CssCompressor(reader).compress(writer, -1);
-			} finally {
-				writer.close();
+				workers.minify(new MinifyWorker.Request(srcFile.getName(),
+						inCharset, outCharset, properties)
+						.setSource(readSource(srcFile)), out, null,
+						problemReporter(srcFile), null);
+			} catch (MinifyWorker.TerminatedException e) {
+				reportTerminated(srcFile, e);
+				failed = true;
 			}
+			return;
 		}
+		new YuiCssEngine().minify(readSource(srcFile), inCharset, out, outCharset);
 	}
-}
\ No newline at end of file
+}
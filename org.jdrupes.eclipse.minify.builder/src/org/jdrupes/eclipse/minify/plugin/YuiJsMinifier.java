@@ -1,52 +1,71 @@
 package org.jdrupes.eclipse.minify.plugin;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.jdrupes.eclipse.minify.engine.MinifyWorker;
+import org.jdrupes.eclipse.minify.engine.YuiJsEngine;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder.MinifyRunner;
+import org.mozilla.javascript.EvaluatorException;
 
-import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
-
-public class YuiJsMinifier extends YuiMinifier {
-	private JavaScriptCompressor compressor;
-	private boolean preserveSemicolons;
-	private boolean disableOptimizations;
-	private Writer writer;
+public class YuiJsMinifier extends MinifyRunner {
+	private IFile srcFile;
+	private OutputStream out;
+	private YuiJsEngine engine;
+	private String inCharset;
 	private String outCharset;
+	private boolean failed;
+	private WorkerPool workers;
+	private Map<String,String> properties;
 	
 	public YuiJsMinifier(MinifyBuilder builder, IFile srcFile, IFile destFile, 
 			OutputStream out, IEclipsePreferences prefs)
 		throws IOException, CoreException {
 		super (builder);
-		preserveSemicolons = prefs.getBoolean(
-				PrefsAccess.preferenceKey(srcFile, MinifyBuilder.YUI_PRESERVE_SEMICOLONS), true);
-		disableOptimizations = prefs.getBoolean(
-				PrefsAccess.preferenceKey(srcFile, MinifyBuilder.YUI_DISABLE_OPTIMIZATIONS), true);
+		this.srcFile = srcFile;
+		this.out = out;
+		engine = new YuiJsEngine(MinifyBuilder.options(srcFile, prefs));
+		inCharset = srcFile.getCharset();
 		outCharset = destFile.exists() ? destFile.getCharset() : srcFile.getCharset();
-		writer = new OutputStreamWriter(out, outCharset);
-		compressor = new JavaScriptCompressor(new BufferedReader(
-				new InputStreamReader(srcFile.getContents(), srcFile.getCharset())), 
-				new YuiMinifier.MinifyErrorHandler(srcFile));
+		workers = WorkerPool.of(prefs);
+		if (workers != null) {
+			properties = MinifyBuilder.optionProperties(srcFile, prefs);
+		}
 	}
 
+	/**
+	 * Returns the charset of the result or {@code null} if the
+	 * source could not be parsed or the worker terminated (no result).
+	 */
 	@Override
 	public String destCharset() {
-		return outCharset;
+		return failed ? null : outCharset;
 	}
 	
 	@Override
 	protected void runSafe() throws Exception {
+		if (workers != null) {
+			try {
+				failed = !workers.minify(new MinifyWorker.Request(
+						srcFile.getName(), inCharset, outCharset, properties)
+						.setSource(readSource(srcFile)), out, null,
+						problemReporter(srcFile), null);
+			} catch (MinifyWorker.TerminatedException e) {
+				reportTerminated(srcFile, e);
+				failed = true;
+			}
+			return;
+		}
 		try {
-			compressor.compress(writer, 512, false, false, 
-					preserveSemicolons, disableOptimizations);
-		} finally {
-			writer.close();
+			engine.minify(readSource(srcFile), inCharset, out, outCharset, 
+					problemReporter(srcFile));
+		} catch (EvaluatorException e) {
+			// Reported as marker
+			failed = true;
 		}
 	}
-}
\ No newline at end of file
+}
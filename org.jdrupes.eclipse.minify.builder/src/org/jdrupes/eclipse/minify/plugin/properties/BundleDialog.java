@@ -0,0 +1,192 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+import org.jdrupes.eclipse.minify.plugin.Bundle;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder;
+
+/**
+ * Edits the definition of a {@link Bundle}.
+ */
+public class BundleDialog extends Dialog {
+
+	private static final String[][] OPTIMIZATIONS = new String[][] {
+		{ MinifyBuilder.GCC_OPT_WHITESPACE_ONLY, MinifyBuilder.GCC_OPT_SIMPLE, 
+			MinifyBuilder.GCC_OPT_ADVANCED },
+		{ "Whitespace only", "Simple", "Advanced"}
+	};
+	
+	private Bundle bundle;
+	private Text outputPath;
+	private Text sources;
+	private Text chunks;
+	private Combo optimization;
+	private Button createMap;
+	private Button includeSource;
+	
+	/**
+	 * Creates a dialog for a new bundle ({@code bundle} is {@code null})
+	 * or an existing bundle.
+	 * 
+	 * @param parentShell the parent shell
+	 * @param bundle the bundle
+	 */
+	public BundleDialog(Shell parentShell, Bundle bundle) {
+		super(parentShell);
+		this.bundle = bundle;
+	}
+
+	/**
+	 * Returns the bundle as defined in the dialog.
+	 * 
+	 * @return the bundle
+	 */
+	public Bundle bundle() {
+		return bundle;
+	}
+	
+	@Override
+	protected void configureShell(Shell newShell) {
+		super.configureShell(newShell);
+		newShell.setText("JavaScript Bundle");
+	}
+	
+	@Override
+	protected Control createDialogArea(Composite parent) {
+		Composite composite = (Composite)super.createDialogArea(parent);
+		((GridLayout)composite.getLayout()).numColumns = 2;
+		
+		new Label(composite, SWT.NONE).setText("&Output file:");
+		outputPath = new Text(composite, SWT.BORDER);
+		outputPath.setToolTipText("Project relative path");
+		GridData data = new GridData(GridData.FILL_HORIZONTAL);
+		data.widthHint = 300;
+		outputPath.setLayoutData(data);
+		
+		Label sourcesLabel = new Label(composite, SWT.NONE);
+		sourcesLabel.setText("&Sources:");
+		sourcesLabel.setLayoutData(new GridData(GridData.VERTICAL_ALIGN_BEGINNING));
+		sources = new Text(composite, SWT.BORDER | SWT.MULTI | SWT.V_SCROLL);
+		sources.setToolTipText("One project relative path or pattern "
+				+ "(with \"*\", \"?\" or \"**\") per line, in compilation order");
+		data = new GridData(GridData.FILL_BOTH);
+		data.heightHint = 120;
+		sources.setLayoutData(data);
+		
+		Label chunksLabel = new Label(composite, SWT.NONE);
+		chunksLabel.setText("&Chunks:");
+		chunksLabel.setLayoutData(new GridData(GridData.VERTICAL_ALIGN_BEGINNING));
+		chunks = new Text(composite, SWT.BORDER | SWT.MULTI | SWT.V_SCROLL);
+		chunks.setToolTipText("Optional, one chunk per line as \"name=pattern ...\". "
+				+ "Sources not selected by a chunk form the base chunk.");
+		data = new GridData(GridData.FILL_BOTH);
+		data.heightHint = 60;
+		chunks.setLayoutData(data);
+		
+		new Label(composite, SWT.NONE).setText("O&ptimization:");
+		optimization = new Combo(composite, SWT.READ_ONLY);
+		for (int i = 0; i < OPTIMIZATIONS[0].length; i++) {
+			optimization.add(OPTIMIZATIONS[1][i]);
+		}
+		optimization.setText(OPTIMIZATIONS[1][1]);
+		
+		new Label(composite, SWT.NONE);
+		createMap = new Button(composite, SWT.CHECK);
+		createMap.setText("Create map file");
+		new Label(composite, SWT.NONE);
+		includeSource = new Button(composite, SWT.CHECK);
+		includeSource.setText("Include source in map file");
+		createMap.addListener(SWT.Selection, 
+				e -> includeSource.setEnabled(createMap.getSelection()));
+		
+		if (bundle != null) {
+			outputPath.setText(bundle.outputPath());
+			sources.setText(String.join("\n", bundle.sources()));
+			List<String> chunkDefs = new ArrayList<>();
+			for (Bundle.Chunk chunk: bundle.chunks()) {
+				chunkDefs.add(chunk.toString());
+			}
+			chunks.setText(String.join("\n", chunkDefs));
+			for (int i = 0; i < OPTIMIZATIONS[0].length; i++) {
+				if (OPTIMIZATIONS[0][i].equals(bundle.optimization())) {
+					optimization.setText(OPTIMIZATIONS[1][i]);
+				}
+			}
+			createMap.setSelection(bundle.createMapFile());
+			includeSource.setSelection(bundle.includeSource());
+		}
+		includeSource.setEnabled(createMap.getSelection());
+		return composite;
+	}
+
+	@Override
+	protected void okPressed() {
+		String output = outputPath.getText().trim();
+		if (output.isEmpty() || !output.endsWith(".js")) {
+			MessageDialog.openError(getShell(), "Invalid Bundle", 
+					"The output file must be a project relative path "
+					+ "of a \".js\" file.");
+			return;
+		}
+		List<String> sourceList = new ArrayList<>();
+		for (String line: sources.getText().split("\\r?\\n")) {
+			if (!line.trim().isEmpty()) {
+				sourceList.add(line.trim());
+			}
+		}
+		List<Bundle.Chunk> chunkList = new ArrayList<>();
+		for (String line: chunks.getText().split("\\r?\\n")) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			Bundle.Chunk chunk = Bundle.Chunk.parse(line.trim());
+			if (chunk == null) {
+				MessageDialog.openError(getShell(), "Invalid Bundle", 
+						"Invalid chunk definition: " + line.trim());
+				return;
+			}
+			chunkList.add(chunk);
+		}
+		bundle = new Bundle(output, sourceList);
+		bundle.setChunks(chunkList);
+		for (int i = 0; i < OPTIMIZATIONS[0].length; i++) {
+			if (OPTIMIZATIONS[1][i].equals(optimization.getText())) {
+				bundle.setOptimization(OPTIMIZATIONS[0][i]);
+			}
+		}
+		bundle.setCreateMapFile(createMap.getSelection());
+		bundle.setIncludeSource(includeSource.getSelection());
+		super.okPressed();
+	}
+}
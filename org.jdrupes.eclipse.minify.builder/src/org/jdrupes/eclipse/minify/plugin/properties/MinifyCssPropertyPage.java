@@ -23,8 +23,9 @@ import org.jdrupes.eclipse.minify.plugin.MinifyBuilder;
 public class MinifyCssPropertyPage extends MinifyPropertyPage {
 
 	private static final String[][] OPTIONS = new String[][] {
-		{ MinifyBuilder.DONT_MINIFY, MinifyBuilder.YUI_COMPRESSOR },
-		{ "(none)", "YUI Compressor" }
+		{ MinifyBuilder.DONT_MINIFY, MinifyBuilder.YUI_COMPRESSOR, 
+			MinifyBuilder.STREAMING_CSS },
+		{ "(none)", "YUI Compressor", "Built-in (streaming)" }
 	};
 
 	@Override
@@ -31,14 +31,17 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
 import org.jdrupes.eclipse.minify.plugin.MinifyBuilder;
 import org.osgi.service.prefs.Preferences;
 
 public class MinifyJsPropertyPage extends MinifyPropertyPage {
 
 	private static final String[][] OPTIONS = new String[][] {
-		{ MinifyBuilder.DONT_MINIFY, MinifyBuilder.YUI_COMPRESSOR, MinifyBuilder.GOOGLE_CLOSURE_COMPILER },
-		{ "(none)", "YUI Compressor", "Google Closure Compiler" }
+		{ MinifyBuilder.DONT_MINIFY, MinifyBuilder.YUI_COMPRESSOR, 
+			MinifyBuilder.GOOGLE_CLOSURE_COMPILER, MinifyBuilder.WHITESPACE_JS },
+		{ "(none)", "YUI Compressor", "Google Closure Compiler", 
+			"Built-in (whitespace only)" }
 	};
 
 	protected Composite optionsStack;
@@ -50,6 +53,7 @@ public class MinifyJsPropertyPage extends MinifyPropertyPage {
 	protected Combo gccOptimization;
 	protected Button gccCreateMap;
 	protected Button gccIncludeSource;
+	protected Text gccExterns;
 	protected String[][] optimizations = new String[][] {
 			{ MinifyBuilder.GCC_OPT_WHITESPACE_ONLY, MinifyBuilder.GCC_OPT_SIMPLE, 
 				MinifyBuilder.GCC_OPT_ADVANCED },
@@ -126,6 +130,15 @@ public class MinifyJsPropertyPage extends MinifyPropertyPage {
 		gccIncludeSource = createCheckbox(gccOptGroup, "Include source in map file", 
 				MinifyBuilder.GCC_INCLUDE_SOURCE, false, prefs);
 		gccIncludeSource.setEnabled(gccCreateMap.getSelection());
+		entry = createDefaultComposite(gccOptGroup);
+		Label externsLabel = new Label(entry, SWT.NONE);
+		externsLabel.setText("Externs:");
+		gccExterns = new Text(entry, SWT.BORDER);
+		gccExterns.setToolTipText("Comma separated list of project relative paths");
+		gccExterns.setText(prefs.get(preferenceKey(MinifyBuilder.GCC_EXTERNS), ""));
+		GridData externsData = new GridData();
+		externsData.widthHint = 250;
+		gccExterns.setLayoutData(externsData);
 		gccCreateMap.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
@@ -144,7 +157,9 @@ public class MinifyJsPropertyPage extends MinifyPropertyPage {
 	}
 
 	private void updateOptGroups() {
-		if (selection().getText().equals(OPTIONS[1][0])) {
+		if (selection().getText().equals(OPTIONS[1][0])
+				|| selection().getText().equals(OPTIONS[1][3])) {
+			// No options
 			optionsStack.setVisible(false);
 			return;
 		}
@@ -165,6 +180,7 @@ public class MinifyJsPropertyPage extends MinifyPropertyPage {
 		prefs.remove(preferenceKey(MinifyBuilder.GCC_OPTIMIZATION));
 		prefs.remove(preferenceKey(MinifyBuilder.GCC_CREATE_MAP_FILE));
 		prefs.remove(preferenceKey(MinifyBuilder.GCC_INCLUDE_SOURCE));
+		prefs.remove(preferenceKey(MinifyBuilder.GCC_EXTERNS));
 		if (selection().getText().equals(OPTIONS[1][1])) {
 			prefs.putBoolean(preferenceKey(MinifyBuilder.YUI_PRESERVE_SEMICOLONS),
 					preserveSemicolons.getSelection());
@@ -181,6 +197,10 @@ public class MinifyJsPropertyPage extends MinifyPropertyPage {
 					gccCreateMap.getSelection());
 			prefs.putBoolean(preferenceKey(MinifyBuilder.GCC_INCLUDE_SOURCE), 
 					gccIncludeSource.getSelection());
+			if (!gccExterns.getText().trim().isEmpty()) {
+				prefs.put(preferenceKey(MinifyBuilder.GCC_EXTERNS), 
+						gccExterns.getText().trim());
+			}
 		}
 			
 		return true;
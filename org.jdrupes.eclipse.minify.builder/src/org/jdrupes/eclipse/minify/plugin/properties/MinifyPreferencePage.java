@@ -0,0 +1,154 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin.properties;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.jface.preference.PreferencePage;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPreferencePage;
+import org.jdrupes.eclipse.minify.plugin.BuildProfile;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder;
+import org.jdrupes.eclipse.minify.plugin.MinifyNature;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * The workspace wide settings of the builder, i.e. the selection
+ * of the {@link BuildProfile}.
+ */
+public class MinifyPreferencePage extends PreferencePage
+	implements IWorkbenchPreferencePage {
+
+	private static final String PROFILE_TITLE = "Build &profile:";
+	private static final String NO_PROFILE = "(none)";
+
+	private Combo profile;
+
+	@Override
+	public void init(IWorkbench workbench) {
+		setDescription("The build profile overrides the settings of all "
+				+ "projects that use the Minify builder.");
+	}
+
+	/**
+	 * @see PreferencePage#createContents(Composite)
+	 */
+	protected Control createContents(Composite parent) {
+		Composite composite = new Composite(parent, SWT.NONE);
+		GridLayout layout = new GridLayout();
+		layout.numColumns = 2;
+		composite.setLayout(layout);
+		GridData data = new GridData(GridData.FILL);
+		data.grabExcessHorizontalSpace = true;
+		composite.setLayoutData(data);
+
+		Label profileLabel = new Label(composite, SWT.NONE);
+		profileLabel.setText(PROFILE_TITLE);
+		profile = new Combo(composite, SWT.DROP_DOWN);
+		profile.setItems(new String[] {
+				NO_PROFILE, BuildProfile.DEV, BuildProfile.RELEASE });
+		String selected = BuildProfile.workspacePreferences()
+				.get(BuildProfile.PROFILE, "");
+		profile.setText(selected.isEmpty() ? NO_PROFILE : selected);
+		if (BuildProfile.selectedByLaunch()) {
+			Label note = new Label(composite, SWT.WRAP);
+			note.setText("Overridden for this launch by -D"
+					+ BuildProfile.PROFILE_PROPERTY + "="
+					+ BuildProfile.active().name());
+			GridData noteData = new GridData(GridData.FILL_HORIZONTAL);
+			noteData.horizontalSpan = 2;
+			note.setLayoutData(noteData);
+		}
+		return composite;
+	}
+
+	protected void performDefaults() {
+		super.performDefaults();
+		profile.setText(NO_PROFILE);
+	}
+
+	public boolean performOk() {
+		String selected = profile.getText().trim();
+		if (selected.equals(NO_PROFILE)) {
+			selected = "";
+		}
+		IEclipsePreferences prefs = BuildProfile.workspacePreferences();
+		if (selected.equals(prefs.get(BuildProfile.PROFILE, ""))) {
+			return true;
+		}
+		try {
+			if (selected.isEmpty()) {
+				prefs.remove(BuildProfile.PROFILE);
+			} else {
+				prefs.put(BuildProfile.PROFILE, selected);
+			}
+			prefs.flush();
+		} catch (BackingStoreException e) {
+			return false;
+		}
+		if (!BuildProfile.selectedByLaunch()) {
+			rebuild();
+		}
+		return true;
+	}
+
+	private void rebuild() {
+		Job job = new Job("Applying build profile") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				IProject[] projects
+					= ResourcesPlugin.getWorkspace().getRoot().getProjects();
+				SubMonitor subMonitor
+					= SubMonitor.convert(monitor, projects.length);
+				for (IProject project: projects) {
+					try {
+						if (project.isOpen()
+								&& project.hasNature(MinifyNature.NATURE_ID)) {
+							project.build(IncrementalProjectBuilder
+									.FULL_BUILD, MinifyBuilder.BUILDER_ID,
+									null, subMonitor.split(1));
+						} else {
+							subMonitor.worked(1);
+						}
+					} catch (CoreException e) {
+						return e.getStatus();
+					}
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setRule(ResourcesPlugin.getWorkspace().getRuleFactory().buildRule());
+		job.schedule();
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Group;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
+import org.eclipse.ui.dialogs.PropertyPage;
+import org.jdrupes.eclipse.minify.engine.MinifyRules;
+import org.jdrupes.eclipse.minify.plugin.Bundle;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder;
+import org.jdrupes.eclipse.minify.plugin.ResourceIndex;
+import org.jdrupes.eclipse.minify.plugin.WorkerPool;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * The project wide settings of the builder.
+ */
+public class MinifyProjectPropertyPage extends PropertyPage {
+
+	private static final String PARALLELISM_TITLE = "&Parallel minifications:";
+	private static final String GZIP_LEVEL_TITLE 
+		= "&Gzip variants (compression level, 0 for none):";
+	private static final String WORKER_PROCESSES_TITLE
+		= "&Worker JVMs for YUI and GCC (0 to run in the IDE):";
+	private static final String WORKER_HEAP_TITLE = "Worker &heap (MB):";
+	
+	private Spinner parallelism;
+	private Spinner gzipLevel;
+	private Spinner workerProcesses;
+	private Spinner workerHeap;
+	private Button asynchronous;
+	private List<Bundle> bundles;
+	private List<Bundle> removedBundles = new ArrayList<>();
+	private org.eclipse.swt.widgets.List bundleList;
+	private List<MinifyRules.Rule> rules;
+	private org.eclipse.swt.widgets.List ruleList;
+
+	protected IProject project() {
+		return ((IResource)getElement()).getProject();
+	}
+	
+	protected IEclipsePreferences builderPreferences() {
+		return new ProjectScope(project()).getNode(MinifyBuilder.BUILDER_ID);
+	}
+	
+	/**
+	 * @see PreferencePage#createContents(Composite)
+	 */
+	protected Control createContents(Composite parent) {
+		Composite composite = new Composite(parent, SWT.NONE);
+		GridLayout layout = new GridLayout();
+		composite.setLayout(layout);
+		GridData data = new GridData(GridData.FILL);
+		data.grabExcessHorizontalSpace = true;
+		composite.setLayoutData(data);
+
+		IEclipsePreferences prefs = builderPreferences();
+		
+		Composite entry = createDefaultComposite(composite);
+		Label parallelismLabel = new Label(entry, SWT.NONE);
+		parallelismLabel.setText(PARALLELISM_TITLE);
+		parallelism = new Spinner(entry, SWT.BORDER);
+		parallelism.setMinimum(1);
+		parallelism.setMaximum(256);
+		parallelism.setSelection(MinifyBuilder.parallelism(prefs));
+		Label gzipLevelLabel = new Label(entry, SWT.NONE);
+		gzipLevelLabel.setText(GZIP_LEVEL_TITLE);
+		gzipLevel = new Spinner(entry, SWT.BORDER);
+		gzipLevel.setMinimum(0);
+		gzipLevel.setMaximum(9);
+		gzipLevel.setSelection(prefs.getInt(MinifyBuilder.GZIP_LEVEL, 0));
+		Label workerProcessesLabel = new Label(entry, SWT.NONE);
+		workerProcessesLabel.setText(WORKER_PROCESSES_TITLE);
+		workerProcesses = new Spinner(entry, SWT.BORDER);
+		workerProcesses.setMinimum(0);
+		workerProcesses.setMaximum(64);
+		workerProcesses.setSelection(
+				prefs.getInt(MinifyBuilder.WORKER_PROCESSES, 0));
+		Label workerHeapLabel = new Label(entry, SWT.NONE);
+		workerHeapLabel.setText(WORKER_HEAP_TITLE);
+		workerHeap = new Spinner(entry, SWT.BORDER);
+		workerHeap.setMinimum(64);
+		workerHeap.setMaximum(65536);
+		workerHeap.setIncrement(256);
+		workerHeap.setSelection(
+				prefs.getInt(MinifyBuilder.WORKER_HEAP, WorkerPool.DEFAULT_HEAP));
+		asynchronous = new Button(composite, SWT.CHECK);
+		asynchronous.setText("Minify in &background (after the build)");
+		asynchronous.setSelection(prefs.getBoolean(MinifyBuilder.ASYNCHRONOUS, false));
+		
+		addRulesSection(composite, prefs);
+		addBundlesSection(composite, prefs);
+		
+		return composite;
+	}
+
+	private void addRulesSection(Composite parent, IEclipsePreferences prefs) {
+		Group group = new Group(parent, SWT.NONE);
+		group.setText("Rules (later rules take precedence, "
+				+ "file settings override rules)");
+		GridLayout layout = new GridLayout();
+		layout.numColumns = 2;
+		group.setLayout(layout);
+		group.setLayoutData(new GridData(GridData.FILL_BOTH));
+		
+		rules = new ArrayList<>(ResourceIndex.of(prefs).rules().rules());
+		ruleList = new org.eclipse.swt.widgets.List(
+				group, SWT.BORDER | SWT.SINGLE | SWT.V_SCROLL);
+		GridData data = new GridData(GridData.FILL_BOTH);
+		data.heightHint = 100;
+		data.widthHint = 250;
+		ruleList.setLayoutData(data);
+		updateRuleList();
+		
+		Composite buttons = new Composite(group, SWT.NONE);
+		buttons.setLayout(new GridLayout());
+		buttons.setLayoutData(new GridData(GridData.VERTICAL_ALIGN_BEGINNING));
+		Button add = createButton(buttons, "A&dd...");
+		add.addListener(SWT.Selection, e -> {
+			RuleDialog dialog = new RuleDialog(getShell(), null);
+			if (dialog.open() == RuleDialog.OK) {
+				rules.add(dialog.rule());
+				updateRuleList();
+				ruleList.select(rules.size() - 1);
+			}
+		});
+		Button edit = createButton(buttons, "Ed&it...");
+		edit.addListener(SWT.Selection, e -> {
+			int index = ruleList.getSelectionIndex();
+			if (index < 0) {
+				return;
+			}
+			RuleDialog dialog = new RuleDialog(getShell(), rules.get(index));
+			if (dialog.open() == RuleDialog.OK) {
+				rules.set(index, dialog.rule());
+				updateRuleList();
+				ruleList.select(index);
+			}
+		});
+		Button remove = createButton(buttons, "Re&move");
+		remove.addListener(SWT.Selection, e -> {
+			int index = ruleList.getSelectionIndex();
+			if (index >= 0) {
+				rules.remove(index);
+				updateRuleList();
+			}
+		});
+		Button up = createButton(buttons, "&Up");
+		up.addListener(SWT.Selection, e -> moveRule(-1));
+		Button down = createButton(buttons, "Do&wn");
+		down.addListener(SWT.Selection, e -> moveRule(1));
+	}
+
+	private void moveRule(int offset) {
+		int index = ruleList.getSelectionIndex();
+		if (index < 0 || index + offset < 0 || index + offset >= rules.size()) {
+			return;
+		}
+		rules.add(index + offset, rules.remove(index));
+		updateRuleList();
+		ruleList.select(index + offset);
+	}
+	
+	private void updateRuleList() {
+		ruleList.removeAll();
+		for (MinifyRules.Rule rule: rules) {
+			ruleList.add(rule.pattern() + " : " + rule.properties()
+					.getOrDefault(MinifyBuilder.MINIFIER, MinifyBuilder.DONT_MINIFY));
+		}
+	}
+
+	private void addBundlesSection(Composite parent, IEclipsePreferences prefs) {
+		Group group = new Group(parent, SWT.NONE);
+		group.setText("JavaScript bundles");
+		GridLayout layout = new GridLayout();
+		layout.numColumns = 2;
+		group.setLayout(layout);
+		group.setLayoutData(new GridData(GridData.FILL_BOTH));
+		
+		bundles = Bundle.bundles(prefs);
+		bundleList = new org.eclipse.swt.widgets.List(
+				group, SWT.BORDER | SWT.SINGLE | SWT.V_SCROLL);
+		GridData data = new GridData(GridData.FILL_BOTH);
+		data.heightHint = 100;
+		data.widthHint = 250;
+		bundleList.setLayoutData(data);
+		updateBundleList();
+		
+		Composite buttons = new Composite(group, SWT.NONE);
+		buttons.setLayout(new GridLayout());
+		buttons.setLayoutData(new GridData(GridData.VERTICAL_ALIGN_BEGINNING));
+		Button add = createButton(buttons, "&Add...");
+		add.addListener(SWT.Selection, e -> {
+			BundleDialog dialog = new BundleDialog(getShell(), null);
+			if (dialog.open() == BundleDialog.OK) {
+				replaceBundle(null, dialog.bundle());
+			}
+		});
+		Button edit = createButton(buttons, "&Edit...");
+		edit.addListener(SWT.Selection, e -> {
+			int index = bundleList.getSelectionIndex();
+			if (index < 0) {
+				return;
+			}
+			BundleDialog dialog = new BundleDialog(getShell(), bundles.get(index));
+			if (dialog.open() == BundleDialog.OK) {
+				replaceBundle(bundles.get(index), dialog.bundle());
+			}
+		});
+		Button remove = createButton(buttons, "&Remove");
+		remove.addListener(SWT.Selection, e -> {
+			int index = bundleList.getSelectionIndex();
+			if (index >= 0) {
+				replaceBundle(bundles.get(index), null);
+			}
+		});
+	}
+
+	private Button createButton(Composite parent, String label) {
+		Button button = new Button(parent, SWT.PUSH);
+		button.setText(label);
+		button.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		return button;
+	}
+	
+	private void replaceBundle(Bundle oldBundle, Bundle newBundle) {
+		if (oldBundle != null) {
+			bundles.remove(oldBundle);
+			removedBundles.add(oldBundle);
+		}
+		if (newBundle != null) {
+			bundles.removeIf(b -> b.outputPath().equals(newBundle.outputPath()));
+			bundles.add(newBundle);
+			bundles.sort((a, b) -> a.outputPath().compareTo(b.outputPath()));
+		}
+		updateBundleList();
+	}
+	
+	private void updateBundleList() {
+		bundleList.removeAll();
+		for (Bundle bundle: bundles) {
+			bundleList.add(bundle.outputPath());
+		}
+	}
+
+	protected Composite createDefaultComposite(Composite parent) {
+		Composite composite = new Composite(parent, SWT.NULL);
+		GridLayout layout = new GridLayout();
+		layout.numColumns = 2;
+		composite.setLayout(layout);
+
+		GridData data = new GridData();
+		data.verticalAlignment = GridData.FILL;
+		data.horizontalAlignment = GridData.FILL;
+		composite.setLayoutData(data);
+
+		return composite;
+	}
+
+	protected void performDefaults() {
+		super.performDefaults();
+		parallelism.setSelection(Runtime.getRuntime().availableProcessors());
+		gzipLevel.setSelection(0);
+		workerProcesses.setSelection(0);
+		workerHeap.setSelection(WorkerPool.DEFAULT_HEAP);
+		asynchronous.setSelection(false);
+	}
+
+	public boolean performOk() {
+		try {
+			IEclipsePreferences prefs = builderPreferences();
+			if (parallelism.getSelection() 
+					== Runtime.getRuntime().availableProcessors()) {
+				prefs.remove(MinifyBuilder.PARALLELISM);
+			} else {
+				prefs.putInt(MinifyBuilder.PARALLELISM, parallelism.getSelection());
+			}
+			if (gzipLevel.getSelection() == 0) {
+				prefs.remove(MinifyBuilder.GZIP_LEVEL);
+			} else {
+				prefs.putInt(MinifyBuilder.GZIP_LEVEL, gzipLevel.getSelection());
+			}
+			if (workerProcesses.getSelection() == 0) {
+				prefs.remove(MinifyBuilder.WORKER_PROCESSES);
+			} else {
+				prefs.putInt(MinifyBuilder.WORKER_PROCESSES, 
+						workerProcesses.getSelection());
+			}
+			if (workerHeap.getSelection() == WorkerPool.DEFAULT_HEAP) {
+				prefs.remove(MinifyBuilder.WORKER_HEAP);
+			} else {
+				prefs.putInt(MinifyBuilder.WORKER_HEAP, workerHeap.getSelection());
+			}
+			if (asynchronous.getSelection()) {
+				prefs.putBoolean(MinifyBuilder.ASYNCHRONOUS, true);
+			} else {
+				prefs.remove(MinifyBuilder.ASYNCHRONOUS);
+			}
+			if (rules.isEmpty()) {
+				prefs.remove(MinifyRules.KEY);
+			} else {
+				prefs.put(MinifyRules.KEY, new MinifyRules(rules).encode());
+			}
+			for (Bundle bundle: removedBundles) {
+				bundle.remove(prefs);
+			}
+			for (Bundle bundle: bundles) {
+				bundle.store(prefs);
+			}
+			prefs.flush();
+		} catch (BackingStoreException e) {
+			return false;
+		}
+		return true;
+	}
+
+}
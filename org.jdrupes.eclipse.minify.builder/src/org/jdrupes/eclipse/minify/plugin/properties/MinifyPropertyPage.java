@@ -23,6 +23,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
@@ -31,6 +32,7 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.dialogs.PropertyPage;
 import org.jdrupes.eclipse.minify.plugin.MinifyBuilder;
 import org.jdrupes.eclipse.minify.plugin.PrefsAccess;
+import org.jdrupes.eclipse.minify.plugin.ResourceIndex;
 import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
@@ -40,6 +42,7 @@ public abstract class MinifyPropertyPage extends PropertyPage {
 	private static final String MINIFIER_TITLE = "&Minifier:";
 
 	private Combo selection;
+	private Button useRules;
 
 	protected abstract String[][] options();
 	
@@ -71,6 +74,42 @@ public abstract class MinifyPropertyPage extends PropertyPage {
 		separator.setLayoutData(gridData);
 	}
 
+	/**
+	 * Checks if the project's rules configure the minification
+	 * of the resource.
+	 */
+	private boolean hasRule() {
+		IResource resource = (IResource)getElement();
+		return ResourceIndex.of(PrefsAccess.preferences(resource)).rules()
+				.isConfigured(resource.getProjectRelativePath().toPortableString());
+	}
+	
+	private void addRulesSection(Composite parent, Preferences prefs) {
+		useRules = new Button(parent, SWT.CHECK);
+		useRules.setText("Use the settings from the project's &rules");
+		useRules.setSelection(
+				prefs.get(preferenceKey(MinifyBuilder.MINIFIER), null) == null);
+		useRules.addListener(SWT.Selection, e -> updateEnabled(parent));
+	}
+	
+	private void updateEnabled(Composite parent) {
+		boolean enabled = useRules == null || !useRules.getSelection();
+		for (Control child: parent.getChildren()) {
+			if (child != useRules) {
+				setEnabled(child, enabled);
+			}
+		}
+	}
+	
+	private void setEnabled(Control control, boolean enabled) {
+		control.setEnabled(enabled);
+		if (control instanceof Composite) {
+			for (Control child: ((Composite)control).getChildren()) {
+				setEnabled(child, enabled);
+			}
+		}
+	}
+	
 	private void addSecondSection(Composite parent, Preferences prefs) {
 		Composite composite = createDefaultComposite(parent);
 
@@ -122,8 +161,17 @@ public abstract class MinifyPropertyPage extends PropertyPage {
 		
 		addFirstSection(composite);
 		addSeparator(composite);
-		addSecondSection(composite, prefs);
-		addSpecificSection(composite, prefs);
+		if (hasRule()) {
+			addRulesSection(composite, prefs);
+		}
+		Composite settings = new Composite(composite, SWT.NONE);
+		GridLayout settingsLayout = new GridLayout();
+		settingsLayout.marginWidth = 0;
+		settingsLayout.marginHeight = 0;
+		settings.setLayout(settingsLayout);
+		addSecondSection(settings, prefs);
+		addSpecificSection(settings, prefs);
+		updateEnabled(settings);
 		
 		return composite;
 	}
@@ -146,6 +194,10 @@ public abstract class MinifyPropertyPage extends PropertyPage {
 		super.performDefaults();
 		// Populate the combo with the default value
 		selection.setText(options()[1][0]);
+		if (useRules != null) {
+			useRules.setSelection(true);
+			updateEnabled(selection.getParent().getParent());
+		}
 	}
 
 	protected boolean performSpecificOk(Preferences prefs) throws CoreException {
@@ -155,6 +207,12 @@ public abstract class MinifyPropertyPage extends PropertyPage {
 	public boolean performOk() {
 		try {
 			Preferences prefs = builderPreferences();
+			if (useRules != null && useRules.getSelection()) {
+				PrefsAccess.removeResource(prefs, (IResource)getElement());
+				prefs.flush();
+				((IResource)getElement()).touch(null);
+				return true;
+			}
 			if (!performSpecificOk(prefs)) {
 				return false;
 			}
@@ -163,7 +221,8 @@ public abstract class MinifyPropertyPage extends PropertyPage {
 					prefs.put(preferenceKey(MinifyBuilder.MINIFIER), options()[0][i]);
 		    	}
 		    }
-		    if (prefs.get(preferenceKey(
+		    // Keep an explicit "don't minify" if a rule would apply
+		    if (useRules == null && prefs.get(preferenceKey(
 		    		MinifyBuilder.MINIFIER), MinifyBuilder.DONT_MINIFY)
 		    		.equals(MinifyBuilder.DONT_MINIFY)) {
 		    	PrefsAccess.removeResource(prefs, (IResource)getElement());
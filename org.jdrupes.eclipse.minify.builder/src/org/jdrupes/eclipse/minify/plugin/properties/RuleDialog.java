@@ -0,0 +1,230 @@
+/*
+ * Eclipse Minify Builder
+ * Copyright (C) 2017  Michael N. Lipp
+ * 
+ * This program is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along 
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.eclipse.minify.plugin.properties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+import org.jdrupes.eclipse.minify.engine.MinifyRules;
+import org.jdrupes.eclipse.minify.plugin.MinifyBuilder;
+
+/**
+ * Edits a {@link MinifyRules.Rule}.
+ */
+public class RuleDialog extends Dialog {
+
+	private static final String[][] MINIFIERS = new String[][] {
+		{ MinifyBuilder.DONT_MINIFY, MinifyBuilder.YUI_COMPRESSOR, 
+			MinifyBuilder.GOOGLE_CLOSURE_COMPILER, MinifyBuilder.WHITESPACE_JS,
+			MinifyBuilder.STREAMING_CSS },
+		{ "(none)", "YUI Compressor", "Google Closure Compiler", 
+			"Built-in JavaScript (whitespace only)", "Built-in CSS (streaming)" }
+	};
+	private static final String[][] OPTIMIZATIONS = new String[][] {
+		{ MinifyBuilder.GCC_OPT_WHITESPACE_ONLY, MinifyBuilder.GCC_OPT_SIMPLE, 
+			MinifyBuilder.GCC_OPT_ADVANCED },
+		{ "Whitespace only", "Simple", "Advanced"}
+	};
+	
+	private MinifyRules.Rule rule;
+	private Text pattern;
+	private Combo minifier;
+	private Button preserveSemicolons;
+	private Button disableOptimizations;
+	private Combo optimization;
+	private Button createMap;
+	private Button includeSource;
+	private Text externs;
+	
+	/**
+	 * Creates a dialog for a new rule ({@code rule} is {@code null})
+	 * or an existing rule.
+	 * 
+	 * @param parentShell the parent shell
+	 * @param rule the rule
+	 */
+	public RuleDialog(Shell parentShell, MinifyRules.Rule rule) {
+		super(parentShell);
+		this.rule = rule;
+	}
+
+	/**
+	 * Returns the rule as defined in the dialog.
+	 * 
+	 * @return the rule
+	 */
+	public MinifyRules.Rule rule() {
+		return rule;
+	}
+	
+	@Override
+	protected void configureShell(Shell newShell) {
+		super.configureShell(newShell);
+		newShell.setText("Minification Rule");
+	}
+	
+	@Override
+	protected Control createDialogArea(Composite parent) {
+		Composite composite = (Composite)super.createDialogArea(parent);
+		((GridLayout)composite.getLayout()).numColumns = 2;
+		
+		new Label(composite, SWT.NONE).setText("&Folder or pattern:");
+		pattern = new Text(composite, SWT.BORDER);
+		pattern.setToolTipText("Project relative path of a folder or pattern "
+				+ "(with \"*\", \"?\" or \"**\")");
+		GridData data = new GridData(GridData.FILL_HORIZONTAL);
+		data.widthHint = 300;
+		pattern.setLayoutData(data);
+		
+		new Label(composite, SWT.NONE).setText("&Minifier:");
+		minifier = new Combo(composite, SWT.READ_ONLY);
+		for (int i = 0; i < MINIFIERS[0].length; i++) {
+			minifier.add(MINIFIERS[1][i]);
+		}
+		minifier.setText(MINIFIERS[1][0]);
+		
+		new Label(composite, SWT.NONE);
+		preserveSemicolons = new Button(composite, SWT.CHECK);
+		preserveSemicolons.setText("Preserve semicolons (YUI)");
+		preserveSemicolons.setSelection(true);
+		new Label(composite, SWT.NONE);
+		disableOptimizations = new Button(composite, SWT.CHECK);
+		disableOptimizations.setText("Disable optimizations (YUI)");
+		disableOptimizations.setSelection(true);
+		
+		new Label(composite, SWT.NONE).setText("O&ptimization (GCC):");
+		optimization = new Combo(composite, SWT.READ_ONLY);
+		for (int i = 0; i < OPTIMIZATIONS[0].length; i++) {
+			optimization.add(OPTIMIZATIONS[1][i]);
+		}
+		optimization.setText(OPTIMIZATIONS[1][0]);
+		new Label(composite, SWT.NONE);
+		createMap = new Button(composite, SWT.CHECK);
+		createMap.setText("Create map file (GCC)");
+		new Label(composite, SWT.NONE);
+		includeSource = new Button(composite, SWT.CHECK);
+		includeSource.setText("Include source in map file (GCC)");
+		new Label(composite, SWT.NONE).setText("&Externs (GCC):");
+		externs = new Text(composite, SWT.BORDER);
+		externs.setToolTipText("Comma separated list of project relative paths");
+		externs.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		
+		if (rule != null) {
+			pattern.setText(rule.pattern());
+			Map<String,String> props = rule.properties();
+			String selected = props.getOrDefault(
+					MinifyBuilder.MINIFIER, MinifyBuilder.DONT_MINIFY);
+			for (int i = 0; i < MINIFIERS[0].length; i++) {
+				if (MINIFIERS[0][i].equals(selected)) {
+					minifier.setText(MINIFIERS[1][i]);
+				}
+			}
+			preserveSemicolons.setSelection(Boolean.parseBoolean(props.getOrDefault(
+					MinifyBuilder.YUI_PRESERVE_SEMICOLONS, "true")));
+			disableOptimizations.setSelection(Boolean.parseBoolean(props.getOrDefault(
+					MinifyBuilder.YUI_DISABLE_OPTIMIZATIONS, "true")));
+			for (int i = 0; i < OPTIMIZATIONS[0].length; i++) {
+				if (OPTIMIZATIONS[0][i].equals(
+						props.get(MinifyBuilder.GCC_OPTIMIZATION))) {
+					optimization.setText(OPTIMIZATIONS[1][i]);
+				}
+			}
+			createMap.setSelection(Boolean.parseBoolean(
+					props.get(MinifyBuilder.GCC_CREATE_MAP_FILE)));
+			includeSource.setSelection(Boolean.parseBoolean(
+					props.get(MinifyBuilder.GCC_INCLUDE_SOURCE)));
+			externs.setText(props.getOrDefault(MinifyBuilder.GCC_EXTERNS, ""));
+		}
+		minifier.addListener(SWT.Selection, e -> updateEnabled());
+		createMap.addListener(SWT.Selection, e -> updateEnabled());
+		updateEnabled();
+		return composite;
+	}
+
+	private String selectedMinifier() {
+		for (int i = 0; i < MINIFIERS[0].length; i++) {
+			if (MINIFIERS[1][i].equals(minifier.getText())) {
+				return MINIFIERS[0][i];
+			}
+		}
+		return MinifyBuilder.DONT_MINIFY;
+	}
+	
+	private void updateEnabled() {
+		boolean yui = selectedMinifier().equals(MinifyBuilder.YUI_COMPRESSOR);
+		boolean gcc = selectedMinifier()
+				.equals(MinifyBuilder.GOOGLE_CLOSURE_COMPILER);
+		preserveSemicolons.setEnabled(yui);
+		disableOptimizations.setEnabled(yui);
+		optimization.setEnabled(gcc);
+		createMap.setEnabled(gcc);
+		includeSource.setEnabled(gcc && createMap.getSelection());
+		externs.setEnabled(gcc);
+	}
+	
+	@Override
+	protected void okPressed() {
+		String path = pattern.getText().trim();
+		if (path.isEmpty() || path.indexOf('|') >= 0) {
+			MessageDialog.openError(getShell(), "Invalid Rule", 
+					"The rule must specify a project relative path "
+					+ "or pattern (without \"|\").");
+			return;
+		}
+		// Store only the options that apply to the selected minifier
+		Map<String,String> props = new LinkedHashMap<>();
+		String selected = selectedMinifier();
+		props.put(MinifyBuilder.MINIFIER, selected);
+		if (selected.equals(MinifyBuilder.YUI_COMPRESSOR)) {
+			props.put(MinifyBuilder.YUI_PRESERVE_SEMICOLONS, 
+					Boolean.toString(preserveSemicolons.getSelection()));
+			props.put(MinifyBuilder.YUI_DISABLE_OPTIMIZATIONS, 
+					Boolean.toString(disableOptimizations.getSelection()));
+		} else if (selected.equals(MinifyBuilder.GOOGLE_CLOSURE_COMPILER)) {
+			for (int i = 0; i < OPTIMIZATIONS[0].length; i++) {
+				if (OPTIMIZATIONS[1][i].equals(optimization.getText())) {
+					props.put(MinifyBuilder.GCC_OPTIMIZATION, OPTIMIZATIONS[0][i]);
+				}
+			}
+			props.put(MinifyBuilder.GCC_CREATE_MAP_FILE, 
+					Boolean.toString(createMap.getSelection()));
+			props.put(MinifyBuilder.GCC_INCLUDE_SOURCE, 
+					Boolean.toString(includeSource.getSelection()));
+			String externList = externs.getText().trim()
+					.replace(';', ',').replace('|', ',');
+			if (!externList.isEmpty()) {
+				props.put(MinifyBuilder.GCC_EXTERNS, externList);
+			}
+		}
+		rule = new MinifyRules.Rule(path, props);
+		super.okPressed();
+	}
+}